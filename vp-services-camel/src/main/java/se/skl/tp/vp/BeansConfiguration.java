@@ -1,11 +1,19 @@
 package se.skl.tp.vp;
 
 import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.apache.camel.component.netty.NettyWorkerPoolBuilder;
+import org.apache.camel.component.netty.http.NettyHttpComponent;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import se.skl.tp.vp.camel.AffinityEventLoopGroup;
+import se.skl.tp.vp.camel.ReusePortNettyHttpComponent;
+import se.skl.tp.vp.config.ReusePortProperties;
+import se.skl.tp.vp.dns.ProducerAddressConfiguration;
+import se.skl.tp.vp.dns.ProducerAddressResolver;
 
 @Configuration
 @ComponentScan(basePackages = {"se.skltp.takcache", "se.skl.tp.hsa.cache", "se.skl.tp.behorighet", "se.skl.tp.vagval", "se.skl.tp.vp"})
@@ -17,14 +25,54 @@ public class BeansConfiguration {
   @Value("${producer.https.workers}")
   private int httpsWorkers;
 
+  @Value("${vp.eventloop.affinity:false}")
+  private boolean eventLoopAffinity;
+
+  @Value("${vp.eventloop.affinity.workers:0}")
+  private int affinityWorkers;
+
+  private EventLoopGroup affinityEventLoopGroup;
+
+  // Only referenced by the consumers with vp.eventloop.affinity, otherwise each has its own worker group
+  @Bean
+  @ConditionalOnProperty(name = "vp.eventloop.affinity", havingValue = "true")
+  public EventLoopGroup sharedServerPool(){
+    return getAffinityEventLoopGroup();
+  }
+
+  // Replaces the component of the camel starter, under the name Camel resolves netty-http by
+  @Bean(name = "netty-http-component")
+  public NettyHttpComponent nettyHttpComponent(ReusePortProperties reusePortProperties,
+      ProducerAddressResolver producerAddressResolver) {
+    NettyHttpComponent component = new ReusePortNettyHttpComponent(reusePortProperties, eventLoopAffinity);
+    if (producerAddressResolver.isEnabled()) {
+      component.setConfiguration(new ProducerAddressConfiguration(producerAddressResolver));
+    }
+    return component;
+  }
+
   @Bean
   public EventLoopGroup sharedClientHttpPool(){
+    if (eventLoopAffinity) {
+      return getAffinityEventLoopGroup();
+    }
     return new NettyWorkerPoolBuilder().withWorkerCount(httpWorkers).withName("NettyHttpClient").build();
   }
 
   @Bean
   public EventLoopGroup sharedClientHttpsPool(){
+    if (eventLoopAffinity) {
+      return getAffinityEventLoopGroup();
+    }
     return new NettyWorkerPoolBuilder().withWorkerCount(httpsWorkers).withName("NettyHttpsClient").build();
   }
 
+  private synchronized EventLoopGroup getAffinityEventLoopGroup() {
+    if (affinityEventLoopGroup == null) {
+      // 0 threads gives netty's default of two event loops per core
+      affinityEventLoopGroup = new AffinityEventLoopGroup(affinityWorkers, new DefaultThreadFactory("NettyAffinity"));
+    }
+    return affinityEventLoopGroup;
+  }
+
 }
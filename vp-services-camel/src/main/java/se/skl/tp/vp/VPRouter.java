@@ -1,29 +1,46 @@
 package se.skl.tp.vp;
 
+import static org.apache.camel.builder.PredicateBuilder.and;
 import static org.apache.camel.builder.PredicateBuilder.or;
 
 import io.netty.handler.timeout.ReadTimeoutException;
+import java.io.IOException;
 import java.net.SocketException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import org.apache.camel.CamelExchangeException;
 import org.apache.camel.Exchange;
 import org.apache.camel.LoggingLevel;
+import org.apache.camel.Predicate;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.netty.http.NettyHttpOperationFailedException;
+import org.apache.camel.model.OnExceptionDefinition;
+import org.apache.camel.model.RouteDefinition;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import se.skl.tp.vp.bulkhead.ProducerBulkheadProcessor;
 import se.skl.tp.vp.certificate.CertificateExtractorProcessor;
 import se.skl.tp.vp.charset.ConvertRequestCharset;
 import se.skl.tp.vp.charset.ConvertResponseCharset;
 import se.skl.tp.vp.config.HttpHeaderFilterProperties;
 import se.skl.tp.vp.constants.VPExchangeProperties;
+import se.skl.tp.vp.dns.ProducerAddressPrefetchProcessor;
+import se.skl.tp.vp.dns.ProducerAddressProcessor;
 import se.skl.tp.vp.errorhandling.ExceptionMessageProcessor;
 import se.skl.tp.vp.errorhandling.HandleEmptyResponseProcessor;
 import se.skl.tp.vp.errorhandling.HandleProducerExceptionProcessor;
 import se.skl.tp.vp.httpheader.HttpSenderIdExtractorProcessor;
 import se.skl.tp.vp.httpheader.OriginalConsumerIdProcessor;
 import se.skl.tp.vp.httpheader.OutHeaderProcessor;
+import se.skl.tp.vp.largepayload.LargePayloadProcessor;
+import se.skl.tp.vp.limit.ProducerLimitProcessor;
 import se.skl.tp.vp.logging.MessageInfoLogger;
+import se.skl.tp.vp.priority.PriorityLaneProcessor;
+import se.skl.tp.vp.ratelimit.SenderRateLimitProcessor;
 import se.skl.tp.vp.requestreader.RequestReaderProcessor;
+import se.skl.tp.vp.retry.ProducerRetryPolicy;
+import se.skl.tp.vp.streaming.ResponseStreamingProcessor;
 import se.skl.tp.vp.timeout.RequestTimoutProcessor;
 import se.skl.tp.vp.vagval.BehorighetProcessor;
 import se.skl.tp.vp.vagval.RivTaProfilProcessor;
@@ -47,28 +64,34 @@ public class VPRouter extends RouteBuilder {
         + "needClientAuth=true&"
         + "matchOnUriPrefix=true&"
         + "chunkedMaxContentLength={{vp.max.receive.length}}&"
-        + "nettyHttpBinding=#VPNettyHttpBinding";
+        + "nettyHttpBinding=#VPNettyHttpBinding&"
+        + "serverInitializerFactory=#VPHttpServerInitializerFactory";
     public static final String NETTY_HTTP_FROM = "netty-http:{{vp.http.route.url}}?"
         + "matchOnUriPrefix=true&"
         + "chunkedMaxContentLength={{vp.max.receive.length}}&"
-        + "nettyHttpBinding=#VPNettyHttpBinding";
+        + "nettyHttpBinding=#VPNettyHttpBinding&"
+        + "serverInitializerFactory=#VPHttpServerInitializerFactory";
+    // With vp.eventloop.affinity the consumers share the event loop group of the producers
+    public static final String AFFINITY_WORKER_GROUP = "&workerGroup=#sharedServerPool";
     public static final String NETTY_HTTP_OUTGOING_TOD = "netty-http:http://${exchangeProperty.vagvalHost}?"
         + "useRelativePath=true&"
         + "nettyHttpBinding=#VPNettyHttpBinding&"
+        + "clientInitializerFactory=#VPHttpClientInitializerFactory&"
         + "chunkedMaxContentLength={{vp.max.receive.length}}&"
         + "disconnect={{producer.http.disconnect}}&"
         + "keepAlive={{producer.http.keepAlive}}&"
-        + "workerGroup=#sharedClientHttpPool&"
+        + "workerGroup=#${exchangeProperty.producerWorkerGroup}&"
         + "connectTimeout={{producer.http.connect.timeout}}";
     public static final String NETTY_HTTPS_OUTGOING_TOD = "netty-http:https://${exchangeProperty.vagvalHost}?"
         + "sslContextParameters=#outgoingSSLContextParameters&"
         + "ssl=true&"
         + "useRelativePath=true&"
         + "nettyHttpBinding=#VPNettyHttpBinding&"
+        + "clientInitializerFactory=#VPHttpClientInitializerFactory&"
         + "chunkedMaxContentLength={{vp.max.receive.length}}&"
         + "disconnect={{producer.https.disconnect}}&"
         + "keepAlive={{producer.https.keepAlive}}&"
-        + "workerGroup=#sharedClientHttpsPool&"
+        + "workerGroup=#${exchangeProperty.producerWorkerGroup}&"
         + "connectTimeout={{producer.https.connect.timeout}}";
 
     public static final String VAGVAL_PROCESSOR_ID = "VagvalProcessor";
@@ -78,6 +101,7 @@ public class VPRouter extends RouteBuilder {
     public static final String LOG_REQ_IN_METHOD = "logReqIn(*)";
     public static final String LOG_REQ_OUT_METHOD = "logReqOut(*)";
     public static final String LOG_RESP_IN_METHOD = "logRespIn(*)";
+    public static final String LOG_CONSUMER_ABORTED_METHOD = "logConsumerAborted(*)";
 
     @Autowired
     OriginalConsumerIdProcessor originalConsumerIdProcessor;
@@ -127,8 +151,39 @@ public class VPRouter extends RouteBuilder {
     @Autowired
     private ConvertResponseCharset convertResponseCharset;
 
+    @Autowired
+    private ResponseStreamingProcessor responseStreamingProcessor;
+
+    @Autowired
+    private ProducerRetryPolicy producerRetryPolicy;
+
+    @Autowired
+    private ProducerAddressProcessor producerAddressProcessor;
+
+    @Autowired
+    private ProducerAddressPrefetchProcessor producerAddressPrefetchProcessor;
+
+    @Autowired
+    private ProducerBulkheadProcessor producerBulkheadProcessor;
+
+    @Autowired
+    private ProducerLimitProcessor producerLimitProcessor;
+
+    @Autowired
+    private SenderRateLimitProcessor senderRateLimitProcessor;
+
+    @Autowired
+    private PriorityLaneProcessor priorityLaneProcessor;
+
+    @Autowired
+    private LargePayloadProcessor largePayloadProcessor;
+
+    @Value("${vp.eventloop.affinity:false}")
+    private boolean eventLoopAffinity;
+
     @Override
     public void configure() throws Exception {
+        String workerGroup = eventLoopAffinity ? AFFINITY_WORKER_GROUP : "";
 
         onException(Exception.class)
             .process(exceptionMessageProcessor)
@@ -139,7 +194,7 @@ public class VPRouter extends RouteBuilder {
             .handled(true);
 
 
-        from(NETTY_HTTPS_INCOMING_FROM).routeId(VP_HTTPS_ROUTE)
+        from(NETTY_HTTPS_INCOMING_FROM + workerGroup).routeId(VP_HTTPS_ROUTE)
         	.setProperty(VPExchangeProperties.EXCHANGE_CREATED,  simple("${date:exchangeCreated}"))
             .choice()
               .when(header("wsdl").isNotNull()).process(wsdlProcessor)
@@ -151,7 +206,7 @@ public class VPRouter extends RouteBuilder {
                 .bean(MessageInfoLogger.class, LOG_RESP_OUT_METHOD)
             .end();
 
-        from(NETTY_HTTP_FROM).routeId(VP_HTTP_ROUTE)
+        from(NETTY_HTTP_FROM + workerGroup).routeId(VP_HTTP_ROUTE)
         	.setProperty(VPExchangeProperties.EXCHANGE_CREATED,  simple("${date:exchangeCreated}"))
             .choice()
               .when(header("wsdl").isNotNull()).process(wsdlProcessor)
@@ -170,38 +225,67 @@ public class VPRouter extends RouteBuilder {
             .setProperty(VPExchangeProperties.VP_X_FORWARDED_PORT,  header("{{http.forwarded.header.port}}"))
             .setProperty(VPExchangeProperties.VP_X_FORWARDED_PROTO,  header("{{http.forwarded.header.proto}}"))
             .process(requestReaderProcessor)
+            .process(senderRateLimitProcessor)
+            .process(priorityLaneProcessor)
+            .process(largePayloadProcessor)
             .process(originalConsumerIdProcessor)
             .bean(MessageInfoLogger.class, LOG_REQ_IN_METHOD)
             .process(vagvalProcessor).id(VAGVAL_PROCESSOR_ID)
+            .process(producerAddressPrefetchProcessor)
             .process(behorighetProcessor).id(BEHORIGHET_PROCESSOR_ID)
             .process(requestTimoutProcessor)
             .process(rivTaProfilProcessor)
             .process(setOutHeadersProcessor)
             .to(DIRECT_PRODUCER_ROUTE)
-            .choice().when(or(body().isNull(), body().isEqualTo("")))
+            .choice().when(and(exchangeProperty(VPExchangeProperties.STREAMED_RESPONSE_LENGTH).isNull(),
+                    or(body().isNull(), body().isEqualTo(""))))
                 .log(LoggingLevel.WARN, "Response from producer is empty")
                 .process(handleEmptyResponseProcessor)
                 .bean(MessageInfoLogger.class, LOG_ERROR_METHOD)
             .end();
 
-        from(DIRECT_PRODUCER_ROUTE)
-            .routeId(TO_PRODUCER_ROUTE)
+        RouteDefinition producerRoute = from(DIRECT_PRODUCER_ROUTE)
+            .routeId(TO_PRODUCER_ROUTE);
 
-            .onException(SocketException.class)
-                .redeliveryDelay("{{vp.producer.retry.delay}}")
-                .maximumRedeliveries("{{vp.producer.retry.attempts}}")
+        producerRoute
+            // The consumer closed its connection, the producer call was aborted and no response is sent
+            .onException(Exception.class)
+                .onWhen(exchangeProperty(VPExchangeProperties.CONSUMER_ABORTED).isEqualTo(true))
+                .handled(true)
+                .bean(MessageInfoLogger.class, LOG_CONSUMER_ABORTED_METHOD)
+                .stop()
+            .end()
+            // A request that could not be written on a pooled connection that turned out to be closed,
+            // retried at once on a new connection. A retry that gets another pooled connection is
+            // refused on it before anything is written and tried again
+            .onException(SocketException.class, IOException.class, ClosedChannelException.class,
+                    CamelExchangeException.class)
+                .onWhen(exchangeProperty(VPExchangeProperties.STALE_CONNECTION).isEqualTo(true))
+                .redeliveryDelay(0)
+                .maximumRedeliveries(3)
                     .logRetryAttempted(true)
-                    .retryAttemptedLogLevel(LoggingLevel.WARN)
+                    .retryAttemptedLogLevel(LoggingLevel.INFO)
                     .logRetryStackTrace(false)
                 .to(DIRECT_PRODUCER_ERROR)
                 .handled(true)
-            .end()
-            .onException(ReadTimeoutException.class, NettyHttpOperationFailedException.class)
+            .end();
+        retryOnSocketError(producerRoute.onException(SocketException.class), producerRetryPolicy)
+                .to(DIRECT_PRODUCER_ERROR)
+                .handled(true)
+            .end();
+        producerRoute
+            .onException(ReadTimeoutException.class, NettyHttpOperationFailedException.class,
+                    UnknownHostException.class)
                 .to(DIRECT_PRODUCER_ERROR)
                 .handled(true)
             .end()
 
             .process(convertRequestCharset)
+            .process(responseStreamingProcessor)
+            .bean(producerRetryPolicy, "recordRequest(*)")
+            .process(producerAddressProcessor)
+            .process(producerBulkheadProcessor)
+            .process(producerLimitProcessor)
             .removeHeaders(headerFilter.getRequestHeadersToRemove(), headerFilter.getRequestHeadersToKeep())
             .bean(MessageInfoLogger.class, LOG_REQ_OUT_METHOD)
             .choice().when(exchangeProperty(VPExchangeProperties.VAGVAL).contains("https://"))
@@ -228,4 +312,24 @@ public class VPRouter extends RouteBuilder {
             // Always return status 500 to when soap fault
             .setHeader(Exchange.HTTP_RESPONSE_CODE, constant(500));
     }
+
+    /**
+     * Redelivers producer calls that failed with a socket error, with exponential backoff and jitter
+     * for as long as the retry policy allows. The redelivery is scheduled on Camel's redelivery timer,
+     * so no thread is held while waiting for it.
+     */
+    static OnExceptionDefinition retryOnSocketError(OnExceptionDefinition onException, Predicate retryPolicy) {
+        return onException
+            .redeliveryDelay("{{vp.producer.retry.delay}}")
+            .useExponentialBackOff()
+            .backOffMultiplier("{{vp.producer.retry.backoffMultiplier:2}}")
+            .maximumRedeliveryDelay("{{vp.producer.retry.maxDelay:30000}}")
+            .useCollisionAvoidance()
+            .collisionAvoidanceFactor("{{vp.producer.retry.jitter:0.15}}")
+            .asyncDelayedRedelivery()
+            .retryWhile(retryPolicy)
+                .logRetryAttempted(true)
+                .retryAttemptedLogLevel(LoggingLevel.WARN)
+                .logRetryStackTrace(false);
+    }
 }
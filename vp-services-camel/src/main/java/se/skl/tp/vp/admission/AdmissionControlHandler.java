@@ -0,0 +1,108 @@
+package se.skl.tp.vp.admission;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpExpectationFailedEvent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+
+/**
+ * Placed before the aggregator in the consumer pipeline, so the decision is made on the request head.
+ * Each request takes a slot in the AdmissionController, released when the last part of its response
+ * is written. A request that gets no slot is answered with 503 and the pre-rendered SOAP fault
+ * without reaching Camel. Its body is released part by part as it arrives, or never sent if it
+ * expects 100-continue, so it is never buffered. The latency that adjusts the limit is counted from
+ * the last part of the request, so a slow upload does not lower the limit.
+ *
+ * Requests on a connection that already has a request in progress are always admitted without a
+ * slot, so responses can not be written out of order, and only the requests that took a slot release
+ * one.
+ */
+public class AdmissionControlHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "admission";
+
+  private final AdmissionController admissionController;
+  private final Deque<Admitted> admitted = new ArrayDeque<>();
+  private boolean discarding;
+
+  public AdmissionControlHandler(AdmissionController admissionController) {
+    this.admissionController = admissionController;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpRequest) {
+      discarding = false;
+      if (!admitted.isEmpty()) {
+        admitted.add(new Admitted(System.nanoTime(), false));
+      } else if (admissionController.tryAcquire()) {
+        admitted.add(new Admitted(System.nanoTime(), true));
+      } else {
+        shed(ctx, (HttpRequest) msg);
+        ReferenceCountUtil.release(msg);
+        return;
+      }
+    } else if (discarding && msg instanceof HttpContent) {
+      ReferenceCountUtil.release(msg);
+      discarding = !(msg instanceof LastHttpContent);
+      return;
+    }
+    if (msg instanceof LastHttpContent && !admitted.isEmpty()) {
+      admitted.peekLast().start = System.nanoTime();
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof LastHttpContent && !admitted.isEmpty()) {
+      Admitted request = admitted.poll();
+      if (request.acquired) {
+        promise = promise.unvoid();
+        promise.addListener(future -> admissionController.release(System.nanoTime() - request.start));
+      }
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    for (Admitted request = admitted.poll(); request != null; request = admitted.poll()) {
+      if (request.acquired) {
+        admissionController.release();
+      }
+    }
+    super.channelInactive(ctx);
+  }
+
+  private void shed(ChannelHandlerContext ctx, HttpRequest request) {
+    NettyFaultResponse.write(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE, admissionController.getFault(),
+        true);
+    if (HttpUtil.is100ContinueExpected(request)) {
+      // The body will not be sent, so the decoder must stop waiting for it
+      ctx.pipeline().fireUserEventTriggered(HttpExpectationFailedEvent.INSTANCE);
+    } else {
+      discarding = !(request instanceof LastHttpContent);
+    }
+  }
+
+  private static final class Admitted {
+
+    private long start;
+    private final boolean acquired;
+
+    Admitted(long start, boolean acquired) {
+      this.start = start;
+      this.acquired = acquired;
+    }
+  }
+}
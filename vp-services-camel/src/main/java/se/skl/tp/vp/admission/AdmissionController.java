@@ -0,0 +1,101 @@
+package se.skl.tp.vp.admission;
+
+import io.netty.buffer.ByteBuf;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.AdmissionProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+import se.skl.tp.vp.exceptions.VPFaultCodeEnum;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.limit.AdaptiveLimit;
+
+/**
+ * Keeps the number of requests in progress on the inbound endpoints within an adaptive limit, shared
+ * by all consumer connections. The limit follows the latency of the requests, so it settles near the
+ * load VP can take without latency building up. Requests over the limit are shed with a SOAP fault
+ * that is rendered once at startup.
+ */
+@Component
+public class AdmissionController {
+
+  private final boolean enabled;
+  private final AdaptiveLimit limit;
+  private final ByteBuf fault;
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder shed = new LongAdder();
+
+  @Autowired
+  public AdmissionController(AdmissionProperties admissionProperties, ExceptionUtil exceptionUtil) {
+    this(admissionProperties, exceptionUtil.createMessage(VpSemanticErrorCodeEnum.VP012));
+  }
+
+  AdmissionController(AdmissionProperties admissionProperties, String faultMessage) {
+    this.enabled = admissionProperties.isEnabled();
+    this.limit = new AdaptiveLimit(admissionProperties.getInitialLimit(), admissionProperties.getMinLimit(),
+        admissionProperties.getMaxLimit(), admissionProperties.getBackoffRatio(), admissionProperties.getTolerance());
+    this.fault = NettyFaultResponse.render(faultMessage, VPFaultCodeEnum.Server);
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  public boolean tryAcquire() {
+    int currentLimit = limit.getLimit();
+    while (true) {
+      int current = inFlight.get();
+      if (current >= currentLimit) {
+        shed.increment();
+        return false;
+      }
+      if (inFlight.compareAndSet(current, current + 1)) {
+        admitted.increment();
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Releases a request that got a response, its latency adjusts the limit.
+   */
+  public void release(long latencyNanos) {
+    limit.onSample(latencyNanos, inFlight.getAndDecrement(), false);
+  }
+
+  /**
+   * Releases a request whose connection was closed before the response.
+   */
+  public void release() {
+    inFlight.decrementAndGet();
+  }
+
+  /**
+   * The shed response body, a duplicate that shares the pre-rendered content.
+   */
+  public ByteBuf getFault() {
+    return fault.duplicate();
+  }
+
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  public long getAdmitted() {
+    return admitted.sum();
+  }
+
+  public long getShed() {
+    return shed.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Limit: %d, InFlight: %d, Admitted: %d, Shed: %d", limit.getLimit(), getInFlight(),
+        getAdmitted(), getShed());
+  }
+}
@@ -0,0 +1,146 @@
+package se.skl.tp.vp.bulkhead;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.regex.Pattern;
+import se.skl.tp.vp.utils.SlotLimiter;
+
+/**
+ * A group of producers with a cap on concurrent calls. Calls over the cap wait in a bounded queue and
+ * are started in order as running calls are released, calls that do not fit in the queue are rejected.
+ * The caller gives up a queued call with remove when it has waited the queue timeout.
+ */
+public class Bulkhead implements SlotLimiter {
+
+  private final String name;
+  private final String workerGroup;
+  private final Pattern hosts;
+  private final Pattern contracts;
+  private final int maxQueued;
+  private final long queueTimeout;
+  private int maxConcurrent;
+
+  private final Queue<Runnable> queue = new ArrayDeque<>();
+  private int active;
+  private long rejected;
+
+  public Bulkhead(String name, String workerGroup, String hosts, String contracts, int maxConcurrent,
+      int maxQueued) {
+    this(name, workerGroup, hosts, contracts, maxConcurrent, maxQueued, 0);
+  }
+
+  public Bulkhead(String name, String workerGroup, String hosts, String contracts, int maxConcurrent,
+      int maxQueued, long queueTimeout) {
+    this.name = name;
+    this.workerGroup = workerGroup;
+    this.hosts = toPattern(hosts);
+    this.contracts = toPattern(contracts);
+    this.maxConcurrent = maxConcurrent;
+    this.maxQueued = maxQueued;
+    this.queueTimeout = queueTimeout;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getWorkerGroup() {
+    return workerGroup;
+  }
+
+  /**
+   * Max time (ms) a queued call waits for a slot before the caller gives it up, 0 if it is not limited.
+   */
+  public long getQueueTimeout() {
+    return queueTimeout;
+  }
+
+  public boolean matches(String host, String contract) {
+    return (hosts != null && host != null && hosts.matcher(host).matches())
+        || (contracts != null && contract != null && contracts.matcher(contract).matches());
+  }
+
+  /**
+   * Takes a slot for a call. If all slots are taken the call is queued, and whenAcquired is run
+   * with the slot when it is released by a running call.
+   */
+  @Override
+  public synchronized Admission acquire(Runnable whenAcquired) {
+    if (active < maxConcurrent) {
+      active++;
+      return Admission.ACQUIRED;
+    }
+    if (queue.size() < maxQueued) {
+      queue.add(whenAcquired);
+      return Admission.QUEUED;
+    }
+    rejected++;
+    return Admission.REJECTED;
+  }
+
+  public void release() {
+    Runnable next;
+    synchronized (this) {
+      next = active <= maxConcurrent ? queue.poll() : null;
+      if (next == null) {
+        active--;
+      }
+    }
+    if (next != null) {
+      next.run();
+    }
+  }
+
+  @Override
+  public synchronized boolean remove(Runnable whenAcquired) {
+    boolean removed = queue.remove(whenAcquired);
+    if (removed) {
+      rejected++;
+    }
+    return removed;
+  }
+
+  /**
+   * Changes the cap. A raised cap starts queued calls at once, a lowered cap takes effect as
+   * running calls are released.
+   */
+  public void setMaxConcurrent(int maxConcurrent) {
+    List<Runnable> started = new ArrayList<>();
+    synchronized (this) {
+      this.maxConcurrent = maxConcurrent;
+      while (active < maxConcurrent && !queue.isEmpty()) {
+        active++;
+        started.add(queue.poll());
+      }
+    }
+    started.forEach(Runnable::run);
+  }
+
+  public synchronized int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  public synchronized int getActive() {
+    return active;
+  }
+
+  public synchronized int getQueued() {
+    return queue.size();
+  }
+
+  public synchronized long getRejected() {
+    return rejected;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("Active: %d/%d, Queued: %d/%d, Rejected: %d", active, maxConcurrent, queue.size(),
+        maxQueued, rejected);
+  }
+
+  private static Pattern toPattern(String regex) {
+    return regex == null || regex.isEmpty() ? null : Pattern.compile(regex);
+  }
+}
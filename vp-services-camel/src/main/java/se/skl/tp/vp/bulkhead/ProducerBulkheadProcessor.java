@@ -0,0 +1,9 @@
+package se.skl.tp.vp.bulkhead;
+
+import java.util.List;
+import org.apache.camel.AsyncProcessor;
+
+public interface ProducerBulkheadProcessor extends AsyncProcessor {
+
+  List<Bulkhead> getBulkheads();
+}
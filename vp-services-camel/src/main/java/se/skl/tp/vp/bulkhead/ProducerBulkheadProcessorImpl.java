@@ -0,0 +1,123 @@
+package se.skl.tp.vp.bulkhead;
+
+import io.netty.channel.EventLoopGroup;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.component.netty.NettyWorkerPoolBuilder;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.ProducerBulkheadProperties;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.largepayload.LargePayloadProcessor;
+import se.skl.tp.vp.utils.SlotAcquirer;
+
+/**
+ * Selects the event loop group for the producer call and limits the concurrent calls per producer
+ * group. Producers matching a configured group get event loops of their own, registered in the Camel
+ * registry, and a slot in the group's bulkhead that is held until the exchange is done. Calls that
+ * wait longer than the group's queue timeout for a slot are rejected with VP009, as when the queue is
+ * full. Other producers use the shared http and https pools without limits, as before, or the large
+ * payload pool for calls marked as large.
+ */
+@Service
+@Log4j2
+public class ProducerBulkheadProcessorImpl extends AsyncProcessorSupport implements ProducerBulkheadProcessor,
+    DisposableBean {
+
+  static final String SHARED_HTTP_POOL = "sharedClientHttpPool";
+  static final String SHARED_HTTPS_POOL = "sharedClientHttpsPool";
+  static final String WORKER_GROUP_PREFIX = "producerBulkhead-";
+
+  private final ExceptionUtil exceptionUtil;
+  private final SlotAcquirer slotAcquirer;
+  private final List<Bulkhead> bulkheads = new ArrayList<>();
+  private final List<EventLoopGroup> eventLoopGroups = new ArrayList<>();
+
+  @Autowired
+  public ProducerBulkheadProcessorImpl(ProducerBulkheadProperties bulkheadProperties, CamelContext camelContext,
+      ExceptionUtil exceptionUtil, SlotAcquirer slotAcquirer) {
+    this.exceptionUtil = exceptionUtil;
+    this.slotAcquirer = slotAcquirer;
+    for (ProducerBulkheadProperties.Group group : bulkheadProperties.getGroups()) {
+      String workerGroup = WORKER_GROUP_PREFIX + group.getName();
+      EventLoopGroup eventLoopGroup = new NettyWorkerPoolBuilder()
+          .withWorkerCount(group.getWorkers()).withName("NettyBulkhead-" + group.getName()).build();
+      camelContext.getRegistry().bind(workerGroup, eventLoopGroup);
+      eventLoopGroups.add(eventLoopGroup);
+      bulkheads.add(new Bulkhead(group.getName(), workerGroup, group.getHosts(), group.getContracts(),
+          group.getMaxConcurrent(), group.getMaxQueued(), group.getQueueTimeout()));
+      log.info("Producer group {} for hosts '{}' and contracts '{}'", group.getName(), group.getHosts(),
+          group.getContracts());
+    }
+  }
+
+  @Override
+  public List<Bulkhead> getBulkheads() {
+    return Collections.unmodifiableList(bulkheads);
+  }
+
+  @Override
+  public boolean process(Exchange exchange, AsyncCallback callback) {
+    Bulkhead bulkhead = findBulkhead(exchange);
+    if (bulkhead == null) {
+      exchange.setProperty(VPExchangeProperties.PRODUCER_WORKER_GROUP, getSharedPool(exchange));
+      callback.done(true);
+      return true;
+    }
+    exchange.setProperty(VPExchangeProperties.PRODUCER_WORKER_GROUP, bulkhead.getWorkerGroup());
+    return slotAcquirer.acquire(exchange, callback, bulkhead, bulkhead.getQueueTimeout(),
+        () -> releaseOnCompletion(exchange, bulkhead),
+        timedOut -> reject(exchange, bulkhead, timedOut ? "waited too long for a free slot" : "is saturated"));
+  }
+
+  @Override
+  public void destroy() {
+    eventLoopGroups.forEach(EventLoopGroup::shutdownGracefully);
+  }
+
+  private void reject(Exchange exchange, Bulkhead bulkhead, String reason) {
+    log.warn("Producer group {} {}, call rejected", bulkhead.getName(), reason);
+    exchange.setException(exceptionUtil.createVpSemanticException(VpSemanticErrorCodeEnum.VP009,
+        exchange.getProperty(VPExchangeProperties.VAGVAL, "<UNKNOWN>", String.class)
+            + ". Producer group " + bulkhead.getName() + " " + reason));
+  }
+
+  private static String getSharedPool(Exchange exchange) {
+    if (exchange.getProperty(VPExchangeProperties.LARGE_PAYLOAD, false, Boolean.class)) {
+      return LargePayloadProcessor.WORKER_GROUP;
+    }
+    String vagval = exchange.getProperty(VPExchangeProperties.VAGVAL, "", String.class);
+    return vagval.contains("https://") ? SHARED_HTTPS_POOL : SHARED_HTTP_POOL;
+  }
+
+  private Bulkhead findBulkhead(Exchange exchange) {
+    String host = exchange.getProperty(VPExchangeProperties.VAGVAL_HOST, String.class);
+    String contract = exchange.getProperty(VPExchangeProperties.SERVICECONTRACT_NAMESPACE, String.class);
+    for (Bulkhead bulkhead : bulkheads) {
+      if (bulkhead.matches(host, contract)) {
+        return bulkhead;
+      }
+    }
+    return null;
+  }
+
+  private static void releaseOnCompletion(Exchange exchange, Bulkhead bulkhead) {
+    exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+      @Override
+      public void onDone(Exchange exchange) {
+        bulkhead.release();
+      }
+    });
+  }
+}
@@ -0,0 +1,53 @@
+package se.skl.tp.vp.camel;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.FastThreadLocal;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Event loop group shared by the inbound consumer and the outbound producers when
+ * vp.eventloop.affinity is enabled. A channel registered from one of the group's own
+ * threads is placed on that same event loop, so a producer connection opened while
+ * handling an inbound request lives on the inbound channel's loop and the request/response
+ * relay needs no cross-thread handoff. Work handed from a loop to another executor, such as
+ * Camel's, keeps the loop with {@link #runPreferring}. Registrations from other threads are
+ * balanced as usual.
+ */
+public class AffinityEventLoopGroup extends NioEventLoopGroup {
+
+  private final FastThreadLocal<EventLoop> preferred = new FastThreadLocal<>();
+
+  public AffinityEventLoopGroup(int nThreads, ThreadFactory threadFactory) {
+    super(nThreads, threadFactory);
+    // Each loop thread knows its own loop, so next() needs no scan of the group
+    for (EventExecutor executor : this) {
+      EventLoop loop = (EventLoop) executor;
+      loop.execute(() -> preferred.set(loop));
+    }
+  }
+
+  @Override
+  public EventLoop next() {
+    EventLoop loop = preferred.get();
+    return loop != null ? loop : super.next();
+  }
+
+  /**
+   * Runs the task on the calling thread with {@link #next()} returning the given loop.
+   */
+  public void runPreferring(EventLoop loop, Runnable task) {
+    EventLoop previous = preferred.get();
+    preferred.set(loop);
+    try {
+      task.run();
+    } finally {
+      if (previous == null) {
+        preferred.remove();
+      } else {
+        preferred.set(previous);
+      }
+    }
+  }
+}
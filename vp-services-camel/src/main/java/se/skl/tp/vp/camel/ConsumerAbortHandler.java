@@ -0,0 +1,94 @@
+package se.skl.tp.vp.camel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyConstants;
+import org.apache.camel.component.netty.NettyProducer;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Placed after the http codec in the producer pipeline. While a request is in flight the consumer
+ * channel of the exchange is watched, and if the consumer closes its connection the producer
+ * connection is closed as well. The exchange is marked with CONSUMER_ABORTED, so the call fails at
+ * once instead of waiting for the producer until the request timeout.
+ */
+@Log4j2
+public class ConsumerAbortHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "consumer-abort";
+
+  private final NettyProducer producer;
+
+  private Channel consumerChannel;
+  private ChannelFutureListener abortListener;
+  private Exchange exchange;
+
+  public ConsumerAbortHandler(NettyProducer producer) {
+    this.producer = producer;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpRequest) {
+      NettyCamelState state = producer.getCorrelationManager().getState(ctx, ctx.channel(), msg);
+      Exchange exchange = state == null ? null : state.getExchange();
+      ChannelHandlerContext consumerCtx = exchange == null ? null : exchange.getIn()
+          .getHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, ChannelHandlerContext.class);
+      if (consumerCtx != null) {
+        watch(ctx, consumerCtx.channel(), exchange);
+      }
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof LastHttpContent) {
+      stopWatching();
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    stopWatching();
+    super.channelInactive(ctx);
+  }
+
+  private void watch(ChannelHandlerContext ctx, Channel channel, Exchange exchange) {
+    stopWatching();
+    ChannelFutureListener listener = future -> ctx.executor().execute(() -> abort(ctx, exchange));
+    consumerChannel = channel;
+    abortListener = listener;
+    this.exchange = exchange;
+    channel.closeFuture().addListener(listener);
+  }
+
+  private void abort(ChannelHandlerContext ctx, Exchange exchange) {
+    if (exchange != this.exchange) {
+      // The response was already received
+      return;
+    }
+    stopWatching();
+    exchange.setProperty(VPExchangeProperties.CONSUMER_ABORTED, true);
+    log.debug("Consumer closed the connection, closing producer connection {}", ctx.channel());
+    ctx.close();
+  }
+
+  private void stopWatching() {
+    if (consumerChannel != null) {
+      consumerChannel.closeFuture().removeListener(abortListener);
+      consumerChannel = null;
+      abortListener = null;
+      exchange = null;
+    }
+  }
+}
@@ -0,0 +1,90 @@
+package se.skl.tp.vp.camel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpExpectationFailedEvent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import lombok.extern.log4j.Log4j2;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+
+/**
+ * Placed directly after the decoder in the consumer pipeline. A request the decoder could not parse
+ * is answered with 400 and the connection is closed, the decoder discards what is left of it until
+ * then. That includes an initial line or headers over the decoder's max length, which the decoder only
+ * marks as invalid. A request whose Content-Length is over the max content length is answered with 413 before any
+ * of the body is read. If it expects 100-continue the body is never sent and the decoder is reset so
+ * the connection can be reused, otherwise the body is released part by part as it arrives and the
+ * connection is closed unless the request is keep-alive.
+ */
+@Log4j2
+public class RequestGuardHandler extends ChannelInboundHandlerAdapter {
+
+  public static final String NAME = "request-guard";
+
+  private final long maxContentLength;
+  private final ByteBuf fault;
+
+  private HttpRequest request;
+  private boolean discarding;
+
+  public RequestGuardHandler(long maxContentLength, ByteBuf fault) {
+    this.maxContentLength = maxContentLength;
+    this.fault = fault;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpRequest) {
+      request = (HttpRequest) msg;
+      discarding = false;
+    }
+    if (discarding && msg instanceof HttpContent) {
+      ReferenceCountUtil.release(msg);
+      discarding = !(msg instanceof LastHttpContent);
+      return;
+    }
+    if (msg instanceof HttpObject && ((HttpObject) msg).decoderResult().isFailure()) {
+      rejectMalformed(ctx, (HttpObject) msg);
+      ReferenceCountUtil.release(msg);
+      return;
+    }
+    if (msg instanceof HttpRequest && HttpUtil.getContentLength(request, -1L) > maxContentLength) {
+      rejectTooLarge(ctx);
+      ReferenceCountUtil.release(msg);
+      return;
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  private void rejectMalformed(ChannelHandlerContext ctx, HttpObject msg) {
+    log.warn("Malformed request from {} rejected: {}", ctx.channel().remoteAddress(),
+        msg.decoderResult().cause().getMessage());
+    if (request == null) {
+      ctx.close();
+      return;
+    }
+    // The decoder discards everything after a bad message, so the connection can not be reused
+    discarding = true;
+    NettyFaultResponse.write(ctx, request, HttpResponseStatus.BAD_REQUEST, fault.duplicate(), false);
+  }
+
+  private void rejectTooLarge(ChannelHandlerContext ctx) {
+    log.warn("Request from {} with Content-Length {} over max {} rejected", ctx.channel().remoteAddress(),
+        request.headers().get(HttpHeaderNames.CONTENT_LENGTH), maxContentLength);
+    NettyFaultResponse.write(ctx, request, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE, fault.duplicate(), true);
+    if (HttpUtil.is100ContinueExpected(request)) {
+      // The body will not be sent, so the decoder must stop waiting for it
+      ctx.pipeline().fireUserEventTriggered(HttpExpectationFailedEvent.INSTANCE);
+    } else {
+      discarding = true;
+    }
+  }
+}
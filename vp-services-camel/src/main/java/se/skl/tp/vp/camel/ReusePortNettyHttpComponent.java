@@ -0,0 +1,65 @@
+package se.skl.tp.vp.camel;
+
+import io.netty.channel.epoll.Epoll;
+import java.util.HashMap;
+import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.component.netty.ServerInitializerFactory;
+import org.apache.camel.component.netty.http.HttpServerBootstrapFactory;
+import org.apache.camel.component.netty.http.HttpServerInitializerFactory;
+import org.apache.camel.component.netty.http.NettyHttpComponent;
+import org.apache.camel.component.netty.http.NettyHttpConsumer;
+import se.skl.tp.vp.config.ReusePortProperties;
+
+/**
+ * The netty-http component, with inbound endpoints bound by a ReusePortServerBootstrapFactory when
+ * vp.reuseport.enabled is set. It needs the native epoll transport, and worker groups of their own
+ * per server channel, so it is not used without epoll or together with vp.eventloop.affinity.
+ */
+@Log4j2
+public class ReusePortNettyHttpComponent extends NettyHttpComponent {
+
+  private final boolean reusePort;
+  private final int acceptors;
+  private final int workers;
+  private final Map<String, HttpServerBootstrapFactory> reusePortFactories = new HashMap<>();
+
+  public ReusePortNettyHttpComponent(ReusePortProperties reusePortProperties, boolean eventLoopAffinity) {
+    this.reusePort = reusePortProperties.isEnabled() && isSupported(eventLoopAffinity);
+    this.acceptors = reusePortProperties.getAcceptors() > 0
+        ? reusePortProperties.getAcceptors() : Runtime.getRuntime().availableProcessors();
+    this.workers = reusePortProperties.getWorkers();
+  }
+
+  @Override
+  public synchronized HttpServerBootstrapFactory getOrCreateHttpNettyServerBootstrapFactory(
+      NettyHttpConsumer consumer) {
+    if (!reusePort) {
+      return super.getOrCreateHttpNettyServerBootstrapFactory(consumer);
+    }
+    String key = consumer.getConfiguration().getAddress();
+    HttpServerBootstrapFactory answer = reusePortFactories.get(key);
+    if (answer == null) {
+      answer = new ReusePortServerBootstrapFactory(getMultiplexChannelHandler(consumer.getConfiguration().getPort()),
+          acceptors, workers);
+      ServerInitializerFactory initializerFactory = consumer.getConfiguration().getServerInitializerFactory();
+      answer.init(getCamelContext(), consumer.getConfiguration(), initializerFactory != null
+          ? initializerFactory.createPipelineFactory(consumer) : new HttpServerInitializerFactory(consumer));
+      reusePortFactories.put(key, answer);
+    }
+    return answer;
+  }
+
+  private static boolean isSupported(boolean eventLoopAffinity) {
+    if (!Epoll.isAvailable()) {
+      log.warn("vp.reuseport.enabled is set but the epoll transport is not available, binding one server channel",
+          Epoll.unavailabilityCause());
+      return false;
+    }
+    if (eventLoopAffinity) {
+      log.warn("vp.reuseport.enabled can not be combined with vp.eventloop.affinity, binding one server channel");
+      return false;
+    }
+    return true;
+  }
+}
@@ -0,0 +1,105 @@
+package se.skl.tp.vp.camel;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.CamelContext;
+import org.apache.camel.component.netty.NettyServerBootstrapConfiguration;
+import org.apache.camel.component.netty.http.HttpServerBootstrapFactory;
+import org.apache.camel.component.netty.http.HttpServerConsumerChannelFactory;
+
+/**
+ * Binds an inbound endpoint with several epoll server channels sharing the port through
+ * SO_REUSEPORT, instead of the one server channel of the standard bootstrap factory. Each server
+ * channel has a boss thread and a worker group of its own, and the kernel spreads new connections
+ * over them, so accepts and TLS handshakes are not serialized on one acceptor.
+ */
+@Log4j2
+public class ReusePortServerBootstrapFactory extends HttpServerBootstrapFactory {
+
+  private final int acceptors;
+  private final int workers;
+  private final List<Channel> serverChannels = new ArrayList<>();
+  private final List<EventLoopGroup> eventLoopGroups = new ArrayList<>();
+
+  private NettyServerBootstrapConfiguration configuration;
+  private ChannelInitializer<Channel> pipelineFactory;
+
+  public ReusePortServerBootstrapFactory(HttpServerConsumerChannelFactory channelFactory, int acceptors,
+      int workers) {
+    super(channelFactory);
+    this.acceptors = acceptors;
+    this.workers = workers;
+  }
+
+  @Override
+  public void init(CamelContext camelContext, NettyServerBootstrapConfiguration configuration,
+      ChannelInitializer<Channel> pipelineFactory) {
+    super.init(camelContext, configuration, pipelineFactory);
+    this.configuration = configuration;
+    this.pipelineFactory = pipelineFactory;
+  }
+
+  @Override
+  protected void startServerBootstrap() throws Exception {
+    InetSocketAddress address = new InetSocketAddress(configuration.getHost(), configuration.getPort());
+    for (int i = 0; i < acceptors; i++) {
+      EventLoopGroup bossGroup = new EpollEventLoopGroup(1,
+          new DefaultThreadFactory("NettyServerBoss-" + configuration.getPort() + "-" + i));
+      EventLoopGroup workerGroup = new EpollEventLoopGroup(workers,
+          new DefaultThreadFactory("NettyServerTCPWorker-" + configuration.getPort() + "-" + i));
+      eventLoopGroups.add(bossGroup);
+      eventLoopGroups.add(workerGroup);
+      serverChannels.add(createServerBootstrap(bossGroup, workerGroup).bind(address).sync().channel());
+    }
+    log.info("Bound {} with {} SO_REUSEPORT server channels", address, acceptors);
+  }
+
+  @Override
+  protected void stopServerBootstrap() {
+    log.info("Unbinding {} SO_REUSEPORT server channels on {}:{}", serverChannels.size(), configuration.getHost(),
+        configuration.getPort());
+    serverChannels.forEach(channel -> channel.close().syncUninterruptibly());
+    serverChannels.clear();
+    // Closes the accepted channels together with the event loops
+    eventLoopGroups.forEach(EventLoopGroup::shutdownGracefully);
+    eventLoopGroups.clear();
+  }
+
+  List<Channel> getServerChannels() {
+    return serverChannels;
+  }
+
+  private ServerBootstrap createServerBootstrap(EventLoopGroup bossGroup, EventLoopGroup workerGroup) {
+    ServerBootstrap serverBootstrap = new ServerBootstrap()
+        .group(bossGroup, workerGroup)
+        .channel(EpollServerSocketChannel.class)
+        .option(EpollChannelOption.SO_REUSEPORT, true)
+        .option(ChannelOption.SO_REUSEADDR, configuration.isReuseAddress())
+        .childOption(ChannelOption.SO_KEEPALIVE, configuration.isKeepAlive())
+        .childOption(ChannelOption.TCP_NODELAY, configuration.isTcpNoDelay())
+        .childOption(ChannelOption.SO_REUSEADDR, configuration.isReuseAddress())
+        .childOption(ChannelOption.CONNECT_TIMEOUT_MILLIS, configuration.getConnectTimeout())
+        .childHandler(pipelineFactory);
+    if (configuration.getBacklog() > 0) {
+      serverBootstrap.option(ChannelOption.SO_BACKLOG, configuration.getBacklog());
+    }
+    if (configuration.getOptions() != null) {
+      for (Map.Entry<String, Object> entry : configuration.getOptions().entrySet()) {
+        serverBootstrap.childOption(ChannelOption.valueOf(entry.getKey()), entry.getValue());
+      }
+    }
+    return serverBootstrap;
+  }
+}
@@ -0,0 +1,121 @@
+package se.skl.tp.vp.camel;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeUnit;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyProducer;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Placed after the http codec in the producer pipeline. Pooled keep-alive connections that have been
+ * idle longer than maxIdle are closed, so they are discarded by the pool instead of being reused after
+ * the producer or a firewall has silently dropped them. If writing a request on a reused connection
+ * still fails, so the request never reached the producer, the exchange is marked with STALE_CONNECTION
+ * so the producer route can retry it at once, and the other idle connections of the producer are closed.
+ * The retry is refused on any pooled connection, so it is only written on a connection opened for it.
+ * A request that was written is never marked, since the producer may already have processed it.
+ */
+@Log4j2
+public class StaleConnectionHandler extends IdleStateHandler {
+
+  public static final String NAME = "stale-connection";
+
+  private final NettyProducer producer;
+
+  private long requests;
+  private boolean inFlight;
+
+  public StaleConnectionHandler(NettyProducer producer, long maxIdleMillis) {
+    super(0, 0, Math.max(0, maxIdleMillis), TimeUnit.MILLISECONDS);
+    this.producer = producer;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (!(msg instanceof HttpRequest)) {
+      super.write(ctx, msg, promise);
+      return;
+    }
+    boolean reused = requests++ > 0;
+    NettyCamelState state = producer.getCorrelationManager().getState(ctx, ctx.channel(), msg);
+    Exchange exchange = state == null ? null : state.getExchange();
+    if (reused && exchange != null && exchange.getProperty(VPExchangeProperties.STALE_CONNECTION) != null) {
+      log.debug("Retry of a request on a stale connection refused on pooled connection {}", ctx.channel());
+      ReferenceCountUtil.release(msg);
+      ctx.close();
+      promise.setFailure(new ClosedChannelException());
+      return;
+    }
+    inFlight = true;
+    if (exchange != null) {
+      exchange.removeProperty(VPExchangeProperties.STALE_CONNECTION);
+    }
+    if (!reused || exchange == null || promise.isVoid()) {
+      super.write(ctx, msg, promise);
+      return;
+    }
+    // Marked before the promise fails, so the producer sees the mark when it handles the failure
+    ChannelPromise written = ctx.newPromise();
+    written.addListener(future -> {
+      if (future.isSuccess()) {
+        promise.trySuccess();
+      } else {
+        markStale(ctx.channel(), exchange);
+        promise.tryFailure(future.cause());
+      }
+    });
+    super.write(ctx, msg, written);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof LastHttpContent) {
+      inFlight = false;
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  protected void channelIdle(ChannelHandlerContext ctx, IdleStateEvent evt) throws Exception {
+    if (!inFlight) {
+      log.debug("Closing idle producer connection {}", ctx.channel());
+      ctx.close();
+      return;
+    }
+    super.channelIdle(ctx, evt);
+  }
+
+  private void markStale(Channel stale, Exchange exchange) {
+    if (exchange.getProperty(VPExchangeProperties.CONSUMER_ABORTED) != null) {
+      return;
+    }
+    exchange.setProperty(VPExchangeProperties.STALE_CONNECTION, true);
+    // The other idle connections have most likely been dropped as well
+    ChannelGroup channels = producer.getAllChannels();
+    for (Channel channel : channels) {
+      StaleConnectionHandler handler = channel.pipeline().get(StaleConnectionHandler.class);
+      if (channel != stale && handler != null) {
+        channel.eventLoop().execute(() -> handler.closeIfIdle(channel));
+      }
+    }
+  }
+
+  private void closeIfIdle(Channel channel) {
+    // Connections not yet used may be the ones opened for a retry
+    if (!inFlight && requests > 0) {
+      log.debug("Closing idle producer connection {} after a stale connection", channel);
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package se.skl.tp.vp.camel;
+
+import static se.skl.tp.vp.dns.ProducerAddressConfiguration.getHostName;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
+import org.apache.camel.component.netty.ClientInitializerFactory;
+import org.apache.camel.component.netty.NettyProducer;
+import org.apache.camel.component.netty.http.HttpClientInitializerFactory;
+import org.apache.camel.component.netty.http.NettyHttpConfiguration;
+import org.apache.camel.component.netty.http.NettyHttpProducer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.compression.CompressionStatistics;
+import se.skl.tp.vp.compression.MeasuredHttpContentDecompressor;
+import se.skl.tp.vp.config.CompressionProperties;
+import se.skl.tp.vp.config.ProducerLimitProperties;
+import se.skl.tp.vp.config.ResponseStreamingProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.limit.ProducerLatencyHandler;
+import se.skl.tp.vp.memory.MemoryBudget;
+import se.skl.tp.vp.memory.ResponseBudgetHandler;
+import se.skl.tp.vp.sslcontext.NettySslContextFactory;
+import se.skl.tp.vp.sslcontext.TlsSessionStatistics;
+import se.skl.tp.vp.streaming.ResponseStreamRelayHandler;
+
+/**
+ * Pipeline factory for the outbound producer connections. Builds the standard Camel
+ * netty-http client pipeline and then adjusts it with the VP specific handlers.
+ */
+@Component
+public class VPHttpClientInitializerFactory extends HttpClientInitializerFactory {
+
+  static final String SSL_HANDLER = "ssl";
+  static final String TLS_STATISTICS_HANDLER = "tls-statistics";
+  static final String AGGREGATOR_HANDLER = "aggregator";
+  static final String DECOMPRESSOR_HANDLER = "decompressor";
+  static final String HTTP_CODEC_HANDLER = "http";
+
+  private final NettySslContextFactory sslContextFactory;
+  private final TlsSessionStatistics tlsSessionStatistics;
+  private final boolean responseStreaming;
+  private final boolean decompressResponses;
+  private final CompressionStatistics compressionStatistics;
+  private final long keepAliveMaxIdle;
+  private final MemoryBudget memoryBudget;
+  private final ExceptionUtil exceptionUtil;
+  private final boolean producerLimit;
+  private NettyHttpProducer producer;
+  private NettyHttpConfiguration producerConfiguration;
+
+  @Autowired
+  public VPHttpClientInitializerFactory(NettySslContextFactory sslContextFactory,
+      TlsSessionStatistics tlsSessionStatistics, ResponseStreamingProperties responseStreamingProperties,
+      CompressionProperties compressionProperties, CompressionStatistics compressionStatistics,
+      @Value("${producer.keepAlive.maxIdle:10000}") long keepAliveMaxIdle,
+      MemoryBudget memoryBudget, ExceptionUtil exceptionUtil, ProducerLimitProperties producerLimitProperties) {
+    this.sslContextFactory = sslContextFactory;
+    this.tlsSessionStatistics = tlsSessionStatistics;
+    this.responseStreaming = responseStreamingProperties.isEnabled();
+    this.decompressResponses = compressionProperties.isProducerAcceptEncoding();
+    this.compressionStatistics = compressionStatistics;
+    this.keepAliveMaxIdle = keepAliveMaxIdle;
+    this.memoryBudget = memoryBudget;
+    this.exceptionUtil = exceptionUtil;
+    this.producerLimit = producerLimitProperties.isEnabled();
+  }
+
+  private VPHttpClientInitializerFactory(NettyHttpProducer producer, VPHttpClientInitializerFactory template) {
+    super(producer);
+    this.sslContextFactory = template.sslContextFactory;
+    this.tlsSessionStatistics = template.tlsSessionStatistics;
+    this.responseStreaming = template.responseStreaming;
+    this.decompressResponses = template.decompressResponses;
+    this.compressionStatistics = template.compressionStatistics;
+    this.keepAliveMaxIdle = template.keepAliveMaxIdle;
+    this.memoryBudget = template.memoryBudget;
+    this.exceptionUtil = template.exceptionUtil;
+    this.producerLimit = template.producerLimit;
+    this.producer = producer;
+    this.producerConfiguration = producer.getConfiguration();
+  }
+
+  @Override
+  public ClientInitializerFactory createPipelineFactory(NettyProducer producer) {
+    return new VPHttpClientInitializerFactory((NettyHttpProducer) producer, this);
+  }
+
+  @Override
+  protected void initChannel(Channel ch) throws Exception {
+    super.initChannel(ch);
+    ChannelPipeline pipeline = ch.pipeline();
+
+    if (pipeline.get(SSL_HANDLER) != null) {
+      if (sslContextFactory.isOpenSslEnabled()) {
+        // Peer host and port are needed for the engine to look up a resumable session
+        pipeline.replace(SSL_HANDLER, SSL_HANDLER, sslContextFactory.getClientContext()
+            .newHandler(ch.alloc(), getHostName(producerConfiguration), producerConfiguration.getPort()));
+      }
+      pipeline.addAfter(SSL_HANDLER, TLS_STATISTICS_HANDLER, tlsSessionStatistics.getOutgoingHandler());
+    }
+
+    pipeline.addAfter(HTTP_CODEC_HANDLER, StaleConnectionHandler.NAME,
+        new StaleConnectionHandler(producer, keepAliveMaxIdle));
+    pipeline.addAfter(StaleConnectionHandler.NAME, ConsumerAbortHandler.NAME, new ConsumerAbortHandler(producer));
+
+    if (producerLimit) {
+      pipeline.addAfter(ConsumerAbortHandler.NAME, ProducerLatencyHandler.NAME, new ProducerLatencyHandler(producer));
+    }
+
+    if (decompressResponses) {
+      pipeline.addBefore(AGGREGATOR_HANDLER, DECOMPRESSOR_HANDLER,
+          new MeasuredHttpContentDecompressor(compressionStatistics.getProducerResponses()));
+    }
+
+    if (memoryBudget.isEnabled()) {
+      // Before the stream relay, so streamed responses are checked against the max size as well
+      pipeline.addBefore(AGGREGATOR_HANDLER, ResponseBudgetHandler.NAME,
+          new ResponseBudgetHandler(producer, memoryBudget, exceptionUtil));
+    }
+
+    if (responseStreaming) {
+      pipeline.addBefore(AGGREGATOR_HANDLER, ResponseStreamRelayHandler.NAME, new ResponseStreamRelayHandler(producer));
+    }
+  }
+}
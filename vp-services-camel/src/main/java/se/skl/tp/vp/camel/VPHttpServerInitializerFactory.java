@@ -0,0 +1,292 @@
+package se.skl.tp.vp.camel;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.util.concurrent.EventExecutorGroup;
+import java.util.List;
+import org.apache.camel.component.netty.NettyConsumer;
+import org.apache.camel.component.netty.ServerInitializerFactory;
+import org.apache.camel.component.netty.http.HttpServerInitializerFactory;
+import org.apache.camel.component.netty.http.NettyHttpConsumer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.admission.AdmissionControlHandler;
+import se.skl.tp.vp.admission.AdmissionController;
+import se.skl.tp.vp.certificate.CertificateExtractorProcessor;
+import se.skl.tp.vp.certificate.SenderIdHandshakeHandler;
+import se.skl.tp.vp.compression.CompressionStatistics;
+import se.skl.tp.vp.compression.MeasuredHttpContentCompressor;
+import se.skl.tp.vp.compression.MeasuredHttpContentDecompressor;
+import se.skl.tp.vp.config.CompressionProperties;
+import se.skl.tp.vp.config.Http2Properties;
+import se.skl.tp.vp.config.ResponseStreamingProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+import se.skl.tp.vp.exceptions.VPFaultCodeEnum;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.expectcontinue.ExpectContinueAuthorizer;
+import se.skl.tp.vp.expectcontinue.ExpectContinueHandler;
+import se.skl.tp.vp.fairqueue.FairQueueHandler;
+import se.skl.tp.vp.fairqueue.FairQueueScheduler;
+import se.skl.tp.vp.http2.Http2AlpnHandler;
+import se.skl.tp.vp.http2.Http2HeaderCleanupHandler;
+import se.skl.tp.vp.http2.Http2PriorKnowledgeHandler;
+import se.skl.tp.vp.memory.MemoryBudget;
+import se.skl.tp.vp.memory.RequestBudgetHandler;
+import se.skl.tp.vp.sslcontext.NettySslContextFactory;
+import se.skl.tp.vp.sslcontext.TlsSessionStatistics;
+import se.skl.tp.vp.streaming.StreamedResponseGuardHandler;
+
+/**
+ * Pipeline factory for the inbound VP endpoints. Builds the standard Camel netty-http
+ * pipeline and then adjusts it with the VP specific handlers. With vp.http2.enabled a
+ * connection that negotiates HTTP/2 gets the same handlers per stream instead.
+ */
+@Component
+public class VPHttpServerInitializerFactory extends HttpServerInitializerFactory {
+
+  static final String SSL_HANDLER = "ssl";
+  static final String TLS_STATISTICS_HANDLER = "tls-statistics";
+  static final String CAMEL_HANDLER = "handler";
+  static final String DECODER_HANDLER = "decoder";
+  static final String ENCODER_HANDLER = "encoder";
+  static final String DECOMPRESSOR_HANDLER = "decompressor";
+  static final String COMPRESSOR_HANDLER = "compressor";
+  static final String AGGREGATOR_HANDLER = "aggregator";
+  static final String HTTP2_CODEC_HANDLER = "http2-codec";
+  static final String HTTP2_MULTIPLEX_HANDLER = "http2-multiplex";
+
+  static final String AFFINITY_HANDLER = "event-loop-affinity";
+
+  private static final Http2HeaderCleanupHandler HTTP2_HEADER_CLEANUP = new Http2HeaderCleanupHandler();
+  private static final EventLoopAffinityHandler EVENT_LOOP_AFFINITY = new EventLoopAffinityHandler();
+
+  private final NettySslContextFactory sslContextFactory;
+  private final TlsSessionStatistics tlsSessionStatistics;
+  private final boolean eventLoopAffinity;
+  private final boolean responseStreaming;
+  private final StreamedResponseGuardHandler streamedResponseGuardHandler;
+  private final CompressionProperties compressionProperties;
+  private final CompressionStatistics compressionStatistics;
+  private final AdmissionController admissionController;
+  private final FairQueueScheduler fairQueueScheduler;
+  private final MemoryBudget memoryBudget;
+  private final ExpectContinueAuthorizer expectContinueAuthorizer;
+  private final Http2Properties http2Properties;
+  private final CertificateExtractorProcessor certificateExtractorProcessor;
+  private final ByteBuf invalidRequestFault;
+  private final long maxContentLength;
+
+  @Autowired
+  public VPHttpServerInitializerFactory(NettySslContextFactory sslContextFactory,
+      TlsSessionStatistics tlsSessionStatistics,
+      @Value("${vp.eventloop.affinity:false}") boolean eventLoopAffinity,
+      ResponseStreamingProperties responseStreamingProperties,
+      CompressionProperties compressionProperties,
+      CompressionStatistics compressionStatistics,
+      AdmissionController admissionController,
+      FairQueueScheduler fairQueueScheduler,
+      MemoryBudget memoryBudget,
+      ExceptionUtil exceptionUtil,
+      ExpectContinueAuthorizer expectContinueAuthorizer,
+      Http2Properties http2Properties,
+      CertificateExtractorProcessor certificateExtractorProcessor) {
+    this.sslContextFactory = sslContextFactory;
+    this.tlsSessionStatistics = tlsSessionStatistics;
+    this.eventLoopAffinity = eventLoopAffinity;
+    this.responseStreaming = responseStreamingProperties.isEnabled();
+    this.streamedResponseGuardHandler = new StreamedResponseGuardHandler();
+    this.compressionProperties = compressionProperties;
+    this.compressionStatistics = compressionStatistics;
+    this.admissionController = admissionController;
+    this.fairQueueScheduler = fairQueueScheduler;
+    this.memoryBudget = memoryBudget;
+    this.expectContinueAuthorizer = expectContinueAuthorizer;
+    this.http2Properties = http2Properties;
+    this.certificateExtractorProcessor = certificateExtractorProcessor;
+    this.invalidRequestFault = NettyFaultResponse.render(exceptionUtil.createMessage(VpSemanticErrorCodeEnum.VP016),
+        VPFaultCodeEnum.Client);
+    this.maxContentLength = 0;
+  }
+
+  private VPHttpServerInitializerFactory(NettyHttpConsumer consumer, VPHttpServerInitializerFactory template) {
+    super(consumer);
+    this.sslContextFactory = template.sslContextFactory;
+    this.tlsSessionStatistics = template.tlsSessionStatistics;
+    this.eventLoopAffinity = template.eventLoopAffinity;
+    this.responseStreaming = template.responseStreaming;
+    this.streamedResponseGuardHandler = template.streamedResponseGuardHandler;
+    this.compressionProperties = template.compressionProperties;
+    this.compressionStatistics = template.compressionStatistics;
+    this.admissionController = template.admissionController;
+    this.fairQueueScheduler = template.fairQueueScheduler;
+    this.memoryBudget = template.memoryBudget;
+    this.expectContinueAuthorizer = template.expectContinueAuthorizer;
+    this.http2Properties = template.http2Properties;
+    this.certificateExtractorProcessor = template.certificateExtractorProcessor;
+    this.invalidRequestFault = template.invalidRequestFault;
+    this.maxContentLength = consumer.getConfiguration().getChunkedMaxContentLength();
+  }
+
+  @Override
+  public ServerInitializerFactory createPipelineFactory(NettyConsumer consumer) {
+    return new VPHttpServerInitializerFactory((NettyHttpConsumer) consumer, this);
+  }
+
+  @Override
+  protected void initChannel(Channel ch) throws Exception {
+    super.initChannel(ch);
+    ChannelPipeline pipeline = ch.pipeline();
+
+    if (pipeline.get(SSL_HANDLER) != null) {
+      if (sslContextFactory.isServerContextEnabled()) {
+        pipeline.replace(SSL_HANDLER, SSL_HANDLER, sslContextFactory.getServerContext().newHandler(ch.alloc()));
+      }
+      pipeline.addAfter(SSL_HANDLER, TLS_STATISTICS_HANDLER, tlsSessionStatistics.getIncomingHandler());
+      // Ahead of the ALPN handler, which removes itself on the same handshake event
+      pipeline.addAfter(TLS_STATISTICS_HANDLER, SenderIdHandshakeHandler.NAME,
+          certificateExtractorProcessor.getHandshakeHandler());
+      if (http2Properties.isEnabled()) {
+        pipeline.addAfter(SenderIdHandshakeHandler.NAME, Http2AlpnHandler.NAME, new Http2AlpnHandler(this::upgradeToHttp2));
+      }
+    } else if (http2Properties.isEnabled()) {
+      pipeline.addFirst(Http2PriorKnowledgeHandler.NAME, new Http2PriorKnowledgeHandler(this::upgradeToHttp2));
+    }
+
+    addVpHandlers(pipeline);
+  }
+
+  /**
+   * Adds the VP handlers around the decoder, aggregator and Camel handler of a HTTP/1.1 connection
+   * or of a HTTP/2 stream.
+   */
+  private void addVpHandlers(ChannelPipeline pipeline) {
+    // Directly after the decoder, so a rejected body is never decompressed or reserved. On HTTP/1.1
+    // also after the encoder, which the fault responses written from the handler must pass through,
+    // while a HTTP/2 stream's decoder encodes as well
+    pipeline.addAfter(pipeline.get(ENCODER_HANDLER) != null ? ENCODER_HANDLER : DECODER_HANDLER,
+        RequestGuardHandler.NAME, new RequestGuardHandler(maxContentLength, invalidRequestFault));
+
+    if (expectContinueAuthorizer.isEnabled()) {
+      // Ahead of the aggregator that answers 100 Continue, and of the budget so rejected bodies reserve
+      // nothing. Behind the guard, and so the encoder that its fault responses must pass through
+      pipeline.addAfter(RequestGuardHandler.NAME, ExpectContinueHandler.NAME,
+          new ExpectContinueHandler(expectContinueAuthorizer));
+    }
+
+    if (admissionController.isEnabled()) {
+      // On the request head ahead of the decompressor, budget and aggregator, so a shed body is never
+      // decompressed, reserved or buffered. Behind the guard, and so the encoder its fault responses
+      // must pass through. It sees the last part of streamed responses but not the response Camel
+      // writes for them, which the streaming guard drops
+      pipeline.addAfter(expectContinueAuthorizer.isEnabled() ? ExpectContinueHandler.NAME : RequestGuardHandler.NAME,
+          AdmissionControlHandler.NAME, new AdmissionControlHandler(admissionController));
+    }
+
+    if (compressionProperties.isDecompressRequests()) {
+      // Before the aggregator so the max content length applies to the decompressed request
+      pipeline.addBefore(AGGREGATOR_HANDLER, DECOMPRESSOR_HANDLER,
+          new MeasuredHttpContentDecompressor(compressionStatistics.getConsumerRequests()));
+    }
+
+    if (memoryBudget.isEnabled()) {
+      // Before the aggregator, so the body is reserved before it is allocated
+      pipeline.addBefore(AGGREGATOR_HANDLER, RequestBudgetHandler.NAME, new RequestBudgetHandler(memoryBudget));
+    }
+
+    if (fairQueueScheduler.isEnabled()) {
+      // After admission control, so shed requests never wait in the queues
+      pipeline.addAfter(AGGREGATOR_HANDLER, FairQueueHandler.NAME,
+          new FairQueueHandler(fairQueueScheduler, certificateExtractorProcessor));
+    }
+
+    if (compressionProperties.isCompressResponses()) {
+      pipeline.addBefore(CAMEL_HANDLER, COMPRESSOR_HANDLER, new MeasuredHttpContentCompressor(
+          compressionProperties.getLevel(), compressionProperties.getMinResponseSize(),
+          compressionStatistics.getConsumerResponses()));
+    }
+
+    if (responseStreaming) {
+      pipeline.addBefore(CAMEL_HANDLER, StreamedResponseGuardHandler.NAME, streamedResponseGuardHandler);
+    }
+
+    if (eventLoopAffinity) {
+      // On Camel's executor like the Camel handler, so the exchange is still routed there while a
+      // producer connection gets registered on the channel's own loop (see AffinityEventLoopGroup)
+      pipeline.addBefore(camelExecutorGroup(pipeline), CAMEL_HANDLER, AFFINITY_HANDLER, EVENT_LOOP_AFFINITY);
+    }
+  }
+
+  /**
+   * The executor group the Camel handler runs on, or null when it runs on the channel's event loop.
+   */
+  private static EventExecutorGroup camelExecutorGroup(ChannelPipeline pipeline) {
+    ChannelHandlerContext camelHandlerContext = pipeline.context(CAMEL_HANDLER);
+    return camelHandlerContext.executor() == pipeline.channel().eventLoop()
+        ? null : camelHandlerContext.executor().parent();
+  }
+
+  /**
+   * Replaces the HTTP/1.1 handlers of a connection that has negotiated HTTP/2 with the HTTP/2 codec
+   * and a multiplexer. Each stream gets a child channel with the HTTP/1.1 pipeline behind a codec
+   * that converts its frames, and so becomes a normal exchange in the Camel handler.
+   */
+  void upgradeToHttp2(ChannelHandlerContext ctx) {
+    ChannelPipeline pipeline = ctx.pipeline();
+    ChannelHandler camelHandler = pipeline.get(CAMEL_HANDLER);
+    // Streams of the connection are spread over Camel's executor group rather than all running
+    // on the executor the connection was given
+    EventExecutorGroup camelExecutor = camelExecutorGroup(pipeline);
+
+    List<String> names = pipeline.names();
+    for (String name : names.subList(names.indexOf(DECODER_HANDLER), names.size())) {
+      if (pipeline.get(name) != null) {
+        pipeline.remove(name);
+      }
+    }
+    pipeline.addLast(HTTP2_CODEC_HANDLER, Http2FrameCodecBuilder.forServer()
+        .initialSettings(Http2Settings.defaultSettings().maxConcurrentStreams(http2Properties.getMaxConcurrentStreams()))
+        .build());
+    pipeline.addLast(HTTP2_MULTIPLEX_HANDLER, new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+      @Override
+      protected void initChannel(Channel stream) {
+        ChannelPipeline streamPipeline = stream.pipeline();
+        streamPipeline.addLast(DECODER_HANDLER, new Http2StreamFrameToHttpObjectCodec(true));
+        streamPipeline.addLast(Http2HeaderCleanupHandler.NAME, HTTP2_HEADER_CLEANUP);
+        streamPipeline.addLast(AGGREGATOR_HANDLER, new HttpObjectAggregator((int) maxContentLength));
+        streamPipeline.addLast(camelExecutor, CAMEL_HANDLER, camelHandler);
+        addVpHandlers(streamPipeline);
+      }
+    }));
+  }
+
+  /**
+   * Lets the exchange, routed on Camel's executor, register new producer connections on the event
+   * loop of the inbound channel.
+   */
+  @ChannelHandler.Sharable
+  private static final class EventLoopAffinityHandler extends ChannelInboundHandlerAdapter {
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+      EventLoop loop = ctx.channel().eventLoop();
+      if (loop.parent() instanceof AffinityEventLoopGroup) {
+        ((AffinityEventLoopGroup) loop.parent()).runPreferring(loop, () -> ctx.fireChannelRead(msg));
+      } else {
+        ctx.fireChannelRead(msg);
+      }
+    }
+  }
+}
@@ -15,8 +15,10 @@ import org.apache.camel.component.netty.http.DefaultNettyHttpBinding;
 import org.apache.camel.component.netty.http.NettyHttpConfiguration;
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.ThreadContext;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.CompressionProperties;
 import se.skl.tp.vp.constants.HttpHeaders;
 import se.skl.tp.vp.constants.PropertyConstants;
 import se.skl.tp.vp.constants.VPExchangeProperties;
@@ -28,6 +30,9 @@ public class VPNettyHttpBinding extends DefaultNettyHttpBinding {
   @Value("${" + PropertyConstants.PRODUCER_CHUNKED_ENCODING + ":#{false}}")
   boolean useChunked;
 
+  @Autowired
+  CompressionProperties compressionProperties;
+
   @Override
   public HttpRequest toNettyRequest(Message message, String uri, NettyHttpConfiguration configuration) throws Exception {
     // DefaultNettyHttpBinding will in some situations set port to -1 in the
@@ -44,6 +49,9 @@ public class VPNettyHttpBinding extends DefaultNettyHttpBinding {
       request.headers().set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
       request.headers().remove(HttpHeaderNames.CONTENT_LENGTH);
     }
+    if (compressionProperties.isProducerAcceptEncoding()) {
+      request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, HttpHeaderValues.GZIP_DEFLATE);
+    }
     if(log.isDebugEnabled()){
       log.debug("Outgoing request headers:\n{}", request.headers().toString());
     }
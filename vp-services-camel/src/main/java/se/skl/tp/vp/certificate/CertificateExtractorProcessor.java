@@ -1,6 +1,15 @@
 package se.skl.tp.vp.certificate;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
 import org.apache.camel.Processor;
 
 public interface CertificateExtractorProcessor extends Processor {
+
+  ChannelHandler getHandshakeHandler();
+
+  /**
+   * The sender id kept at the handshake of the channel's TLS connection, or null if none was found.
+   */
+  String getSenderId(Channel channel);
 }
@@ -1,5 +1,9 @@
 package se.skl.tp.vp.certificate;
 
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.AttributeKey;
 import lombok.extern.log4j.Log4j2;
 import org.apache.camel.Exchange;
 import org.apache.camel.component.netty.NettyConstants;
@@ -12,13 +16,18 @@ import se.skl.tp.vp.errorhandling.ExceptionUtil;
 import se.skl.tp.vp.errorhandling.VpCodeMessages;
 import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
 import se.skl.tp.vp.exceptions.VpSemanticException;
+import se.skl.tp.vp.http2.Http2Streams;
 
 @Service
 @Log4j2
 public class CertificateExtractorProcessorImpl implements CertificateExtractorProcessor {
 
+  // Set by SenderIdHandshakeHandler on the connection, not on HTTP/2 streams
+  static final AttributeKey<SenderIdentity> SENDER_IDENTITY = AttributeKey.valueOf("vpSenderIdentity");
+
   SenderIdExtractor senderIdExtractor;
   private String vpInstance;
+  private final SenderIdHandshakeHandler handshakeHandler = new SenderIdHandshakeHandler(this);
   private static final String PATTERN_PROPERTY = "${" + PropertyConstants.CERTIFICATE_SENDERID_SUBJECT_PATTERN + "}";
   private static final String VP_INSTANCE = "${" + PropertyConstants.VP_INSTANCE_NAME + "}";
 
@@ -30,17 +39,69 @@ public class CertificateExtractorProcessorImpl implements CertificateExtractorPr
 
   @Override
   public void process(Exchange exchange){
-    String principal = ""+exchange.getIn().getHeader(NettyConstants.NETTY_SSL_CLIENT_CERT_SUBJECT_NAME, String.class);
-    String senderId = senderIdExtractor.extractSenderFromPrincipal(principal);
+    SenderIdentity identity = getCachedIdentity(exchange);
+    if (identity == null) {
+      identity = extract(getPrincipal(exchange));
+    }
 
-    if (senderId == null) {
+    if (identity.senderId == null) {
       throw new VpSemanticException(VpSemanticErrorCodeEnum.VP002,
           VpSemanticErrorCodeEnum.VP002 +" [" + vpInstance + "] Fel i klientcertifikat. Saknas, är av felaktig typ, eller är felaktigt utformad.",
-          "No senderId found in Certificate: " + principal);
+          "No senderId found in Certificate: " + identity.principal);
     }
 
-    exchange.setProperty(VPExchangeProperties.SENDER_ID, senderId);
+    exchange.setProperty(VPExchangeProperties.SENDER_ID, identity.senderId);
+  }
+
+  @Override
+  public ChannelHandler getHandshakeHandler() {
+    return handshakeHandler;
+  }
+
+  @Override
+  public String getSenderId(Channel channel) {
+    SenderIdentity identity = Http2Streams.connectionOf(channel).attr(SENDER_IDENTITY).get();
+    return identity == null ? null : identity.senderId;
+  }
+
+  /**
+   * Extracts the sender id from the peer certificate of the connection and keeps it, or the
+   * failure to find one, until the next handshake.
+   */
+  void cacheSenderId(Channel channel) {
+    channel.attr(SENDER_IDENTITY).set(extract(Http2Streams.peerSubjectName(channel)));
   }
 
+  private SenderIdentity extract(String subjectName) {
+    String principal = "" + subjectName;
+    return new SenderIdentity(principal, senderIdExtractor.extractSenderFromPrincipal(principal));
+  }
+
+  private static SenderIdentity getCachedIdentity(Exchange exchange) {
+    ChannelHandlerContext ctx = exchange.getIn()
+        .getHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, ChannelHandlerContext.class);
+    return ctx == null ? null : Http2Streams.connectionOf(ctx.channel()).attr(SENDER_IDENTITY).get();
+  }
+
+  private static String getPrincipal(Exchange exchange) {
+    String principal = exchange.getIn().getHeader(NettyConstants.NETTY_SSL_CLIENT_CERT_SUBJECT_NAME, String.class);
+    ChannelHandlerContext ctx = exchange.getIn()
+        .getHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, ChannelHandlerContext.class);
+    if (principal == null && ctx != null) {
+      // Camel only looks for the SslHandler in the channel's own pipeline, which HTTP/2 streams lack
+      principal = Http2Streams.peerSubjectName(ctx.channel());
+    }
+    return principal;
+  }
+
+  static final class SenderIdentity {
+    private final String principal;
+    private final String senderId;
+
+    SenderIdentity(String principal, String senderId) {
+      this.principal = principal;
+      this.senderId = senderId;
+    }
+  }
 
 }
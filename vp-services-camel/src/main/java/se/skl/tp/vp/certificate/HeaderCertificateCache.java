@@ -0,0 +1,171 @@
+package se.skl.tp.vp.certificate;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.HeaderCertificateCacheProperties;
+
+/**
+ * The result of parsing PEM certificates from the reverse proxy header, keyed on the header value.
+ * The whole value is the key, so two certificates with the same hash can never share a result.
+ * When the cache is full the least recently used result is removed, so adding a result costs the
+ * same however full the cache is.
+ *
+ * The results are split on the key's hash into stripes with a lock each, so concurrent requests
+ * seldom wait for each other. Each stripe keeps its own share of the max size and evicts on its
+ * own, so the order of eviction is only approximately least recently used over the whole cache.
+ */
+@Component
+public class HeaderCertificateCache {
+
+  // A stripe is given at least this many results, so small caches keep a single exact LRU order
+  private static final int MIN_STRIPE_SIZE = 64;
+  private static final int MAX_STRIPES = 16;
+
+  private final HeaderCertificateCacheProperties properties;
+  private final long ttlNanos;
+  private final Stripe[] stripes;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  @Autowired
+  public HeaderCertificateCache(HeaderCertificateCacheProperties properties) {
+    this.properties = properties;
+    this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(properties.getTtl());
+    int maxSize = properties.getMaxSize();
+    int stripeCount = Integer.highestOneBit(Math.max(1, Math.min(MAX_STRIPES, maxSize / MIN_STRIPE_SIZE)));
+    stripes = new Stripe[stripeCount];
+    for (int i = 0; i < stripeCount; i++) {
+      stripes[i] = new Stripe(maxSize / stripeCount + (i < maxSize % stripeCount ? 1 : 0));
+    }
+  }
+
+  public boolean isEnabled() {
+    return properties.isEnabled() && properties.getMaxSize() > 0;
+  }
+
+  /**
+   * Returns the result for the certificate, or null if it has not been parsed or has expired.
+   */
+  public Result get(String certificate) {
+    Stripe stripe = stripeOf(certificate);
+    Result result;
+    synchronized (stripe) {
+      result = stripe.get(certificate);
+      if (result != null && result.expires - System.nanoTime() <= 0) {
+        stripe.remove(certificate);
+        result = null;
+      }
+    }
+    if (result == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return result;
+  }
+
+  public Result putSenderId(String certificate, String senderId) {
+    return put(certificate, new Result(senderId, null, System.nanoTime() + ttlNanos));
+  }
+
+  public Result putFailure(String certificate, String failure) {
+    return put(certificate, new Result(null, failure, System.nanoTime() + ttlNanos));
+  }
+
+  private Result put(String certificate, Result result) {
+    Stripe stripe = stripeOf(certificate);
+    synchronized (stripe) {
+      stripe.put(certificate, result);
+    }
+    return result;
+  }
+
+  private Stripe stripeOf(String certificate) {
+    int hash = certificate.hashCode();
+    return stripes[(hash ^ (hash >>> 16)) & (stripes.length - 1)];
+  }
+
+  public int getSize() {
+    int size = 0;
+    for (Stripe stripe : stripes) {
+      synchronized (stripe) {
+        size += stripe.size();
+      }
+    }
+    return size;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+
+  public double getHitRate() {
+    long hitCount = getHits();
+    long total = hitCount + getMisses();
+    return total == 0 ? 0 : 100.0 * hitCount / total;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Size: %d, Hits: %d, Misses: %d, Evictions: %d, Hit rate: %.1f%%", getSize(), getHits(),
+        getMisses(), getEvictions(), getHitRate());
+  }
+
+  // In access order, guarded by the stripe itself
+  private final class Stripe extends LinkedHashMap<String, Result> {
+    private final int maxSize;
+
+    Stripe(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+      if (size() <= maxSize) {
+        return false;
+      }
+      if (eldest.getValue().expires - System.nanoTime() > 0) {
+        evictions.increment();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * The sender id of a certificate, or the details of why there was none.
+   */
+  public static final class Result {
+    private final String senderId;
+    private final String failure;
+    private final long expires;
+
+    private Result(String senderId, String failure, long expires) {
+      this.senderId = senderId;
+      this.failure = failure;
+      this.expires = expires;
+    }
+
+    public String getSenderId() {
+      return senderId;
+    }
+
+    public String getFailure() {
+      return failure;
+    }
+  }
+}
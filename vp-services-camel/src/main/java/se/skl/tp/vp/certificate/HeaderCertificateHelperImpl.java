@@ -6,6 +6,7 @@ import lombok.extern.log4j.Log4j2;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.HeaderCertificateCacheProperties;
 import se.skl.tp.vp.constants.HttpHeaders;
 import se.skl.tp.vp.constants.PropertyConstants;
 import se.skl.tp.vp.errorhandling.ExceptionUtil;
@@ -18,16 +19,43 @@ public class HeaderCertificateHelperImpl implements HeaderCertificateHelper {
 
   private SenderIdExtractor senderIdExtractor;
   private String vpInstance;
+  private HeaderCertificateCache certificateCache;
   private static final String PATTERN_PROPERTY = "${" + PropertyConstants.CERTIFICATE_SENDERID_SUBJECT_PATTERN + "}";
   private static final String VP_INSTANCE = "${" + PropertyConstants.VP_INSTANCE_NAME + "}";
 
+  public HeaderCertificateHelperImpl(String certificateSenderId, String vpInstance) {
+    this(certificateSenderId, vpInstance, new HeaderCertificateCache(new HeaderCertificateCacheProperties()));
+  }
+
   @Autowired
-  public HeaderCertificateHelperImpl(@Value(PATTERN_PROPERTY) String certificateSenderId, @Value(VP_INSTANCE) String vpInstance) {
+  public HeaderCertificateHelperImpl(@Value(PATTERN_PROPERTY) String certificateSenderId, @Value(VP_INSTANCE) String vpInstance,
+      HeaderCertificateCache certificateCache) {
     senderIdExtractor = new SenderIdExtractor(certificateSenderId);
     this.vpInstance = vpInstance;
+    this.certificateCache = certificateCache;
   }
 
   public String getSenderIDFromHeaderCertificate(Object certificate) {
+    if (!certificateCache.isEnabled() || !(certificate instanceof String)) {
+      return extractSenderId(certificate);
+    }
+
+    String pemCertificate = (String) certificate;
+    HeaderCertificateCache.Result result = certificateCache.get(pemCertificate);
+    if (result == null) {
+      try {
+        result = certificateCache.putSenderId(pemCertificate, extractSenderId(certificate));
+      } catch (VpSemanticException e) {
+        result = certificateCache.putFailure(pemCertificate, e.getMessageDetails());
+      }
+    }
+    if (result.getFailure() != null) {
+      throw createVP002Exception(result.getFailure());
+    }
+    return result.getSenderId();
+  }
+
+  private String extractSenderId(Object certificate) {
     String senderId = null;
     boolean isUnknownCertificateType = false;
 
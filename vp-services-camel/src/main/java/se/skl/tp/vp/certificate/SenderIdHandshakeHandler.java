@@ -0,0 +1,31 @@
+package se.skl.tp.vp.certificate;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+
+/**
+ * Placed after the SslHandler in the consumer pipeline. When a handshake completes the sender id
+ * is extracted from the peer certificate and kept on the connection, so the requests sent over it
+ * are not parsed again in CertificateExtractorProcessorImpl.
+ */
+@Sharable
+public class SenderIdHandshakeHandler extends ChannelInboundHandlerAdapter {
+
+  public static final String NAME = "sender-id";
+
+  private final CertificateExtractorProcessorImpl certificateExtractorProcessor;
+
+  SenderIdHandshakeHandler(CertificateExtractorProcessorImpl certificateExtractorProcessor) {
+    this.certificateExtractorProcessor = certificateExtractorProcessor;
+  }
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (evt instanceof SslHandshakeCompletionEvent && ((SslHandshakeCompletionEvent) evt).isSuccess()) {
+      certificateExtractorProcessor.cacheSenderId(ctx.channel());
+    }
+    super.userEventTriggered(ctx, evt);
+  }
+}
@@ -0,0 +1,93 @@
+package se.skl.tp.vp.compression;
+
+import io.netty.buffer.ByteBufHolder;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.stereotype.Component;
+
+/**
+ * Counts bytes before and after compression, and the time spent, for decompressed consumer requests,
+ * compressed consumer responses and decompressed producer responses.
+ */
+@Component
+public class CompressionStatistics {
+
+  private final Counters consumerRequests = new Counters();
+  private final Counters consumerResponses = new Counters();
+  private final Counters producerResponses = new Counters();
+
+  public Counters getConsumerRequests() {
+    return consumerRequests;
+  }
+
+  public Counters getConsumerResponses() {
+    return consumerResponses;
+  }
+
+  public Counters getProducerResponses() {
+    return producerResponses;
+  }
+
+  static long readableBytes(Object msg) {
+    return msg instanceof ByteBufHolder ? ((ByteBufHolder) msg).content().readableBytes() : 0;
+  }
+
+  static long readableBytes(List<Object> out, int fromIndex) {
+    long bytes = 0;
+    for (int i = fromIndex; i < out.size(); i++) {
+      bytes += readableBytes(out.get(i));
+    }
+    return bytes;
+  }
+
+  /**
+   * True if the codec produced new messages, false if it passed the message on untouched
+   * because the message was not to be (de)compressed.
+   */
+  static boolean isTransformed(Object msg, List<Object> out, int fromIndex) {
+    for (int i = fromIndex; i < out.size(); i++) {
+      if (out.get(i) == msg) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public static class Counters {
+
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder uncompressedBytes = new LongAdder();
+    private final LongAdder nanos = new LongAdder();
+
+    void add(long compressed, long uncompressed, long elapsedNanos) {
+      compressedBytes.add(compressed);
+      uncompressedBytes.add(uncompressed);
+      nanos.add(elapsedNanos);
+    }
+
+    public long getCompressedBytes() {
+      return compressedBytes.sum();
+    }
+
+    public long getUncompressedBytes() {
+      return uncompressedBytes.sum();
+    }
+
+    public long getTimeMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(nanos.sum());
+    }
+
+    public double getRatio() {
+      long compressed = getCompressedBytes();
+      return compressed == 0 ? 0 : (double) getUncompressedBytes() / compressed;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(Locale.ROOT, "Uncompressed: %d, Compressed: %d, Ratio: %.2f, Time: %d ms",
+          getUncompressedBytes(), getCompressedBytes(), getRatio(), getTimeMillis());
+    }
+  }
+}
@@ -0,0 +1,34 @@
+package se.skl.tp.vp.compression;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContentCompressor;
+import io.netty.handler.codec.http.HttpObject;
+import java.util.List;
+
+/**
+ * HttpContentCompressor that reports compressed volume and time to the given counters.
+ */
+public class MeasuredHttpContentCompressor extends HttpContentCompressor {
+
+  private static final int WINDOW_BITS = 15;
+  private static final int MEM_LEVEL = 8;
+
+  private final CompressionStatistics.Counters counters;
+
+  public MeasuredHttpContentCompressor(int compressionLevel, int contentSizeThreshold,
+      CompressionStatistics.Counters counters) {
+    super(compressionLevel, WINDOW_BITS, MEM_LEVEL, contentSizeThreshold);
+    this.counters = counters;
+  }
+
+  @Override
+  protected void encode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+    int fromIndex = out.size();
+    long uncompressed = CompressionStatistics.readableBytes(msg);
+    long start = System.nanoTime();
+    super.encode(ctx, msg, out);
+    if (CompressionStatistics.isTransformed(msg, out, fromIndex)) {
+      counters.add(CompressionStatistics.readableBytes(out, fromIndex), uncompressed, System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package se.skl.tp.vp.compression;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContentDecompressor;
+import io.netty.handler.codec.http.HttpObject;
+import java.util.List;
+
+/**
+ * HttpContentDecompressor that reports decompressed volume and time to the given counters.
+ */
+public class MeasuredHttpContentDecompressor extends HttpContentDecompressor {
+
+  private final CompressionStatistics.Counters counters;
+
+  public MeasuredHttpContentDecompressor(CompressionStatistics.Counters counters) {
+    this.counters = counters;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, HttpObject msg, List<Object> out) throws Exception {
+    int fromIndex = out.size();
+    long compressed = CompressionStatistics.readableBytes(msg);
+    long start = System.nanoTime();
+    super.decode(ctx, msg, out);
+    if (CompressionStatistics.isTransformed(msg, out, fromIndex)) {
+      counters.add(compressed, CompressionStatistics.readableBytes(out, fromIndex), System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,28 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.admission")
+public class AdmissionProperties {
+
+  // Limit the requests in progress on the inbound endpoints, excess requests get 503 at once
+  boolean enabled = false;
+
+  // Limit at start, and the bounds it is kept within
+  int initialLimit = 500;
+  int minLimit = 50;
+  int maxLimit = 5000;
+
+  // The limit is multiplied by backoffRatio when a request is slower than tolerance times the average
+  double backoffRatio = 0.9;
+  double tolerance = 2.0;
+
+}
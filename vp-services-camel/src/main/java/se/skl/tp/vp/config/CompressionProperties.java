@@ -0,0 +1,31 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.compression")
+public class CompressionProperties {
+
+  // Decompress gzip/deflate encoded requests from consumers before they are read
+  boolean decompressRequests = false;
+
+  // Compress responses to consumers that send Accept-Encoding gzip/deflate
+  boolean compressResponses = false;
+
+  // Send Accept-Encoding gzip/deflate to producers and decompress their responses
+  boolean producerAcceptEncoding = false;
+
+  // Compression level 1-9 used for responses to consumers
+  int level = 6;
+
+  // Responses with a smaller Content-Length are sent uncompressed
+  int minResponseSize = 1024;
+
+}
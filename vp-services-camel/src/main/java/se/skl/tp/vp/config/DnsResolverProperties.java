@@ -0,0 +1,35 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.dns")
+public class DnsResolverProperties {
+
+  // Resolve producer hosts asynchronously before the producer is called
+  boolean enabled = false;
+
+  // Start the lookup right after vagval, in parallel with the rest of the request processing
+  boolean prefetch = true;
+
+  // Bounds (seconds) for the TTL of cached addresses, the record TTL is used in between
+  int minTtl = 0;
+  int maxTtl = 300;
+
+  // Seconds a failed lookup is cached
+  int negativeTtl = 10;
+
+  // Timeout (ms) for each DNS query
+  long queryTimeout = 5000;
+
+  // Interval (ms) for refreshing the addresses of producer hosts in use, 0 turns refresh off
+  long refreshInterval = 30000;
+
+}
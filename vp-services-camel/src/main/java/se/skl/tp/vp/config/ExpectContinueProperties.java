@@ -0,0 +1,25 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.expectcontinue")
+public class ExpectContinueProperties {
+
+  // Check the sender of requests with Expect: 100-continue before the body is sent
+  boolean enabled = false;
+
+  // Threads the checks run on, so they are kept off the event loops
+  int threads = 2;
+
+  // Header with the receiver of the call, checked with the contract from SOAPAction against behörighet if both are present
+  String receiverHeader = "";
+
+}
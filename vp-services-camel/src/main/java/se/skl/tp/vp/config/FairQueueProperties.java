@@ -0,0 +1,35 @@
+package se.skl.tp.vp.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.fairqueue")
+public class FairQueueProperties {
+
+  // Queue inbound requests per sender and hand them to the routes in weighted turns
+  boolean enabled = false;
+
+  // Requests handed to the routes at the same time, the rest wait in the queues
+  int maxConcurrent = 200;
+
+  // Senders that may have a queue of their own at the same time, others wait in the unknown queue.
+  // Also the number of senders whose wait times are kept for getstatus
+  int maxQueues = 1000;
+
+  // Longest time a request may wait in its queue (mS), it is then answered with VP012
+  long maxQueueDelay = 1000;
+
+  // Requests a sender may have handed over per turn, per senderId or the default
+  int defaultWeight = 1;
+  Map<String, Integer> weights = new HashMap<>();
+
+}
@@ -0,0 +1,25 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.headercertificate.cache")
+public class HeaderCertificateCacheProperties {
+
+  // Keep the sender id, or the failure to get one, of certificates from the reverse proxy header
+  boolean enabled = false;
+
+  // Max number of certificates kept
+  int maxSize = 1000;
+
+  // Time in ms a certificate is kept after it was parsed
+  long ttl = 3600000;
+
+}
@@ -0,0 +1,22 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.http2")
+public class Http2Properties {
+
+  // Accept HTTP/2 from consumers, h2 negotiated with ALPN on the https endpoint and h2c with prior knowledge on http
+  boolean enabled = false;
+
+  // Streams a consumer may have open at the same time on one connection
+  long maxConcurrentStreams = 100;
+
+}
@@ -0,0 +1,22 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.ipwhitelist")
+public class IpWhitelistProperties {
+
+  // File with the whitelist used instead of ip.whitelist, same path format as timeout.json.file. Empty for ip.whitelist only
+  String file = "";
+
+  // How often the file is checked for changes (mS), 0 turns reloading off
+  long reloadInterval = 60000;
+
+}
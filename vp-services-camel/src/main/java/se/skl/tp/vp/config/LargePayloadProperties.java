@@ -0,0 +1,28 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.largepayload")
+public class LargePayloadProperties {
+
+  // Run calls with large requests or large responses on threads and event loops of their own
+  boolean enabled = false;
+
+  // Size in bytes from which a request, or the usual response of a contract, is large
+  long threshold = 1048576;
+
+  // Threads processing the routes of large calls
+  int threads = 4;
+
+  // Event loops for producer calls with large payloads
+  int workers = 4;
+
+}
@@ -0,0 +1,33 @@
+package se.skl.tp.vp.config;
+
+import java.util.HashMap;
+import java.util.Map;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.memory.budget")
+public class MemoryBudgetProperties {
+
+  // Reserve the size of request and producer response bodies against a budget before they are read
+  boolean enabled = false;
+
+  // Bytes of bodies that may be in flight at the same time
+  long maxBytes = 268435456;
+
+  // Bodies from this size are rejected when the budget is used up, smaller ones are always let through
+  long largeSize = 1048576;
+
+  // Share of max direct memory used by Netty's pools above which large bodies are rejected, 0 turns it off
+  double directMemoryWatermark = 0.85;
+
+  // Max producer response size in bytes per service contract namespace
+  Map<String, Long> maxResponseSizes = new HashMap<>();
+
+}
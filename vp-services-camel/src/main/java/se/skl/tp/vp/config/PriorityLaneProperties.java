@@ -0,0 +1,50 @@
+package se.skl.tp.vp.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.priority")
+public class PriorityLaneProperties {
+
+  // Process calls in priority lanes by service contract
+  boolean enabled = false;
+
+  // Calls processed at the same time over all lanes
+  int maxConcurrent = 500;
+
+  // Queue for calls in contracts without a lane, the lowest priority
+  int maxQueued = 100;
+  long queueTimeout = 500;
+
+  // Lanes in priority order, the first has the highest priority
+  List<Lane> lanes = new ArrayList<>();
+
+  @Data
+  public static class Lane {
+
+    // Name shown in status
+    String name;
+
+    // Regular expression for service contract namespaces belonging to the lane
+    String contracts = "";
+
+    // Slots of maxConcurrent only this lane may use
+    int reserved = 0;
+
+    // Max calls waiting for a slot, more are rejected
+    int maxQueued = 100;
+
+    // Longest wait for a slot (mS), the call is then rejected
+    long queueTimeout = 500;
+  }
+
+}
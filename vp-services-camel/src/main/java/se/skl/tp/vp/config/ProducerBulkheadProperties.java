@@ -0,0 +1,46 @@
+package se.skl.tp.vp.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.producer.bulkhead")
+public class ProducerBulkheadProperties {
+
+  // Producer groups with event loops of their own, producers not in a group use the shared pools
+  List<Group> groups = new ArrayList<>();
+
+  @Data
+  public static class Group {
+
+    // Name shown in status
+    String name;
+
+    // Regular expression for producer host[:port] belonging to the group
+    String hosts = "";
+
+    // Regular expression for service contract namespaces belonging to the group
+    String contracts = "";
+
+    // Event loops for the group, 0 gives two per core
+    int workers = 4;
+
+    // Max concurrent calls to the group's producers
+    int maxConcurrent = 100;
+
+    // Max calls waiting for one of the concurrent slots, more are rejected
+    int maxQueued = 100;
+
+    // Max time (ms) a call waits for a slot, then it is rejected
+    long queueTimeout = 1000;
+  }
+
+}
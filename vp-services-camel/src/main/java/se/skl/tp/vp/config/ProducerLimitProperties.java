@@ -0,0 +1,33 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.producer.limit")
+public class ProducerLimitProperties {
+
+  // Limit concurrent calls per producer host, adjusted on the observed latency
+  boolean enabled = false;
+
+  // Limit for a new producer host, and the bounds it is kept within
+  int initialLimit = 20;
+  int minLimit = 2;
+  int maxLimit = 200;
+
+  // The limit is multiplied by backoffRatio when a call times out, can not connect or is slower than
+  // tolerance times the average
+  double backoffRatio = 0.9;
+  double tolerance = 2.0;
+
+  // Calls over the limit wait at most queueTimeout ms in a queue of maxQueued, then they are rejected
+  int maxQueued = 20;
+  long queueTimeout = 100;
+
+}
@@ -0,0 +1,33 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.producer.retry")
+public class ProducerRetryProperties {
+
+  // Max number of retries per request, a negative value retries for as long as the budget allows
+  int attempts = 1;
+
+  private Budget budget = new Budget();
+
+  @Data
+  public static class Budget {
+
+    // Retries allowed per producer, as a share of the requests within the window
+    double ratio = 0.1;
+
+    // Retries always allowed per producer within the window, so low traffic can still be retried
+    int minRetries = 10;
+
+    // Length of the sliding window in milliseconds
+    long window = 10000;
+  }
+}
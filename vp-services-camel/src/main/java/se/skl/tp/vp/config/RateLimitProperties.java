@@ -0,0 +1,25 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.ratelimit")
+public class RateLimitProperties {
+
+  // Limit the call rate per sender, and per sender and contract, as configured in file
+  boolean enabled = false;
+
+  // Json file with the limits, same path format as timeout.json.file
+  String file = "ratelimitconfig.json";
+
+  // How often the file is checked for changes (mS), 0 turns reloading off
+  long reloadInterval = 60000;
+
+}
@@ -0,0 +1,22 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.response.streaming")
+public class ResponseStreamingProperties {
+
+  // Relay producer responses to the consumer as they arrive instead of aggregating them
+  boolean enabled = false;
+
+  // Responses with a smaller Content-Length are aggregated as usual, chunked responses are always streamed
+  long threshold = 1048576;
+
+}
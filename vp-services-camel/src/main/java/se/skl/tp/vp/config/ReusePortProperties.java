@@ -0,0 +1,25 @@
+package se.skl.tp.vp.config;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+@Data
+@NoArgsConstructor
+@Configuration
+@EnableConfigurationProperties
+@ConfigurationProperties(prefix = "vp.reuseport")
+public class ReusePortProperties {
+
+  // Bind each inbound endpoint with several SO_REUSEPORT server channels, needs Linux and the epoll transport
+  boolean enabled = false;
+
+  // Server channels per endpoint, each with its own boss thread and worker group, 0 means one per core
+  int acceptors = 0;
+
+  // Event loops in the worker group of each server channel
+  int workers = 2;
+
+}
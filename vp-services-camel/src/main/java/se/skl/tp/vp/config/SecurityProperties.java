@@ -17,6 +17,24 @@ public class SecurityProperties {
   private String allowedOutgoingCipherSuites;
   private Store store;
 
+  /**
+   * TLS engine used by the netty endpoints, JDK or OPENSSL (requires netty-tcnative)
+   */
+  private String provider = "JDK";
+  private Session session = new Session();
+
+  @Data
+  public static class Session {
+    /**
+     * Max number of cached TLS sessions, per direction
+     */
+    private long cacheSize = 20480;
+    /**
+     * Timeout in seconds for cached TLS sessions and session tickets
+     */
+    private long timeout = 300;
+  }
+
   @Data
   public static class Store {
     private String location;
@@ -38,5 +38,15 @@ public class VPExchangeProperties {
 
   public static final String EXCHANGE_CREATED = "exchangeCreated";
 
+  public static final String STREAMED_RESPONSE = "streamedResponse";
+  public static final String STREAMED_RESPONSE_LENGTH = "streamedResponseLength";
+
+  public static final String STALE_CONNECTION = "staleConnection";
+  public static final String CONSUMER_ABORTED = "consumerAborted";
+  public static final String PRODUCER_LATENCY = "producerLatency";
+
+  public static final String PRODUCER_WORKER_GROUP = "producerWorkerGroup";
+  public static final String LARGE_PAYLOAD = "largePayload";
+
 
 }
@@ -0,0 +1,43 @@
+package se.skl.tp.vp.dns;
+
+import org.apache.camel.component.netty.NettyConfiguration;
+import org.apache.camel.component.netty.http.NettyHttpConfiguration;
+
+/**
+ * Configuration of the netty-http component when vp.dns.enabled is set. Endpoint configurations are
+ * copied from it, so producers connect to the address the ProducerAddressResolver looked up for the
+ * host instead of having the JDK resolve the host name, blocking, when a connection is opened. Until
+ * the host has been looked up the host name is used as before. The host name is still what is sent
+ * in the Host header and used for TLS.
+ */
+public class ProducerAddressConfiguration extends NettyHttpConfiguration {
+
+  private final ProducerAddressResolver resolver;
+
+  public ProducerAddressConfiguration(ProducerAddressResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  @Override
+  public String getHost() {
+    String host = super.getHost();
+    // Only producer endpoints have a client initializer, consumers bind to the configured host
+    if (host == null || getClientInitializerFactory() == null) {
+      return host;
+    }
+    String address = resolver.getResolvedAddress(host);
+    return address != null ? address : host;
+  }
+
+  public String getHostName() {
+    return super.getHost();
+  }
+
+  /**
+   * The host name of the endpoint, also when it connects to the looked up address.
+   */
+  public static String getHostName(NettyConfiguration configuration) {
+    return configuration instanceof ProducerAddressConfiguration
+        ? ((ProducerAddressConfiguration) configuration).getHostName() : configuration.getHost();
+  }
+}
@@ -0,0 +1,35 @@
+package se.skl.tp.vp.dns;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.Processor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.DnsResolverProperties;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Starts resolving the producer host as soon as vagval has found it, without waiting for the result.
+ * Authorization, header and charset processing then run while the lookup is in flight, and the
+ * producer route joins the same lookup before the call.
+ */
+@Service
+public class ProducerAddressPrefetchProcessor implements Processor {
+
+  private final ProducerAddressResolver resolver;
+  private final boolean prefetch;
+
+  @Autowired
+  public ProducerAddressPrefetchProcessor(ProducerAddressResolver resolver, DnsResolverProperties dnsProperties) {
+    this.resolver = resolver;
+    this.prefetch = dnsProperties.isPrefetch();
+  }
+
+  @Override
+  public void process(Exchange exchange) {
+    String host = ProducerAddressProcessorImpl.getHost(
+        exchange.getProperty(VPExchangeProperties.VAGVAL_HOST, String.class));
+    if (prefetch && resolver.isEnabled() && host != null) {
+      resolver.resolve(host);
+    }
+  }
+}
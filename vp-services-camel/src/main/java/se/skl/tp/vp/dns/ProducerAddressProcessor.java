@@ -0,0 +1,6 @@
+package se.skl.tp.vp.dns;
+
+import org.apache.camel.AsyncProcessor;
+
+public interface ProducerAddressProcessor extends AsyncProcessor {
+}
@@ -0,0 +1,84 @@
+package se.skl.tp.vp.dns;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.NetUtil;
+import io.netty.util.concurrent.Future;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyConstants;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Resolves the producer host before the producer is called, without blocking the calling thread.
+ * While a lookup is pending the exchange is suspended, and it continues on the executor of the
+ * consumer channel when the answer arrives. The producer then connects to the address found, see
+ * ProducerAddressConfiguration. A failed lookup fails the exchange with the same UnknownHostException
+ * as a failed connect would.
+ */
+@Service
+public class ProducerAddressProcessorImpl extends AsyncProcessorSupport implements ProducerAddressProcessor {
+
+  private final ProducerAddressResolver resolver;
+
+  @Autowired
+  public ProducerAddressProcessorImpl(ProducerAddressResolver resolver) {
+    this.resolver = resolver;
+  }
+
+  @Override
+  public boolean process(Exchange exchange, AsyncCallback callback) {
+    String host = getHost(exchange.getProperty(VPExchangeProperties.VAGVAL_HOST, String.class));
+    if (!resolver.isEnabled() || host == null) {
+      callback.done(true);
+      return true;
+    }
+
+    Future<InetAddress> future = resolver.resolve(host);
+    if (future.isDone()) {
+      handleResult(exchange, host, future);
+      callback.done(true);
+      return true;
+    }
+
+    ChannelHandlerContext ctx = exchange.getIn()
+        .getHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, ChannelHandlerContext.class);
+    future.addListener(f -> {
+      handleResult(exchange, host, future);
+      if (ctx == null) {
+        callback.done(false);
+      } else {
+        ctx.executor().execute(() -> callback.done(false));
+      }
+    });
+    return false;
+  }
+
+  static String getHost(String vagvalHost) {
+    if (vagvalHost == null || vagvalHost.isEmpty() || vagvalHost.startsWith("[")) {
+      // IPv6 literals are not resolved
+      return null;
+    }
+    int portIndex = vagvalHost.lastIndexOf(':');
+    String host = portIndex < 0 ? vagvalHost : vagvalHost.substring(0, portIndex);
+    return NetUtil.isValidIpV4Address(host) ? null : host;
+  }
+
+  private static void handleResult(Exchange exchange, String host, Future<InetAddress> future) {
+    if (future.isSuccess()) {
+      return;
+    }
+    Throwable cause = future.cause();
+    if (cause instanceof UnknownHostException) {
+      exchange.setException(cause);
+    } else {
+      UnknownHostException exception = new UnknownHostException(host);
+      exception.initCause(cause);
+      exchange.setException(exception);
+    }
+  }
+}
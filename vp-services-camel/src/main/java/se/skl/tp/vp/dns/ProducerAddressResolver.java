@@ -0,0 +1,322 @@
+package se.skl.tp.vp.dns;
+
+import static se.skl.tp.vp.wsdl.PathHelper.getPath;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.handler.codec.dns.DnsRecord;
+import io.netty.resolver.HostsFileEntriesResolver;
+import io.netty.resolver.dns.DefaultDnsCache;
+import io.netty.resolver.dns.DnsCache;
+import io.netty.resolver.dns.DnsCacheEntry;
+import io.netty.resolver.dns.DnsNameResolver;
+import io.netty.resolver.dns.DnsNameResolverBuilder;
+import io.netty.resolver.dns.DnsServerAddressStreamProvider;
+import io.netty.resolver.dns.DnsServerAddressStreamProviders;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.NoSuchFileException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.DnsResolverProperties;
+
+/**
+ * Asynchronous resolver for producer hosts, based on the Netty DnsNameResolver running on an event
+ * loop of its own. Addresses are cached for the TTL of the DNS records, within the configured bounds,
+ * and failed lookups for the negative TTL. Hosts that producers are called on, and the hosts of the
+ * producer addresses in the TAK snapshot, are refreshed in the background, so requests seldom have to
+ * wait for a query. A failed refresh keeps the cached address. The last address found for each host
+ * is what the producers connect to, see ProducerAddressConfiguration.
+ */
+@Service
+@Log4j2
+public class ProducerAddressResolver implements DisposableBean {
+
+  // Hosts not used within this many refresh intervals are no longer refreshed
+  static final int REFRESH_IDLE_INTERVALS = 10;
+
+  private static final String TAK_ADDRESS_ELEMENT = "adress";
+
+  private final boolean enabled;
+  private final long refreshInterval;
+  private final Map<String, Long> producerHosts = new ConcurrentHashMap<>();
+  private final Map<String, Future<InetAddress>> inflight = new ConcurrentHashMap<>();
+  private final Map<String, InetAddress> addresses = new ConcurrentHashMap<>();
+  private volatile Set<String> takHosts = Collections.emptySet();
+  private long takFileLastModified = -1;
+
+  private EventLoopGroup eventLoopGroup;
+  private EventLoop eventLoop;
+  private DnsNameResolver resolver;
+  private DnsNameResolver refresher;
+
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder refreshes = new LongAdder();
+  private final LongAdder totalNanos = new LongAdder();
+  private final AtomicLong maxNanos = new AtomicLong();
+
+  @Autowired
+  public ProducerAddressResolver(DnsResolverProperties dnsProperties) {
+    this(dnsProperties, DnsServerAddressStreamProviders.platformDefault(), HostsFileEntriesResolver.DEFAULT);
+  }
+
+  ProducerAddressResolver(DnsResolverProperties dnsProperties, DnsServerAddressStreamProvider nameServers,
+      HostsFileEntriesResolver hostsFile) {
+    this.enabled = dnsProperties.isEnabled();
+    this.refreshInterval = dnsProperties.getRefreshInterval();
+    if (!enabled) {
+      return;
+    }
+
+    eventLoopGroup = new NioEventLoopGroup(1, new DefaultThreadFactory("NettyDnsResolver"));
+    eventLoop = eventLoopGroup.next();
+    DnsCache cache = new DefaultDnsCache(dnsProperties.getMinTtl(), dnsProperties.getMaxTtl(),
+        dnsProperties.getNegativeTtl());
+    resolver = createResolver(eventLoop, cache, dnsProperties, nameServers, hostsFile);
+    refresher = createResolver(eventLoop, new RefreshDnsCache(cache), dnsProperties, nameServers, hostsFile);
+
+    if (refreshInterval > 0) {
+      eventLoop.scheduleAtFixedRate(this::refreshProducerHosts, refreshInterval, refreshInterval,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Resolves the host, joining a lookup of the same host that is already in flight. The lookup is
+   * registered as in flight before it is started, so concurrent callers never start a second one.
+   */
+  public Future<InetAddress> resolve(String host) {
+    producerHosts.put(host, System.currentTimeMillis());
+    Promise<InetAddress> promise = eventLoop.newPromise();
+    Future<InetAddress> pending = inflight.putIfAbsent(host, promise);
+    if (pending != null) {
+      return pending;
+    }
+
+    long start = System.nanoTime();
+    resolver.resolve(host, promise);
+    if (promise.isDone()) {
+      // Answered from the cache, recorded before the caller goes on to connect
+      onResolved(host, promise, start);
+    } else {
+      promise.addListener(f -> onResolved(host, promise, start));
+    }
+    return promise;
+  }
+
+  private void onResolved(String host, Future<InetAddress> future, long start) {
+    inflight.remove(host, future);
+    long nanos = System.nanoTime() - start;
+    lookups.increment();
+    totalNanos.add(nanos);
+    maxNanos.accumulateAndGet(nanos, Math::max);
+    if (future.isSuccess()) {
+      addresses.put(host, future.getNow());
+    } else {
+      failures.increment();
+      log.warn("Failed to resolve producer host {}: {}", host, future.cause().getMessage());
+    }
+  }
+
+  /**
+   * The address last found for the host, as a literal, or null if it has not been looked up.
+   */
+  public String getResolvedAddress(String host) {
+    InetAddress address = addresses.get(host);
+    return address == null ? null : address.getHostAddress();
+  }
+
+  void refreshProducerHosts() {
+    long idleLimit = System.currentTimeMillis() - REFRESH_IDLE_INTERVALS * refreshInterval;
+    producerHosts.values().removeIf(lastUsed -> lastUsed < idleLimit);
+    Set<String> hosts = new HashSet<>(takHosts);
+    hosts.addAll(producerHosts.keySet());
+    addresses.keySet().retainAll(hosts);
+    for (String host : hosts) {
+      Future<InetAddress> future = refresher.resolve(host);
+      future.addListener(f -> {
+        if (f.isSuccess()) {
+          addresses.put(host, future.getNow());
+          refreshes.increment();
+        } else {
+          log.debug("Refresh of producer host {} failed, keeping cached address: {}", host, f.cause().getMessage());
+        }
+      });
+    }
+  }
+
+  /**
+   * Reads the hosts of the producer addresses in the TAK snapshot again if the file has changed. They
+   * are refreshed along with the hosts in use, so the first calls to a producer need not wait either.
+   * The current hosts are kept if the file can not be read.
+   */
+  public synchronized void loadTakHosts(String file) {
+    try {
+      File takFile = getPath(file).toFile();
+      if (takFile.lastModified() == takFileLastModified) {
+        return;
+      }
+      Set<String> hosts;
+      try (InputStream in = new FileInputStream(takFile)) {
+        hosts = readAddressHosts(in);
+      }
+      takFileLastModified = takFile.lastModified();
+      takHosts = hosts;
+      log.info("Producer hosts read from TAK snapshot {}, {} hosts", file, hosts.size());
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      log.debug("TAK snapshot not found at {}, no producer hosts read", file);
+    } catch (URISyntaxException | IOException | XMLStreamException e) {
+      log.warn("Reading producer hosts from TAK snapshot " + file + " failed.", e);
+    }
+  }
+
+  static Set<String> readAddressHosts(InputStream in) throws XMLStreamException {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    XMLStreamReader reader = factory.createXMLStreamReader(in);
+    Set<String> hosts = new HashSet<>();
+    try {
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT && TAK_ADDRESS_ELEMENT.equals(reader.getLocalName())) {
+          String host = getAddressHost(reader.getElementText());
+          if (host != null) {
+            hosts.add(host);
+          }
+        }
+      }
+    } finally {
+      reader.close();
+    }
+    return hosts;
+  }
+
+  private static String getAddressHost(String address) {
+    try {
+      String host = new URI(address.trim()).getHost();
+      return host == null ? null : ProducerAddressProcessorImpl.getHost(host);
+    } catch (URISyntaxException e) {
+      return null;
+    }
+  }
+
+  public int getProducerHosts() {
+    return producerHosts.size();
+  }
+
+  public int getTakHosts() {
+    return takHosts.size();
+  }
+
+  public long getLookups() {
+    return lookups.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  public long getRefreshes() {
+    return refreshes.sum();
+  }
+
+  @Override
+  public String toString() {
+    long count = getLookups();
+    return String.format(
+        "Lookups: %d, Failures: %d, AvgMillis: %.2f, MaxMillis: %.2f, Refreshes: %d, ProducerHosts: %d, TakHosts: %d",
+        count, getFailures(), count == 0 ? 0.0 : totalNanos.sum() / (count * 1e6), maxNanos.get() / 1e6,
+        getRefreshes(), getProducerHosts(), getTakHosts());
+  }
+
+  @Override
+  public void destroy() {
+    if (enabled) {
+      resolver.close();
+      refresher.close();
+      eventLoopGroup.shutdownGracefully();
+    }
+  }
+
+  private static DnsNameResolver createResolver(EventLoop eventLoop, DnsCache cache,
+      DnsResolverProperties dnsProperties, DnsServerAddressStreamProvider nameServers,
+      HostsFileEntriesResolver hostsFile) {
+    return new DnsNameResolverBuilder(eventLoop)
+        .channelType(NioDatagramChannel.class)
+        .resolveCache(cache)
+        .queryTimeoutMillis(dnsProperties.getQueryTimeout())
+        .nameServerProvider(nameServers)
+        .hostsFileEntriesResolver(hostsFile)
+        .build();
+  }
+
+  /**
+   * Cache for the refreshing resolver. It always misses, so a query is sent, and adds new answers to
+   * the shared cache. Failures are not cached, so the address from the last successful lookup stays.
+   */
+  private static class RefreshDnsCache implements DnsCache {
+
+    private final DnsCache target;
+
+    RefreshDnsCache(DnsCache target) {
+      this.target = target;
+    }
+
+    @Override
+    public void clear() {
+      // The shared cache is owned by the resolver
+    }
+
+    @Override
+    public boolean clear(String hostname) {
+      return false;
+    }
+
+    @Override
+    public List<? extends DnsCacheEntry> get(String hostname, DnsRecord[] additionals) {
+      return null;
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, InetAddress address,
+        long originalTtl, EventLoop loop) {
+      return target.cache(hostname, additionals, address, originalTtl, loop);
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, Throwable cause, EventLoop loop) {
+      return null;
+    }
+  }
+}
@@ -0,0 +1,30 @@
+package se.skl.tp.vp.dns;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.DnsResolverProperties;
+
+@Component
+public class TakHostsReloadRoute extends RouteBuilder {
+
+  @Autowired
+  DnsResolverProperties dnsProperties;
+
+  @Autowired
+  ProducerAddressResolver producerAddressResolver;
+
+  @Value("${takcache.persistent.file.name:}")
+  String takFile;
+
+  @Override
+  public void configure() throws Exception {
+    if (dnsProperties.isEnabled() && dnsProperties.getRefreshInterval() > 0 && !takFile.isEmpty()) {
+      from("timer://takHostsReload?fixedRate=true&period=" + dnsProperties.getRefreshInterval())
+          .routeId("TakHostsReloadRoute")
+          .process((Exchange exchange) -> producerAddressResolver.loadTakHosts(takFile));
+    }
+  }
+}
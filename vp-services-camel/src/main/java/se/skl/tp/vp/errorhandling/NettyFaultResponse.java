@@ -0,0 +1,54 @@
+package se.skl.tp.vp.errorhandling;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import java.nio.charset.StandardCharsets;
+import se.skl.tp.vp.exceptions.VPFaultCodeEnum;
+
+/**
+ * SOAP faults written directly from the consumer pipeline, for requests that are turned away before
+ * they reach Camel.
+ */
+public class NettyFaultResponse {
+
+  private static final String CONTENT_TYPE = "text/xml; charset=UTF-8";
+
+  private NettyFaultResponse() {
+  }
+
+  /**
+   * Renders the fault once, as a buffer that is shared by duplicating it.
+   */
+  public static ByteBuf render(String faultMessage, VPFaultCodeEnum codeEnum) {
+    byte[] faultBytes = SoapFaultHelper.generateSoap11FaultWithCause(faultMessage, codeEnum)
+        .getBytes(StandardCharsets.UTF_8);
+    return Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(faultBytes));
+  }
+
+  /**
+   * Writes the fault as the response to the request, and closes the connection after it unless
+   * the request is keep-alive and keepOpen is set.
+   */
+  public static ChannelFuture write(ChannelHandlerContext ctx, HttpRequest request, HttpResponseStatus status,
+      ByteBuf fault, boolean keepOpen) {
+    FullHttpResponse response = new DefaultFullHttpResponse(request.protocolVersion(), status, fault);
+    response.headers().set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+    HttpUtil.setContentLength(response, response.content().readableBytes());
+    boolean keepAlive = keepOpen && HttpUtil.isKeepAlive(request);
+    HttpUtil.setKeepAlive(response, keepAlive);
+    ChannelFuture future = ctx.writeAndFlush(response);
+    if (!keepAlive) {
+      future.addListener(ChannelFutureListener.CLOSE);
+    }
+    return future;
+  }
+}
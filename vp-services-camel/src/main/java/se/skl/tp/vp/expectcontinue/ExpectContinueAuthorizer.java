@@ -0,0 +1,158 @@
+package se.skl.tp.vp.expectcontinue;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http.HttpRequest;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.Message;
+import org.apache.camel.component.netty.NettyConstants;
+import org.apache.camel.support.DefaultExchange;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.certificate.CertificateExtractorProcessor;
+import se.skl.tp.vp.config.ExpectContinueProperties;
+import se.skl.tp.vp.constants.HttpHeaders;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+import se.skl.tp.vp.exceptions.VpSemanticException;
+import se.skl.tp.vp.http2.Http2Streams;
+import se.skl.tp.vp.httpheader.HttpSenderIdExtractorProcessor;
+import se.skl.tp.vp.vagval.BehorighetProcessor;
+
+/**
+ * Runs the sender checks of the inbound routes on the headers of a request that expects
+ * 100-continue, so a sender that would be rejected is answered before it sends the body. The
+ * https route's certificate check or the http route's whitelist and sender id checks are run on
+ * an exchange of their own. If the request has a receiver header and a SOAPAction, behörighet is
+ * also checked for the receiver and the contract of the SOAPAction. A request that passes is
+ * checked again as usual once the body has been read. The checks run on a thread pool of their own,
+ * so that the lookups and logging of the routes' processors never hold up an event loop.
+ */
+@Component
+@Log4j2
+public class ExpectContinueAuthorizer implements DisposableBean {
+
+  private final ExpectContinueProperties expectContinueProperties;
+  private final CamelContext camelContext;
+  private final CertificateExtractorProcessor certificateExtractorProcessor;
+  private final HttpSenderIdExtractorProcessor httpSenderIdExtractorProcessor;
+  private final BehorighetProcessor behorighetProcessor;
+  private ExecutorService executor;
+
+  private final LongAdder checked = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  @Autowired
+  public ExpectContinueAuthorizer(ExpectContinueProperties expectContinueProperties, CamelContext camelContext,
+      CertificateExtractorProcessor certificateExtractorProcessor,
+      HttpSenderIdExtractorProcessor httpSenderIdExtractorProcessor,
+      BehorighetProcessor behorighetProcessor) {
+    this.expectContinueProperties = expectContinueProperties;
+    this.camelContext = camelContext;
+    this.certificateExtractorProcessor = certificateExtractorProcessor;
+    this.httpSenderIdExtractorProcessor = httpSenderIdExtractorProcessor;
+    this.behorighetProcessor = behorighetProcessor;
+    if (expectContinueProperties.isEnabled()) {
+      executor = camelContext.getExecutorServiceManager()
+          .newFixedThreadPool(this, "ExpectContinue", expectContinueProperties.getThreads());
+    }
+  }
+
+  public boolean isEnabled() {
+    return expectContinueProperties.isEnabled();
+  }
+
+  /**
+   * Runs the checks on the authorizer's threads. The future completes with the error the request
+   * would have been rejected with, or null if it passes.
+   */
+  public CompletableFuture<VpSemanticException> authorizeAsync(HttpRequest request, Channel channel) {
+    try {
+      return CompletableFuture.supplyAsync(() -> authorize(request, channel), executor);
+    } catch (RejectedExecutionException e) {
+      log.debug("Expect continue pool is shut down, request is checked on the current thread");
+      return CompletableFuture.completedFuture(authorize(request, channel));
+    }
+  }
+
+  /**
+   * Returns the error the request would have been rejected with, or null if it passes.
+   */
+  public VpSemanticException authorize(HttpRequest request, Channel channel) {
+    checked.increment();
+    Exchange exchange = new DefaultExchange(camelContext);
+    Message message = exchange.getIn();
+    for (Map.Entry<String, String> header : request.headers()) {
+      message.setHeader(header.getKey(), header.getValue());
+    }
+    message.setHeader(NettyConstants.NETTY_REMOTE_ADDRESS, channel.remoteAddress());
+
+    try {
+      if (Http2Streams.sslHandlerOf(channel) != null) {
+        message.setHeader(NettyConstants.NETTY_SSL_CLIENT_CERT_SUBJECT_NAME, Http2Streams.peerSubjectName(channel));
+        certificateExtractorProcessor.process(exchange);
+      } else {
+        httpSenderIdExtractorProcessor.process(exchange);
+      }
+      String receiverId = receiverOf(request);
+      String contract = contractOf(request);
+      if (receiverId != null && contract != null) {
+        exchange.setProperty(VPExchangeProperties.RECEIVER_ID, receiverId);
+        exchange.setProperty(VPExchangeProperties.SERVICECONTRACT_NAMESPACE, contract);
+        behorighetProcessor.process(exchange);
+      }
+      return null;
+    } catch (VpSemanticException e) {
+      rejected.increment();
+      log.info("Request expecting 100-continue rejected before the body was sent: {} {}", e.getMessage(),
+          e.getMessageDetails());
+      return e;
+    } catch (Exception e) {
+      // Left to the route, which runs the same checks once the body has been read
+      log.debug("Pre-authorization of request expecting 100-continue failed", e);
+      return null;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (executor != null) {
+      camelContext.getExecutorServiceManager().shutdown(executor);
+    }
+  }
+
+  public long getChecked() {
+    return checked.sum();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Checked: %d, Rejected: %d", getChecked(), getRejected());
+  }
+
+  private String receiverOf(HttpRequest request) {
+    String receiverHeader = expectContinueProperties.getReceiverHeader();
+    return receiverHeader == null || receiverHeader.isEmpty() ? null : request.headers().get(receiverHeader);
+  }
+
+  // The RIV-TA SOAPAction is the contract namespace followed by the operation name
+  private static String contractOf(HttpRequest request) {
+    String soapAction = request.headers().get(HttpHeaders.SOAP_ACTION);
+    if (soapAction == null) {
+      return null;
+    }
+    soapAction = soapAction.replace("\"", "").trim();
+    int operation = soapAction.lastIndexOf(':');
+    return operation > 0 ? soapAction.substring(0, operation) : null;
+  }
+}
@@ -0,0 +1,112 @@
+package se.skl.tp.vp.expectcontinue;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpExpectationFailedEvent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+import se.skl.tp.vp.exceptions.VPFaultCodeEnum;
+import se.skl.tp.vp.exceptions.VpSemanticException;
+
+/**
+ * Placed after the encoder and before the aggregator in the consumer pipeline, which answers 100
+ * Continue. A request that expects 100-continue is held while the ExpectContinueAuthorizer checks it
+ * on its own threads, reading from the connection is paused meanwhile and anything already read is
+ * kept until the check is done. A rejected request is answered with the SOAP fault and status 500 of
+ * the route, the decoder is reset since the body will not be sent, and the connection is kept for the
+ * next request.
+ */
+public class ExpectContinueHandler extends ChannelInboundHandlerAdapter {
+
+  public static final String NAME = "expect-continue";
+
+  private final ExpectContinueAuthorizer authorizer;
+  private final Queue<Object> held = new ArrayDeque<>();
+
+  private boolean authorizing;
+  private boolean discarding;
+  private boolean closed;
+
+  public ExpectContinueHandler(ExpectContinueAuthorizer authorizer) {
+    this.authorizer = authorizer;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (authorizing) {
+      held.add(msg);
+      return;
+    }
+    if (msg instanceof HttpRequest) {
+      HttpRequest request = (HttpRequest) msg;
+      discarding = false;
+      if (HttpUtil.is100ContinueExpected(request)) {
+        authorize(ctx, request);
+        return;
+      }
+    } else if (discarding && msg instanceof HttpContent) {
+      discarding = !(msg instanceof LastHttpContent);
+      ReferenceCountUtil.release(msg);
+      return;
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    closed = true;
+    Object msg;
+    while ((msg = held.poll()) != null) {
+      ReferenceCountUtil.release(msg);
+    }
+    super.channelInactive(ctx);
+  }
+
+  private void authorize(ChannelHandlerContext ctx, HttpRequest request) {
+    authorizing = true;
+    ctx.channel().config().setAutoRead(false);
+    authorizer.authorizeAsync(request, ctx.channel()).whenComplete(
+        (rejection, e) -> ctx.executor().execute(() -> authorized(ctx, request, rejection)));
+  }
+
+  private void authorized(ChannelHandlerContext ctx, HttpRequest request, VpSemanticException rejection) {
+    authorizing = false;
+    if (closed) {
+      ReferenceCountUtil.release(request);
+      return;
+    }
+    if (rejection != null) {
+      reject(ctx, request, rejection);
+      ReferenceCountUtil.release(request);
+    } else {
+      ctx.fireChannelRead(request);
+    }
+    Object msg;
+    try {
+      while (!authorizing && (msg = held.poll()) != null) {
+        channelRead(ctx, msg);
+      }
+    } catch (Exception e) {
+      ctx.fireExceptionCaught(e);
+    }
+    ctx.fireChannelReadComplete();
+    if (!authorizing) {
+      ctx.channel().config().setAutoRead(true);
+    }
+  }
+
+  private void reject(ChannelHandlerContext ctx, HttpRequest request, VpSemanticException rejection) {
+    discarding = true;
+    NettyFaultResponse.write(ctx, request, HttpResponseStatus.INTERNAL_SERVER_ERROR,
+        NettyFaultResponse.render(rejection.getMessage(),
+            VPFaultCodeEnum.valueOf(rejection.getErrorCode().getFaultCode())), true);
+    ctx.pipeline().fireUserEventTriggered(HttpExpectationFailedEvent.INSTANCE);
+  }
+}
@@ -0,0 +1,147 @@
+package se.skl.tp.vp.fairqueue;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import se.skl.tp.vp.certificate.CertificateExtractorProcessor;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+import se.skl.tp.vp.fairqueue.FairQueueScheduler.Task;
+import se.skl.tp.vp.http2.Http2Streams;
+
+/**
+ * Placed after the aggregator in the consumer pipeline. Hands each request to the FairQueueScheduler
+ * and passes it on to Camel when it gets a slot, the slot is released when the last part of its
+ * response is written. A request that waits longer than the max queue delay is answered with 503 and
+ * the pre-rendered SOAP fault. Requests on one connection are handed over one at a time, so responses
+ * can not be written out of order.
+ *
+ * On TLS the sender is the one kept at the handshake of the connection, see
+ * CertificateExtractorProcessor, so the client certificate is not read again for each request or
+ * HTTP/2 stream. On plain http it is taken from x-vp-sender-id or the reverse proxy's certificate
+ * header when the caller is whitelisted, which is checked once per connection. Requests without a verified sender share the unknown queue.
+ */
+public class FairQueueHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "fair-queue";
+
+  private final FairQueueScheduler scheduler;
+  private final CertificateExtractorProcessor certificateExtractorProcessor;
+  private final Queue<HttpRequest> pending = new ArrayDeque<>();
+  private Boolean trustedCaller;
+  private HttpRequest current;
+  private Task waiting;
+  private boolean holdsSlot;
+  private boolean closed;
+
+  public FairQueueHandler(FairQueueScheduler scheduler, CertificateExtractorProcessor certificateExtractorProcessor) {
+    this.scheduler = scheduler;
+    this.certificateExtractorProcessor = certificateExtractorProcessor;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (!(msg instanceof HttpRequest)) {
+      super.channelRead(ctx, msg);
+    } else if (current != null || !pending.isEmpty()) {
+      pending.add((HttpRequest) msg);
+    } else {
+      submit(ctx, (HttpRequest) msg);
+    }
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof LastHttpContent && holdsSlot) {
+      holdsSlot = false;
+      current = null;
+      promise = promise.unvoid();
+      promise.addListener(future -> {
+        scheduler.release();
+        submitPending(ctx);
+      });
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    closed = true;
+    if (waiting != null && scheduler.cancel(waiting)) {
+      waiting = null;
+      ReferenceCountUtil.release(current);
+    }
+    if (holdsSlot) {
+      holdsSlot = false;
+      scheduler.release();
+    }
+    current = null;
+    HttpRequest request;
+    while ((request = pending.poll()) != null) {
+      ReferenceCountUtil.release(request);
+    }
+    super.channelInactive(ctx);
+  }
+
+  private void submit(ChannelHandlerContext ctx, HttpRequest request) {
+    current = request;
+    Task task = new Task(senderOf(ctx, request), () -> ctx.executor().execute(() -> dispatch(ctx, request)));
+    if (scheduler.offer(task)) {
+      dispatch(ctx, request);
+      return;
+    }
+    waiting = task;
+    ctx.executor().schedule(() -> {
+      if (waiting == task && scheduler.expire(task)) {
+        waiting = null;
+        current = null;
+        reject(ctx, request);
+        submitPending(ctx);
+      }
+    }, scheduler.getMaxQueueDelay(), TimeUnit.MILLISECONDS);
+  }
+
+  private void dispatch(ChannelHandlerContext ctx, HttpRequest request) {
+    waiting = null;
+    if (closed) {
+      ReferenceCountUtil.release(request);
+      scheduler.release();
+      return;
+    }
+    holdsSlot = true;
+    ctx.fireChannelRead(request);
+  }
+
+  private void submitPending(ChannelHandlerContext ctx) {
+    HttpRequest next = pending.poll();
+    if (next != null && !closed) {
+      submit(ctx, next);
+    }
+  }
+
+  private String senderOf(ChannelHandlerContext ctx, HttpRequest request) {
+    if (Http2Streams.sslHandlerOf(ctx.channel()) != null) {
+      String senderId = certificateExtractorProcessor.getSenderId(ctx.channel());
+      return senderId != null ? senderId : FairQueueScheduler.UNKNOWN_SENDER;
+    }
+    if (trustedCaller == null) {
+      SocketAddress address = ctx.channel().remoteAddress();
+      trustedCaller = address instanceof InetSocketAddress
+          && scheduler.isTrustedCaller(((InetSocketAddress) address).getAddress().getHostAddress());
+    }
+    return scheduler.senderOf(request, trustedCaller);
+  }
+
+  private void reject(ChannelHandlerContext ctx, HttpRequest request) {
+    NettyFaultResponse.write(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE, scheduler.getFault(), true);
+    ReferenceCountUtil.release(request);
+  }
+}
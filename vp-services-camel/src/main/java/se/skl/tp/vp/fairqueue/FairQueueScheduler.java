@@ -0,0 +1,322 @@
+package se.skl.tp.vp.fairqueue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.http.HttpRequest;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.FairQueueProperties;
+import se.skl.tp.vp.constants.HttpHeaders;
+import se.skl.tp.vp.constants.PropertyConstants;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+import se.skl.tp.vp.exceptions.VPFaultCodeEnum;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.httpheader.IPWhitelistHandler;
+
+/**
+ * Hands inbound requests to the routes with a cap on how many are processed at once. When the cap is
+ * reached requests wait in one queue per sender, and the queues are served with deficit round-robin:
+ * each sender in turn gets to hand over as many requests as its weight, so a bursty sender only
+ * delays its own requests. A queue is removed once it is empty, the wait times of its sender are kept
+ * for the maxQueues senders most recently served. Requests whose sender is not verified, and requests
+ * from new senders once maxQueues queues exist, wait in the shared unknown queue.
+ *
+ * The sender is picked on the event loop, so it is only read from what is at hand there. Nothing is
+ * parsed, that is left to the route.
+ */
+@Component
+public class FairQueueScheduler {
+
+  public static final String UNKNOWN_SENDER = "unknown";
+  public static final String CERTIFICATE_SENDER_PREFIX = "certificate-";
+
+  private final FairQueueProperties fairQueueProperties;
+  private final IPWhitelistHandler ipWhitelistHandler;
+  private final String vpInstanceId;
+  private final ByteBuf fault;
+
+  private final Map<String, SenderQueue> queues = new TreeMap<>();
+  private final Queue<SenderQueue> backlogged = new ArrayDeque<>();
+  // In access order, the sender least recently served is removed over maxQueues
+  private final Map<String, SenderStats> senderStats = new LinkedHashMap<String, SenderStats>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, SenderStats> eldest) {
+      return size() > fairQueueProperties.getMaxQueues();
+    }
+  };
+  private int active;
+  private long dispatched;
+  private long expired;
+  private long cancelled;
+  private long queuedDispatched;
+  private long totalWaitNanos;
+  private long maxWaitNanos;
+
+  @Autowired
+  public FairQueueScheduler(FairQueueProperties fairQueueProperties,
+      @Value("${" + PropertyConstants.VP_INSTANCE_ID + "}") String vpInstanceId,
+      IPWhitelistHandler ipWhitelistHandler, ExceptionUtil exceptionUtil) {
+    this(fairQueueProperties, vpInstanceId, ipWhitelistHandler,
+        exceptionUtil.createMessage(VpSemanticErrorCodeEnum.VP012));
+  }
+
+  FairQueueScheduler(FairQueueProperties fairQueueProperties, String vpInstanceId, IPWhitelistHandler ipWhitelistHandler,
+      String faultMessage) {
+    this.fairQueueProperties = fairQueueProperties;
+    this.vpInstanceId = vpInstanceId;
+    this.ipWhitelistHandler = ipWhitelistHandler;
+    this.fault = NettyFaultResponse.render(faultMessage, VPFaultCodeEnum.Server);
+  }
+
+  public boolean isEnabled() {
+    return fairQueueProperties.isEnabled();
+  }
+
+  public long getMaxQueueDelay() {
+    return fairQueueProperties.getMaxQueueDelay();
+  }
+
+  /**
+   * Whether the caller's headers may be used to pick its queue, checked once per connection. The
+   * route checks the whitelist again and logs callers that are not on it.
+   */
+  public boolean isTrustedCaller(String callerAddress) {
+    return ipWhitelistHandler.isOnWhiteList(callerAddress);
+  }
+
+  /**
+   * The sender to queue a plain http request under. A trusted caller's x-vp-sender-id is used on
+   * internal platform calls, otherwise the reverse proxy's certificate header is used as it is, by
+   * its hash. Weights only apply to the former. Other requests are queued as unknown.
+   */
+  public String senderOf(HttpRequest request, boolean trustedCaller) {
+    if (!trustedCaller) {
+      return UNKNOWN_SENDER;
+    }
+    String senderId = request.headers().get(HttpHeaders.X_VP_SENDER_ID);
+    if (senderId != null && vpInstanceId != null
+        && vpInstanceId.equals(request.headers().get(HttpHeaders.X_VP_INSTANCE_ID))) {
+      return senderId;
+    }
+    String certificate = request.headers().get(HttpHeaders.CERTIFICATE_FROM_REVERSE_PROXY);
+    return certificate == null
+        ? UNKNOWN_SENDER : CERTIFICATE_SENDER_PREFIX + Integer.toHexString(certificate.hashCode());
+  }
+
+  /**
+   * The response body for requests that waited too long, a duplicate that shares the pre-rendered
+   * content.
+   */
+  public ByteBuf getFault() {
+    return fault.duplicate();
+  }
+
+  /**
+   * Takes a slot for the task if one is free and no other requests are waiting, the caller then
+   * runs it at once. Otherwise the task is queued, and run by the release that gives it a slot.
+   */
+  public synchronized boolean offer(Task task) {
+    if (active < fairQueueProperties.getMaxConcurrent() && backlogged.isEmpty()) {
+      active++;
+      dispatched++;
+      return true;
+    }
+    SenderQueue queue = queueOf(task.sender);
+    if (queue.tasks.isEmpty()) {
+      backlogged.add(queue);
+    }
+    queue.tasks.add(task);
+    task.queue = queue;
+    return false;
+  }
+
+  /**
+   * Removes a queued task that waited too long, returns false if it has already got a slot.
+   */
+  public synchronized boolean expire(Task task) {
+    if (!remove(task)) {
+      return false;
+    }
+    expired++;
+    statsOf(task.queue.sender).expired++;
+    return true;
+  }
+
+  /**
+   * Removes a queued task whose connection was closed, returns false if it has already got a slot.
+   */
+  public synchronized boolean cancel(Task task) {
+    if (!remove(task)) {
+      return false;
+    }
+    cancelled++;
+    return true;
+  }
+
+  /**
+   * Releases a slot, and hands it to the next queued task if any.
+   */
+  public void release() {
+    Task next;
+    synchronized (this) {
+      next = next();
+      if (next == null) {
+        active--;
+      }
+    }
+    if (next != null) {
+      next.dispatch.run();
+    }
+  }
+
+  public synchronized int getActive() {
+    return active;
+  }
+
+  public synchronized int getQueued() {
+    return queues.values().stream().mapToInt(queue -> queue.tasks.size()).sum();
+  }
+
+  public synchronized long getExpired() {
+    return expired;
+  }
+
+  public synchronized long getCancelled() {
+    return cancelled;
+  }
+
+  /**
+   * Queue depth and wait times per sender, of the senders with a queue and those most recently served.
+   */
+  public synchronized Map<String, String> getSenders() {
+    Map<String, String> info = new TreeMap<>();
+    senderStats.forEach((sender, stats) -> info.put(sender, format(sender, stats)));
+    queues.forEach((sender, queue) -> info.computeIfAbsent(sender, key -> format(sender, new SenderStats())));
+    return info;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("Active: %d/%d, Queued: %d, Queues: %d, Dispatched: %d, Expired: %d, Cancelled: %d, "
+            + "AvgWaitMillis: %.1f, MaxWaitMillis: %.1f",
+        active, fairQueueProperties.getMaxConcurrent(), getQueued(), queues.size(), dispatched, expired, cancelled,
+        queuedDispatched == 0 ? 0d : totalWaitNanos / (double) queuedDispatched / 1_000_000d,
+        maxWaitNanos / 1_000_000d);
+  }
+
+  private String format(String sender, SenderStats stats) {
+    SenderQueue queue = queues.get(sender);
+    return String.format("Weight: %d, Queued: %d, %s", queue != null ? queue.weight : weightOf(sender),
+        queue != null ? queue.tasks.size() : 0, stats);
+  }
+
+  private SenderStats statsOf(String sender) {
+    return senderStats.computeIfAbsent(sender, key -> new SenderStats());
+  }
+
+  private SenderQueue queueOf(String sender) {
+    SenderQueue queue = queues.get(sender);
+    if (queue == null) {
+      // The unknown queue is always allowed, so the cap is only exceeded by one
+      String key = queues.size() < fairQueueProperties.getMaxQueues() ? sender : UNKNOWN_SENDER;
+      queue = queues.computeIfAbsent(key, this::createQueue);
+    }
+    return queue;
+  }
+
+  private boolean remove(Task task) {
+    SenderQueue queue = task.queue;
+    if (queue == null || !queue.tasks.remove(task)) {
+      return false;
+    }
+    if (queue.tasks.isEmpty()) {
+      backlogged.remove(queue);
+      queues.remove(queue.sender);
+    }
+    return true;
+  }
+
+  private Task next() {
+    SenderQueue queue = backlogged.peek();
+    if (queue == null) {
+      return null;
+    }
+    if (queue.deficit == 0) {
+      queue.deficit = queue.weight;
+    }
+    Task task = queue.tasks.poll();
+    queue.deficit--;
+    if (queue.tasks.isEmpty()) {
+      backlogged.poll();
+      queues.remove(queue.sender);
+    } else if (queue.deficit == 0) {
+      backlogged.add(backlogged.poll());
+    }
+    long waited = System.nanoTime() - task.queuedAt;
+    dispatched++;
+    queuedDispatched++;
+    totalWaitNanos += waited;
+    maxWaitNanos = Math.max(maxWaitNanos, waited);
+    SenderStats stats = statsOf(queue.sender);
+    stats.dispatched++;
+    stats.totalWaitNanos += waited;
+    stats.maxWaitNanos = Math.max(stats.maxWaitNanos, waited);
+    return task;
+  }
+
+  private SenderQueue createQueue(String sender) {
+    return new SenderQueue(sender, weightOf(sender));
+  }
+
+  private int weightOf(String sender) {
+    return Math.max(1, fairQueueProperties.getWeights().getOrDefault(sender, fairQueueProperties.getDefaultWeight()));
+  }
+
+  public static class Task {
+
+    private final String sender;
+    private final Runnable dispatch;
+    private final long queuedAt = System.nanoTime();
+    // Set when queued, under the scheduler's lock
+    private SenderQueue queue;
+
+    public Task(String sender, Runnable dispatch) {
+      this.sender = sender;
+      this.dispatch = dispatch;
+    }
+  }
+
+  private static class SenderQueue {
+
+    private final String sender;
+    private final int weight;
+    private final Queue<Task> tasks = new ArrayDeque<>();
+    private int deficit;
+
+    SenderQueue(String sender, int weight) {
+      this.sender = sender;
+      this.weight = weight;
+    }
+  }
+
+  private static class SenderStats {
+
+    private long dispatched;
+    private long expired;
+    private long totalWaitNanos;
+    private long maxWaitNanos;
+
+    @Override
+    public String toString() {
+      return String.format("Dispatched: %d, Expired: %d, AvgWaitMillis: %.1f, MaxWaitMillis: %.1f",
+          dispatched, expired, dispatched == 0 ? 0d : totalWaitNanos / (double) dispatched / 1_000_000d,
+          maxWaitNanos / 1_000_000d);
+    }
+  }
+}
@@ -0,0 +1,29 @@
+package se.skl.tp.vp.http2;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import java.util.function.Consumer;
+
+/**
+ * Placed after the TLS handlers of the https endpoint. When the handshake is done the pipeline is
+ * switched to HTTP/2 if the consumer negotiated h2 with ALPN, and otherwise kept for HTTP/1.1.
+ */
+public class Http2AlpnHandler extends ApplicationProtocolNegotiationHandler {
+
+  public static final String NAME = "alpn";
+
+  private final Consumer<ChannelHandlerContext> upgrade;
+
+  public Http2AlpnHandler(Consumer<ChannelHandlerContext> upgrade) {
+    super(ApplicationProtocolNames.HTTP_1_1);
+    this.upgrade = upgrade;
+  }
+
+  @Override
+  protected void configurePipeline(ChannelHandlerContext ctx, String protocol) {
+    if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+      upgrade.accept(ctx);
+    }
+  }
+}
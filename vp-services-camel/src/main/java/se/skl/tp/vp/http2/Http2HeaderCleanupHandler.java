@@ -0,0 +1,28 @@
+package se.skl.tp.vp.http2;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http2.HttpConversionUtil.ExtensionHeaderNames;
+
+/**
+ * Placed after the HTTP/2 to HTTP/1.1 codec of a stream. Removes the x-http2-* headers the codec
+ * adds for the stream id and pseudo headers, so requests reach the routes, and are forwarded to
+ * producers, with the same headers as over HTTP/1.1.
+ */
+@Sharable
+public class Http2HeaderCleanupHandler extends ChannelInboundHandlerAdapter {
+
+  public static final String NAME = "http2-header-cleanup";
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpRequest) {
+      for (ExtensionHeaderNames extensionHeader : ExtensionHeaderNames.values()) {
+        ((HttpRequest) msg).headers().remove(extensionHeader.text());
+      }
+    }
+    super.channelRead(ctx, msg);
+  }
+}
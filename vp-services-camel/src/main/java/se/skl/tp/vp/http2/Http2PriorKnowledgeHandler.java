@@ -0,0 +1,39 @@
+package se.skl.tp.vp.http2;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Placed first in the pipeline of cleartext connections. If the connection starts with the HTTP/2
+ * client preface the pipeline is switched to HTTP/2 (h2c with prior knowledge), otherwise the
+ * handler removes itself and the connection is served as HTTP/1.1. Either way the bytes read so
+ * far are passed on to the handler that follows.
+ */
+public class Http2PriorKnowledgeHandler extends ByteToMessageDecoder {
+
+  public static final String NAME = "h2c-detector";
+
+  private static final ByteBuf PREFACE = Http2CodecUtil.connectionPrefaceBuf();
+
+  private final Consumer<ChannelHandlerContext> upgrade;
+
+  public Http2PriorKnowledgeHandler(Consumer<ChannelHandlerContext> upgrade) {
+    this.upgrade = upgrade;
+  }
+
+  @Override
+  protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+    int length = Math.min(in.readableBytes(), PREFACE.readableBytes());
+    if (!ByteBufUtil.equals(PREFACE, PREFACE.readerIndex(), in, in.readerIndex(), length)) {
+      ctx.pipeline().remove(this);
+    } else if (length == PREFACE.readableBytes()) {
+      upgrade.accept(ctx);
+      ctx.pipeline().remove(this);
+    }
+  }
+}
@@ -0,0 +1,48 @@
+package se.skl.tp.vp.http2;
+
+import io.netty.channel.Channel;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.ssl.SslHandler;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Connection level information for channels that may be HTTP/2 streams. A stream channel has a
+ * pipeline of its own without the SslHandler, which is found in the pipeline of its parent.
+ */
+@Log4j2
+public class Http2Streams {
+
+  private Http2Streams() {
+  }
+
+  public static Channel connectionOf(Channel channel) {
+    return channel instanceof Http2StreamChannel ? channel.parent() : channel;
+  }
+
+  public static SslHandler sslHandlerOf(Channel channel) {
+    return connectionOf(channel).pipeline().get(SslHandler.class);
+  }
+
+  /**
+   * The subject of the peer certificate, in the same form as Camel's
+   * NETTY_SSL_CLIENT_CERT_SUBJECT_NAME header, or null without TLS or a peer certificate.
+   */
+  public static String peerSubjectName(Channel channel) {
+    SslHandler sslHandler = channel == null ? null : sslHandlerOf(channel);
+    if (sslHandler == null) {
+      return null;
+    }
+    try {
+      Certificate[] certificates = sslHandler.engine().getSession().getPeerCertificates();
+      if (certificates.length > 0 && certificates[0] instanceof X509Certificate) {
+        return ((X509Certificate) certificates[0]).getSubjectDN().getName();
+      }
+    } catch (SSLPeerUnverifiedException e) {
+      log.debug("No peer certificate", e);
+    }
+    return null;
+  }
+}
@@ -61,7 +61,10 @@ public class HttpSenderIdExtractorProcessorImpl implements HttpSenderIdExtractor
     if (senderId != null && vpInstanceId.equals(senderVpInstanceId)) {
       log.debug("Internal plattform call, setting senderId from property {}:{}",
           HttpHeaders.X_VP_SENDER_ID, senderId);
-      checkCallerOnWhitelist(forwardedForIpAdress, senderIpExtractor.getForwardForHeaderName());
+      // Already checked above if the forwarded address is the caller's own
+      if (forwardedForIpAdress == null || !forwardedForIpAdress.trim().equals(callerRemoteAddress)) {
+        checkCallerOnWhitelist(forwardedForIpAdress, senderIpExtractor.getForwardForHeaderName());
+      }
       exchange.setProperty(VPExchangeProperties.SENDER_ID, senderId);
     } else {
       log.debug("Try extract senderId from provided certificate");
@@ -2,4 +2,7 @@ package se.skl.tp.vp.httpheader;
 
 public interface IPWhitelistHandler {
     boolean isCallerOnWhiteList(String senderIpAdress);
+
+    // As isCallerOnWhiteList but without logging, for checks made before the route
+    boolean isOnWhiteList(String ipAddress);
 }
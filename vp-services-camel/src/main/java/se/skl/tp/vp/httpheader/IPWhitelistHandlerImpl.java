@@ -1,27 +1,56 @@
 package se.skl.tp.vp.httpheader;
 
+import static se.skl.tp.vp.wsdl.PathHelper.getPath;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import lombok.extern.log4j.Log4j2;
 import org.apache.camel.component.netty.NettyConstants;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.IpWhitelistProperties;
 import se.skl.tp.vp.constants.PropertyConstants;
 
+/**
+ * The whitelist is compiled to an IpRangeTrie. With vp.ipwhitelist.file it is read from the file
+ * instead of ip.whitelist, and swapped as a whole when the file is reloaded.
+ */
 @Service
 @Log4j2
 public class IPWhitelistHandlerImpl implements IPWhitelistHandler {
 
-  private String[] whiteListArray;
-  private String whitelist;
+  private final IpWhitelistProperties ipWhitelistProperties;
+  private volatile Whitelist whitelist;
+  private long lastModified = -1;
+
+  public IPWhitelistHandlerImpl(String whitelistString) {
+    this(whitelistString, new IpWhitelistProperties());
+  }
 
   @Autowired
-  public IPWhitelistHandlerImpl(@Value("${" + PropertyConstants.IP_WHITELIST + "}") String whitelistString) {
-    if (whitelistString != null && !whitelistString.isEmpty()) {
-      whiteListArray = whitelistString.split(",");
-      whitelist = whitelistString;
+  public IPWhitelistHandlerImpl(@Value("${" + PropertyConstants.IP_WHITELIST + "}") String whitelistString,
+      IpWhitelistProperties ipWhitelistProperties) {
+    this.ipWhitelistProperties = ipWhitelistProperties;
+    whitelist = new Whitelist(whitelistString);
+    if (isFileConfigured()) {
+      reload();
     }
   }
 
+  public boolean isFileConfigured() {
+    String file = ipWhitelistProperties.getFile();
+    return file != null && !file.isEmpty();
+  }
+
   @Override
   public boolean isCallerOnWhiteList(String senderIpAdress) {
     log.debug("Check if caller {} is in white list before using HTTP header {}...",
@@ -37,22 +66,73 @@ public class IPWhitelistHandlerImpl implements IPWhitelistHandler {
     }
 
     // When no whitelist exist we can not validate incoming ip address
-    if (whiteListArray == null) {
+    Whitelist current = whitelist;
+    if (current.ranges == null) {
       log.warn("A check against the ip address whitelist was requested, but the whitelist is configured empty. " +
               "Update VP configuration property IP_WHITE_LIST");
       return false;
     }
 
-    for (String ipAddress : whiteListArray) {
-      if (senderIpAdress.trim().startsWith(ipAddress.trim())) {
-        log.debug("Caller matches ip address/subdomain in white list");
-        return true;
-      }
+    if (current.ranges.contains(senderIpAdress)) {
+      log.debug("Caller matches ip address/subdomain in white list");
+      return true;
     }
 
     log.warn("Caller was not on the white list of accepted IP-addresses. IP-address: {}, accepted IP-addresses in IP_WHITE_LIST:[{}]",
         senderIpAdress,
-        whitelist);
+        current.source);
     return false;
   }
+
+  @Override
+  public boolean isOnWhiteList(String ipAddress) {
+    Whitelist current = whitelist;
+    return ipAddress != null && current.ranges != null && current.ranges.contains(ipAddress);
+  }
+
+  /**
+   * Reads the file again if it has changed. The current whitelist is kept if it can not be read.
+   */
+  public synchronized void reload() {
+    String file = ipWhitelistProperties.getFile();
+    try {
+      File whitelistFile = getPath(file).toFile();
+      if (whitelistFile.lastModified() == lastModified) {
+        return;
+      }
+      List<String> entries = new ArrayList<>();
+      for (String line : Files.readAllLines(whitelistFile.toPath(), StandardCharsets.UTF_8)) {
+        int comment = line.indexOf('#');
+        String content = comment < 0 ? line : line.substring(0, comment);
+        if (!content.trim().isEmpty()) {
+          entries.add(content.trim());
+        }
+      }
+      lastModified = whitelistFile.lastModified();
+      whitelist = new Whitelist(String.join(",", entries));
+      log.info("Ip address whitelist read from {}, {} entries", file, entries.size());
+    } catch (FileNotFoundException | NoSuchFileException e) {
+      log.warn("Ip address whitelist file not found at " + file + ".");
+    } catch (URISyntaxException | IOException e) {
+      log.warn("Ip address whitelist file failed " + file + ".", e);
+    }
+  }
+
+  private static class Whitelist {
+
+    private final String source;
+    private final IpRangeTrie ranges;
+
+    Whitelist(String source) {
+      this.source = source;
+      IpRangeTrie trie = source == null ? null : new IpRangeTrie(Arrays.asList(source.split(",")));
+      if (trie != null) {
+        for (String entry : trie.getInvalidEntries()) {
+          log.warn("Entry {} in the ip address whitelist is not an address, subnet or address prefix and is ignored",
+              entry);
+        }
+      }
+      this.ranges = trie == null || trie.size() == 0 ? null : trie;
+    }
+  }
 }
@@ -0,0 +1,374 @@
+package se.skl.tp.vp.httpheader;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Binary trie over the bits of IPv4 and IPv6 addresses, compiled from whitelist entries. An entry is
+ * an address, an address with a prefix length (CIDR) or, as in earlier versions, the leading octets
+ * or groups of an address such as 10.1 or 2001:db8: which cover the addresses starting with them,
+ * so 10.1 also covers 10.10.0.0 to 10.19.255.255 and 10.100.0.0 to 10.199.255.255 while 10.1. does
+ * not. A lookup follows the bits of the address until it reaches the end of an entry or leaves the
+ * trie, without allocating. IPv4-mapped IPv6 addresses are looked up as IPv4.
+ */
+final class IpRangeTrie {
+
+  private static final int IPV4_BITS = 32;
+  private static final int IPV6_BITS = 128;
+  private static final int IPV4_MAPPED_BITS = 96;
+
+  private final Nodes ipv4 = new Nodes();
+  private final Nodes ipv6 = new Nodes();
+  private final List<String> invalidEntries = new ArrayList<>();
+  private int size;
+
+  IpRangeTrie(List<String> entries) {
+    for (String entry : entries) {
+      String trimmed = entry.trim();
+      if (!trimmed.isEmpty()) {
+        if (add(trimmed)) {
+          size++;
+        } else {
+          invalidEntries.add(trimmed);
+        }
+      }
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  List<String> getInvalidEntries() {
+    return Collections.unmodifiableList(invalidEntries);
+  }
+
+  /**
+   * Whether the address is covered by an entry. Surrounding whitespace, brackets, a zone id and any
+   * addresses after the first in a comma separated list are ignored.
+   */
+  boolean contains(String address) {
+    int from = 0;
+    int to = indexOf(address, ',', 0, address.length());
+    while (from < to && Character.isWhitespace(address.charAt(from))) {
+      from++;
+    }
+    while (to > from && Character.isWhitespace(address.charAt(to - 1))) {
+      to--;
+    }
+    if (to - from > 2 && address.charAt(from) == '[' && address.charAt(to - 1) == ']') {
+      from++;
+      to--;
+    }
+    to = indexOf(address, '%', from, to);
+
+    if (indexOf(address, ':', from, to) == to) {
+      long ipv4Address = parseIpv4(address, from, to);
+      return ipv4Address >= 0 && ipv4.contains(ipv4Address << IPV4_BITS, 0, IPV4_BITS);
+    }
+    int groups = ipv6Groups(address, from, to);
+    if (groups < 0) {
+      return false;
+    }
+    long high = ipv6Half(address, from, to, groups, 0);
+    long low = ipv6Half(address, from, to, groups, 4);
+    if (high == 0 && (low >>> IPV4_BITS) == 0xFFFFL) {
+      return ipv4.contains(low << IPV4_BITS, 0, IPV4_BITS);
+    }
+    return ipv6.contains(high, low, IPV6_BITS);
+  }
+
+  private boolean add(String entry) {
+    int slash = entry.indexOf('/');
+    int end = slash < 0 ? entry.length() : slash;
+    int prefixLength = -1;
+    if (slash >= 0) {
+      try {
+        prefixLength = Integer.parseInt(entry.substring(slash + 1));
+      } catch (NumberFormatException e) {
+        return false;
+      }
+    }
+    return entry.indexOf(':') < 0 ? addIpv4(entry, end, prefixLength) : addIpv6(entry, end, prefixLength);
+  }
+
+  private boolean addIpv4(String entry, int end, int prefixLength) {
+    long address = parseIpv4(entry, 0, end);
+    if (address >= 0) {
+      if (prefixLength < 0) {
+        prefixLength = IPV4_BITS;
+      }
+      return prefixLength <= IPV4_BITS && ipv4.insert(address << IPV4_BITS, 0, prefixLength);
+    }
+    if (prefixLength >= 0) {
+      return false;
+    }
+    // Leading octets, with or without a trailing dot, as matched with startsWith before
+    boolean dotted = entry.endsWith(".");
+    String[] octets = dotted ? entry.substring(0, end - 1).split("\\.", -1) : entry.split("\\.", -1);
+    if (octets.length > 3) {
+      return false;
+    }
+    long prefix = 0;
+    for (String octet : octets) {
+      long value = parseIpv4Octet(octet);
+      if (value < 0) {
+        return false;
+      }
+      prefix = prefix << 8 | value;
+    }
+    int prefixBits = 8 * octets.length;
+    if (dotted) {
+      return ipv4.insert(prefix << (64 - prefixBits), 0, prefixBits);
+    }
+    // Without the dot the last octet is only the start of one, 10.1 also covers 10.10 to 10.19 and
+    // 10.100 to 10.199
+    String last = octets[octets.length - 1];
+    prefix &= ~0xFFL;
+    for (int value = 0; value <= 255; value++) {
+      String digits = Integer.toString(value);
+      if (digits.startsWith(last)) {
+        ipv4.insert((prefix | value) << (64 - prefixBits), 0, prefixBits);
+      }
+    }
+    return true;
+  }
+
+  private boolean addIpv6(String entry, int end, int prefixLength) {
+    int groups = ipv6Groups(entry, 0, end);
+    if (groups >= 0) {
+      if (prefixLength < 0) {
+        prefixLength = IPV6_BITS;
+      }
+      if (prefixLength > IPV6_BITS) {
+        return false;
+      }
+      long high = ipv6Half(entry, 0, end, groups, 0);
+      long low = ipv6Half(entry, 0, end, groups, 4);
+      if (high == 0 && (low >>> IPV4_BITS) == 0xFFFFL && prefixLength >= IPV4_MAPPED_BITS) {
+        return ipv4.insert(low << IPV4_BITS, 0, prefixLength - IPV4_MAPPED_BITS);
+      }
+      return ipv6.insert(high, low, prefixLength);
+    }
+    if (prefixLength >= 0 || !entry.endsWith(":") || entry.contains("::")) {
+      return false;
+    }
+    // Leading groups with a trailing colon, as matched with startsWith before
+    String[] prefixGroups = entry.substring(0, end - 1).split(":", -1);
+    if (prefixGroups.length > 7) {
+      return false;
+    }
+    long high = 0;
+    long low = 0;
+    for (int i = 0; i < prefixGroups.length; i++) {
+      String group = prefixGroups[i];
+      if (group.isEmpty() || group.length() > 4 || !isHex(group, 0, group.length())) {
+        return false;
+      }
+      long value = Long.parseLong(group, 16);
+      high = put(high, i, value, 0);
+      low = put(low, i, value, 4);
+    }
+    return ipv6.insert(high, low, 16 * prefixGroups.length);
+  }
+
+  /**
+   * The address as an unsigned 32 bit value, or -1 if it is not four decimal octets.
+   */
+  static long parseIpv4(String address, int from, int to) {
+    long value = 0;
+    int octet = 0;
+    int digits = 0;
+    int octets = 0;
+    for (int i = from; i < to; i++) {
+      char c = address.charAt(i);
+      if (c >= '0' && c <= '9' && digits < 3) {
+        octet = octet * 10 + c - '0';
+        digits++;
+      } else if (c == '.' && digits > 0 && octets < 3 && octet <= 255) {
+        value = value << 8 | octet;
+        octets++;
+        octet = 0;
+        digits = 0;
+      } else {
+        return -1;
+      }
+    }
+    return digits == 0 || octets != 3 || octet > 255 ? -1 : value << 8 | octet;
+  }
+
+  private static long parseIpv4Octet(String octet) {
+    return octet.isEmpty() || octet.length() > 3 || !octet.chars().allMatch(Character::isDigit)
+        || Integer.parseInt(octet) > 255 ? -1 : Integer.parseInt(octet);
+  }
+
+  /**
+   * The number of 16 bit groups written out in the address, an embedded IPv4 address counting as
+   * two, or -1 if it is not an IPv6 address.
+   */
+  static int ipv6Groups(String address, int from, int to) {
+    int groups = 0;
+    boolean compressed = false;
+    int i = from;
+    if (to - from >= 2 && address.charAt(from) == ':' && address.charAt(from + 1) == ':') {
+      compressed = true;
+      i += 2;
+    }
+    while (i < to) {
+      int end = indexOf(address, ':', i, to);
+      if (end == i) {
+        return -1;
+      }
+      if (indexOf(address, '.', i, end) < end) {
+        if (end != to || parseIpv4(address, i, end) < 0) {
+          return -1;
+        }
+        groups += 2;
+        break;
+      }
+      if (end - i > 4 || !isHex(address, i, end)) {
+        return -1;
+      }
+      groups++;
+      if (end == to) {
+        break;
+      }
+      if (end + 1 < to && address.charAt(end + 1) == ':') {
+        if (compressed) {
+          return -1;
+        }
+        compressed = true;
+        i = end + 2;
+      } else if (end + 1 == to) {
+        return -1;
+      } else {
+        i = end + 1;
+      }
+    }
+    return (compressed ? groups <= 7 : groups == 8) ? groups : -1;
+  }
+
+  /**
+   * Four of the eight groups of a valid IPv6 address, starting with the group at index first.
+   */
+  static long ipv6Half(String address, int from, int to, int groups, int first) {
+    long half = 0;
+    int index = 0;
+    int i = from;
+    while (i < to) {
+      if (address.charAt(i) == ':') {
+        if (i + 1 < to && address.charAt(i + 1) == ':') {
+          index += 8 - groups;
+          i += 2;
+        } else {
+          i++;
+        }
+        continue;
+      }
+      int end = indexOf(address, ':', i, to);
+      if (indexOf(address, '.', i, end) < end) {
+        long ipv4Address = parseIpv4(address, i, end);
+        half = put(half, index++, ipv4Address >>> 16, first);
+        half = put(half, index++, ipv4Address & 0xFFFF, first);
+      } else {
+        half = put(half, index++, parseHex(address, i, end), first);
+      }
+      i = end;
+    }
+    return half;
+  }
+
+  private static long put(long half, int index, long group, int first) {
+    int position = index - first;
+    return position < 0 || position > 3 ? half : half | group << (16 * (3 - position));
+  }
+
+  private static boolean isHex(String value, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (Character.digit(value.charAt(i), 16) < 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static long parseHex(String value, int from, int to) {
+    long result = 0;
+    for (int i = from; i < to; i++) {
+      result = result << 4 | Character.digit(value.charAt(i), 16);
+    }
+    return result;
+  }
+
+  private static int indexOf(String value, char c, int from, int to) {
+    for (int i = from; i < to; i++) {
+      if (value.charAt(i) == c) {
+        return i;
+      }
+    }
+    return to;
+  }
+
+  /**
+   * Nodes of one address family in arrays, node 0 is the root and a child index of 0 means no child.
+   * The leading bits of an address are kept in the high long and the rest in the low.
+   */
+  private static final class Nodes {
+
+    private int[] zero = new int[16];
+    private int[] one = new int[16];
+    private boolean[] end = new boolean[16];
+    private int count = 1;
+
+    boolean insert(long high, long low, int prefixLength) {
+      if (prefixLength < 0) {
+        return false;
+      }
+      int node = 0;
+      for (int i = 0; i < prefixLength && !end[node]; i++) {
+        boolean set = bit(high, low, i);
+        int next = set ? one[node] : zero[node];
+        if (next == 0) {
+          next = newNode();
+          if (set) {
+            one[node] = next;
+          } else {
+            zero[node] = next;
+          }
+        }
+        node = next;
+      }
+      end[node] = true;
+      return true;
+    }
+
+    boolean contains(long high, long low, int bits) {
+      int node = 0;
+      for (int i = 0; !end[node]; i++) {
+        if (i == bits) {
+          return false;
+        }
+        node = bit(high, low, i) ? one[node] : zero[node];
+        if (node == 0) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    private int newNode() {
+      if (count == end.length) {
+        zero = Arrays.copyOf(zero, count * 2);
+        one = Arrays.copyOf(one, count * 2);
+        end = Arrays.copyOf(end, count * 2);
+      }
+      return count++;
+    }
+
+    private static boolean bit(long high, long low, int index) {
+      return index < 64 ? (high >>> (63 - index) & 1) != 0 : (low >>> (127 - index) & 1) != 0;
+    }
+  }
+}
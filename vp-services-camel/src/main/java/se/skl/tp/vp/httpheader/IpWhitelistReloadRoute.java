@@ -0,0 +1,26 @@
+package se.skl.tp.vp.httpheader;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.IpWhitelistProperties;
+
+@Component
+public class IpWhitelistReloadRoute extends RouteBuilder {
+
+  @Autowired
+  IpWhitelistProperties ipWhitelistProperties;
+
+  @Autowired
+  IPWhitelistHandlerImpl ipWhitelistHandler;
+
+  @Override
+  public void configure() throws Exception {
+    if (ipWhitelistHandler.isFileConfigured() && ipWhitelistProperties.getReloadInterval() > 0) {
+      from("timer://ipWhitelistReload?fixedRate=true&delay=" + ipWhitelistProperties.getReloadInterval()
+          + "&period=" + ipWhitelistProperties.getReloadInterval()).routeId("IpWhitelistReloadRoute")
+          .process((Exchange exchange) -> ipWhitelistHandler.reload());
+    }
+  }
+}
@@ -0,0 +1,10 @@
+package se.skl.tp.vp.largepayload;
+
+import org.apache.camel.AsyncProcessor;
+
+public interface LargePayloadProcessor extends AsyncProcessor {
+
+  String WORKER_GROUP = "producerLargePayload";
+
+  boolean isEnabled();
+}
@@ -0,0 +1,127 @@
+package se.skl.tp.vp.largepayload;
+
+import io.netty.channel.EventLoopGroup;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.component.netty.NettyWorkerPoolBuilder;
+import org.apache.camel.component.netty.http.NettyHttpMessage;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.LargePayloadProperties;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Moves calls with large payloads off the threads and event loops used by small calls. A call is
+ * large if its request is, or if the responses of its contract usually are. The rest of its route
+ * then runs on a thread pool of its own, and ProducerBulkheadProcessor gives its producer call the
+ * large payload event loops unless the producer belongs to a bulkhead group.
+ */
+@Service
+@Log4j2
+public class LargePayloadProcessorImpl extends AsyncProcessorSupport implements LargePayloadProcessor,
+    DisposableBean {
+
+  private final LargePayloadProperties largePayloadProperties;
+  private final CamelContext camelContext;
+  private final ResponseSizes responseSizes = new ResponseSizes();
+  private final LongAdder large = new LongAdder();
+  private final LongAdder small = new LongAdder();
+  private ExecutorService executor;
+  private EventLoopGroup eventLoopGroup;
+
+  @Autowired
+  public LargePayloadProcessorImpl(LargePayloadProperties largePayloadProperties, CamelContext camelContext) {
+    this.largePayloadProperties = largePayloadProperties;
+    this.camelContext = camelContext;
+    if (largePayloadProperties.isEnabled()) {
+      executor = camelContext.getExecutorServiceManager()
+          .newFixedThreadPool(this, "LargePayload", largePayloadProperties.getThreads());
+      eventLoopGroup = new NettyWorkerPoolBuilder()
+          .withWorkerCount(largePayloadProperties.getWorkers()).withName("NettyLargePayload").build();
+      camelContext.getRegistry().bind(WORKER_GROUP, eventLoopGroup);
+    }
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return largePayloadProperties.isEnabled();
+  }
+
+  @Override
+  public boolean process(Exchange exchange, AsyncCallback callback) {
+    if (!isEnabled()) {
+      callback.done(true);
+      return true;
+    }
+
+    String contract = exchange.getProperty(VPExchangeProperties.SERVICECONTRACT_NAMESPACE, String.class);
+    recordResponseSize(exchange, contract);
+    long threshold = largePayloadProperties.getThreshold();
+    if (getRequestSize(exchange) < threshold && (contract == null || responseSizes.getAverage(contract) < threshold)) {
+      small.increment();
+      callback.done(true);
+      return true;
+    }
+
+    large.increment();
+    exchange.setProperty(VPExchangeProperties.LARGE_PAYLOAD, true);
+    try {
+      executor.execute(() -> callback.done(false));
+      return false;
+    } catch (RejectedExecutionException e) {
+      log.debug("Large payload pool is shut down, call continues on the current thread");
+      callback.done(true);
+      return true;
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (executor != null) {
+      camelContext.getExecutorServiceManager().shutdown(executor);
+      eventLoopGroup.shutdownGracefully();
+    }
+  }
+
+  @Override
+  public String toString() {
+    long threshold = largePayloadProperties.getThreshold();
+    return String.format("Large: %d, Small: %d, LargeResponseContracts: %d", large.sum(), small.sum(),
+        responseSizes.getAverages().values().stream().filter(size -> size >= threshold).count());
+  }
+
+  private static long getRequestSize(Exchange exchange) {
+    NettyHttpMessage message = exchange.getIn(NettyHttpMessage.class);
+    if (message != null && message.getHttpRequest() != null) {
+      return message.getHttpRequest().content().writerIndex();
+    }
+    return exchange.getIn().getHeader(Exchange.CONTENT_LENGTH, 0L, Long.class);
+  }
+
+  private void recordResponseSize(Exchange exchange, String contract) {
+    if (contract == null) {
+      return;
+    }
+    exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+      @Override
+      public void onComplete(Exchange exchange) {
+        Long size = exchange.getProperty(VPExchangeProperties.STREAMED_RESPONSE_LENGTH, Long.class);
+        if (size == null) {
+          size = exchange.getMessage().getHeader(Exchange.CONTENT_LENGTH, Long.class);
+        }
+        if (size != null) {
+          responseSizes.record(contract, size);
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,26 @@
+package se.skl.tp.vp.largepayload;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Moving average of the response size per service contract, each new response weighs in by a
+ * quarter.
+ */
+public class ResponseSizes {
+
+  private final Map<String, Long> averages = new ConcurrentHashMap<>();
+
+  public void record(String contract, long size) {
+    averages.merge(contract, size, (average, latest) -> average + (latest - average) / 4);
+  }
+
+  public long getAverage(String contract) {
+    return averages.getOrDefault(contract, 0L);
+  }
+
+  public Map<String, Long> getAverages() {
+    return new TreeMap<>(averages);
+  }
+}
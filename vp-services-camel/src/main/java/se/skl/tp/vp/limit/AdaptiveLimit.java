@@ -0,0 +1,46 @@
+package se.skl.tp.vp.limit;
+
+/**
+ * Concurrency limit adjusted by additive increase and multiplicative decrease on the latency of the
+ * calls. A call that failed, or took longer than tolerance times the long term average latency, lowers
+ * the limit by the backoff ratio. A successful call made while at least half the limit was in use
+ * raises it by one.
+ */
+public class AdaptiveLimit {
+
+  // Number of samples the long term average latency is smoothed over
+  static final int LONG_WINDOW = 100;
+
+  private final int minLimit;
+  private final int maxLimit;
+  private final double backoffRatio;
+  private final double tolerance;
+
+  private double limit;
+  private double longRtt;
+
+  public AdaptiveLimit(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.backoffRatio = backoffRatio;
+    this.tolerance = tolerance;
+    this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+  }
+
+  public synchronized int onSample(long rttNanos, int inFlight, boolean dropped) {
+    if (!dropped) {
+      longRtt = longRtt == 0 ? rttNanos : longRtt + (rttNanos - longRtt) / LONG_WINDOW;
+    }
+
+    if (dropped || rttNanos > tolerance * longRtt) {
+      limit = Math.max(minLimit, limit * backoffRatio);
+    } else if (inFlight * 2 >= limit) {
+      limit = Math.min(maxLimit, limit + 1);
+    }
+    return getLimit();
+  }
+
+  public synchronized int getLimit() {
+    return (int) limit;
+  }
+}
@@ -0,0 +1,50 @@
+package se.skl.tp.vp.limit;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyProducer;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Placed after the http codec in the producer pipeline when vp.producer.limit is enabled. Records on
+ * the exchange how long the producer took to answer, from writing the request to the end of the
+ * response, so the concurrency limit follows the producer call alone. A retried call records the
+ * attempt that got the response.
+ */
+public class ProducerLatencyHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "producer-latency";
+
+  private final NettyProducer producer;
+
+  private Exchange exchange;
+  private long start;
+
+  public ProducerLatencyHandler(NettyProducer producer) {
+    this.producer = producer;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpRequest) {
+      NettyCamelState state = producer.getCorrelationManager().getState(ctx, ctx.channel(), msg);
+      exchange = state == null ? null : state.getExchange();
+      start = System.nanoTime();
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof LastHttpContent && exchange != null) {
+      exchange.setProperty(VPExchangeProperties.PRODUCER_LATENCY, System.nanoTime() - start);
+      exchange = null;
+    }
+    super.channelRead(ctx, msg);
+  }
+}
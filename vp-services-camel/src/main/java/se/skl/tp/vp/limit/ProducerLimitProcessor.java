@@ -0,0 +1,10 @@
+package se.skl.tp.vp.limit;
+
+import java.util.Map;
+import org.apache.camel.AsyncProcessor;
+import se.skl.tp.vp.bulkhead.Bulkhead;
+
+public interface ProducerLimitProcessor extends AsyncProcessor {
+
+  Map<String, Bulkhead> getLimits();
+}
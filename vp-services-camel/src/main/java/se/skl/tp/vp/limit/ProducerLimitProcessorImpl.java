@@ -0,0 +1,125 @@
+package se.skl.tp.vp.limit;
+
+import io.netty.handler.timeout.ReadTimeoutException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.bulkhead.Bulkhead;
+import se.skl.tp.vp.config.ProducerLimitProperties;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.utils.SlotAcquirer;
+
+/**
+ * Limits the concurrent calls per producer host with an adaptive limit. Each call holds a slot until
+ * the exchange is done. The latency of the producer call, recorded by the ProducerLatencyHandler, and
+ * whether it timed out or failed to connect adjust the limit of the host. Other failures, such as SOAP
+ * faults, are answers from the producer and are sampled on their latency. Calls over the limit wait
+ * briefly in a queue and are rejected with the producer error VP009 if no slot is freed in time.
+ */
+@Service
+@Log4j2
+public class ProducerLimitProcessorImpl extends AsyncProcessorSupport implements ProducerLimitProcessor {
+
+  private final ProducerLimitProperties limitProperties;
+  private final ExceptionUtil exceptionUtil;
+  private final SlotAcquirer slotAcquirer;
+  private final Map<String, Limiter> limiters = new ConcurrentHashMap<>();
+
+  @Autowired
+  public ProducerLimitProcessorImpl(ProducerLimitProperties limitProperties, ExceptionUtil exceptionUtil,
+      SlotAcquirer slotAcquirer) {
+    this.limitProperties = limitProperties;
+    this.exceptionUtil = exceptionUtil;
+    this.slotAcquirer = slotAcquirer;
+  }
+
+  @Override
+  public Map<String, Bulkhead> getLimits() {
+    Map<String, Bulkhead> limits = new TreeMap<>();
+    limiters.forEach((host, limiter) -> limits.put(host, limiter.bulkhead));
+    return limits;
+  }
+
+  @Override
+  public boolean process(Exchange exchange, AsyncCallback callback) {
+    String host = exchange.getProperty(VPExchangeProperties.VAGVAL_HOST, String.class);
+    if (!limitProperties.isEnabled() || host == null) {
+      callback.done(true);
+      return true;
+    }
+
+    Limiter limiter = limiters.computeIfAbsent(host, this::createLimiter);
+    return slotAcquirer.acquire(exchange, callback, limiter.bulkhead, limitProperties.getQueueTimeout(),
+        () -> sampleOnCompletion(exchange, limiter), timedOut -> reject(exchange, host));
+  }
+
+  private Limiter createLimiter(String host) {
+    AdaptiveLimit limit = new AdaptiveLimit(limitProperties.getInitialLimit(), limitProperties.getMinLimit(),
+        limitProperties.getMaxLimit(), limitProperties.getBackoffRatio(), limitProperties.getTolerance());
+    return new Limiter(limit,
+        new Bulkhead(host, null, null, null, limit.getLimit(), limitProperties.getMaxQueued()));
+  }
+
+  private void reject(Exchange exchange, String host) {
+    log.warn("Concurrency limit for producer {} reached, call rejected", host);
+    exchange.setException(exceptionUtil.createVpSemanticException(VpSemanticErrorCodeEnum.VP009,
+        exchange.getProperty(VPExchangeProperties.VAGVAL, "<UNKNOWN>", String.class)
+            + ". Concurrency limit for producer reached"));
+  }
+
+  private static void sampleOnCompletion(Exchange exchange, Limiter limiter) {
+    exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+      @Override
+      public void onDone(Exchange exchange) {
+        if (exchange.getProperty(VPExchangeProperties.CONSUMER_ABORTED) == null) {
+          Long latency = exchange.getProperty(VPExchangeProperties.PRODUCER_LATENCY, Long.class);
+          boolean dropped = isDropped(exchange);
+          // Calls that failed before the producer answered for other reasons say nothing about its load
+          if (latency != null || dropped) {
+            int limit = limiter.limit.onSample(latency == null ? 0 : latency, limiter.bulkhead.getActive(), dropped);
+            limiter.bulkhead.setMaxConcurrent(limit);
+          }
+        }
+        limiter.bulkhead.release();
+      }
+    });
+  }
+
+  /**
+   * Whether the producer call timed out or could not connect, also when the error has been handled.
+   */
+  static boolean isDropped(Exchange exchange) {
+    Throwable exception = exchange.getException() != null
+        ? exchange.getException() : exchange.getProperty(Exchange.EXCEPTION_CAUGHT, Throwable.class);
+    for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+      if (cause instanceof ReadTimeoutException || cause instanceof SocketTimeoutException
+          || cause instanceof ConnectException) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static class Limiter {
+
+    private final AdaptiveLimit limit;
+    private final Bulkhead bulkhead;
+
+    Limiter(AdaptiveLimit limit, Bulkhead bulkhead) {
+      this.limit = limit;
+      this.bulkhead = bulkhead;
+    }
+  }
+}
@@ -14,12 +14,14 @@ public class MessageInfoLogger {
   public static final String RESP_IN = "se.skl.tp.vp.logging.resp.in";
   public static final String RESP_OUT = "se.skl.tp.vp.logging.resp.out";
   public static final String REQ_ERROR = "se.skl.tp.vp.logging.error";
+  public static final String CONSUMER_ABORTED = "se.skl.tp.vp.logging.consumer.aborted";
 
   private static final Logger LOGGER_REQ_IN = LogManager.getLogger(REQ_IN);
   private static final Logger LOGGER_REQ_OUT = LogManager.getLogger(REQ_OUT);
   private static final Logger LOGGER_RESP_IN = LogManager.getLogger(RESP_IN);
   private static final Logger LOGGER_RESP_OUT = LogManager.getLogger(RESP_OUT);
   private static final Logger LOGGER_ERROR = LogManager.getLogger(REQ_ERROR);
+  private static final Logger LOGGER_CONSUMER_ABORTED = LogManager.getLogger(CONSUMER_ABORTED);
 
   private static final String LOG_EVENT_INFO = "logEvent-info";
   private static final String LOG_EVENT_ERROR = "logEvent-error";
@@ -30,6 +32,7 @@ public class MessageInfoLogger {
   private static final String MSG_TYPE_LOG_RESP_IN = "resp-in";
   private static final String MSG_TYPE_LOG_RESP_OUT = "resp-out";
   private static final String MSG_TYPE_ERROR = "error";
+  private static final String MSG_TYPE_CONSUMER_ABORTED = "consumer-aborted";
 
 
   public void logReqIn(Exchange exchange) {
@@ -48,6 +51,10 @@ public class MessageInfoLogger {
     log(LOGGER_RESP_OUT, exchange, MSG_TYPE_LOG_RESP_OUT);
   }
 
+  public void logConsumerAborted(Exchange exchange) {
+    log(LOGGER_CONSUMER_ABORTED, exchange, MSG_TYPE_CONSUMER_ABORTED);
+  }
+
   public void logError(Exchange exchange, String stackTrace) {
 
     try {
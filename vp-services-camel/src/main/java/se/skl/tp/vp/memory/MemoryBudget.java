@@ -0,0 +1,117 @@
+package se.skl.tp.vp.memory;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.internal.PlatformDependent;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.MemoryBudgetProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+import se.skl.tp.vp.exceptions.VPFaultCodeEnum;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.utils.MemoryUtil;
+
+/**
+ * Bytes of request and producer response bodies in flight, shared by all connections. A body reserves
+ * its size before it is read, from Content-Length or chunk by chunk, and releases it when the call is
+ * done. Large bodies are rejected when the reservation does not fit or when Netty's pooled direct
+ * memory is above the watermark, small bodies always get through.
+ */
+@Component
+public class MemoryBudget {
+
+  private final MemoryBudgetProperties budgetProperties;
+  private final long watermarkBytes;
+  private final ByteBuf fault;
+
+  private final AtomicLong reserved = new AtomicLong();
+  private final LongAdder rejected = new LongAdder();
+
+  @Autowired
+  public MemoryBudget(MemoryBudgetProperties budgetProperties, ExceptionUtil exceptionUtil) {
+    this(budgetProperties, exceptionUtil.createMessage(VpSemanticErrorCodeEnum.VP012),
+        PlatformDependent.maxDirectMemory());
+  }
+
+  MemoryBudget(MemoryBudgetProperties budgetProperties, String faultMessage, long maxDirectMemory) {
+    this.budgetProperties = budgetProperties;
+    this.watermarkBytes = (long) (budgetProperties.getDirectMemoryWatermark() * maxDirectMemory);
+    this.fault = NettyFaultResponse.render(faultMessage, VPFaultCodeEnum.Server);
+  }
+
+  public boolean isEnabled() {
+    return budgetProperties.isEnabled();
+  }
+
+  /**
+   * Reserves bytes for a body that will be total bytes in all. Returns false if the body is large
+   * and there is no room for it.
+   */
+  public boolean tryReserve(long bytes, long total) {
+    if (total < budgetProperties.getLargeSize()) {
+      reserved.addAndGet(bytes);
+      return true;
+    }
+    if (isAboveWatermark()) {
+      rejected.increment();
+      return false;
+    }
+    while (true) {
+      long current = reserved.get();
+      if (current + bytes > budgetProperties.getMaxBytes()) {
+        rejected.increment();
+        return false;
+      }
+      if (reserved.compareAndSet(current, current + bytes)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Reserves bytes that can not be turned away, the budget may be exceeded.
+   */
+  public void reserve(long bytes) {
+    reserved.addAndGet(bytes);
+  }
+
+  public void release(long bytes) {
+    reserved.addAndGet(-bytes);
+  }
+
+  /**
+   * Max producer response size for the contract, or -1 if it has none.
+   */
+  public long getMaxResponseSize(String contract) {
+    Long maxSize = contract == null ? null : budgetProperties.getMaxResponseSizes().get(contract);
+    return maxSize == null ? -1 : maxSize;
+  }
+
+  /**
+   * The response body for rejected requests, a duplicate that shares the pre-rendered content.
+   */
+  public ByteBuf getFault() {
+    return fault.duplicate();
+  }
+
+  public long getReserved() {
+    return reserved.get();
+  }
+
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  boolean isAboveWatermark() {
+    return watermarkBytes > 0 && PooledByteBufAllocator.DEFAULT.metric().usedDirectMemory() > watermarkBytes;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Reserved: %s/%s, Rejected: %d", MemoryUtil.bytesReadable(getReserved()),
+        MemoryUtil.bytesReadable(budgetProperties.getMaxBytes()), getRejected());
+  }
+}
@@ -0,0 +1,136 @@
+package se.skl.tp.vp.memory;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpStatusClass;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+
+/**
+ * Placed before the aggregator in the consumer pipeline. Reserves the size of each request body in
+ * the MemoryBudget before it is aggregated, from Content-Length or chunk by chunk, and releases it
+ * when the last part of the response is written. A large request that does not fit is answered with
+ * 503 and the pre-rendered SOAP fault. Its body is discarded if the size was known up front, while a
+ * chunked request that outgrows the budget has its connection closed. Requests on a connection that
+ * already has a request in progress are never rejected, so responses can not be written out of order.
+ *
+ * Each final response releases the oldest request that is not yet answered, also when it answers a
+ * request whose body is still being read, as the aggregator's 413 does. The rest of that body is not
+ * reserved. Informational responses such as 100 Continue release nothing.
+ */
+public class RequestBudgetHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "memory-budget";
+
+  private final MemoryBudget memoryBudget;
+  // Requests not yet answered, oldest first
+  private final Queue<Request> inProgress = new ArrayDeque<>();
+
+  private HttpRequest request;
+  private Request reading;
+  private boolean chunked;
+  private boolean discarding;
+  private boolean informational;
+
+  public RequestBudgetHandler(MemoryBudget memoryBudget) {
+    this.memoryBudget = memoryBudget;
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpRequest && !startRequest(ctx, (HttpRequest) msg)) {
+      discarding = !(msg instanceof LastHttpContent);
+      ReferenceCountUtil.release(msg);
+      return;
+    }
+    if (msg instanceof HttpContent) {
+      if (discarding) {
+        discarding = !(msg instanceof LastHttpContent);
+        ReferenceCountUtil.release(msg);
+        return;
+      }
+      if (chunked && reading != null && !reading.answered && !reserveChunk(ctx, (HttpContent) msg)) {
+        ReferenceCountUtil.release(msg);
+        return;
+      }
+      if (msg instanceof LastHttpContent) {
+        reading = null;
+      }
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpResponse) {
+      informational = ((HttpResponse) msg).status().codeClass() == HttpStatusClass.INFORMATIONAL;
+    }
+    if (msg instanceof LastHttpContent && !informational && !inProgress.isEmpty()) {
+      Request answered = inProgress.poll();
+      answered.answered = true;
+      long bytes = answered.bytes;
+      answered.bytes = 0;
+      promise = promise.unvoid();
+      promise.addListener(future -> memoryBudget.release(bytes));
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    Request request;
+    while ((request = inProgress.poll()) != null) {
+      memoryBudget.release(request.bytes);
+      request.bytes = 0;
+    }
+    reading = null;
+    super.channelInactive(ctx);
+  }
+
+  private boolean startRequest(ChannelHandlerContext ctx, HttpRequest request) {
+    this.request = request;
+    long length = HttpUtil.getContentLength(request, -1L);
+    chunked = length < 0;
+    reading = new Request();
+    if (length > 0) {
+      if (!inProgress.isEmpty()) {
+        memoryBudget.reserve(length);
+      } else if (!memoryBudget.tryReserve(length, length)) {
+        NettyFaultResponse.write(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE, memoryBudget.getFault(), true);
+        reading = null;
+        return false;
+      }
+      reading.bytes = length;
+    }
+    inProgress.add(reading);
+    return true;
+  }
+
+  private boolean reserveChunk(ChannelHandlerContext ctx, HttpContent content) {
+    long bytes = content.content().readableBytes();
+    if (inProgress.peek() != reading) {
+      memoryBudget.reserve(bytes);
+    } else if (!memoryBudget.tryReserve(bytes, reading.bytes + bytes)) {
+      discarding = true;
+      NettyFaultResponse.write(ctx, request, HttpResponseStatus.SERVICE_UNAVAILABLE, memoryBudget.getFault(), false);
+      return false;
+    }
+    reading.bytes += bytes;
+    return true;
+  }
+
+  private static final class Request {
+
+    private long bytes;
+    private boolean answered;
+  }
+}
@@ -0,0 +1,161 @@
+package se.skl.tp.vp.memory;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyProducer;
+import org.apache.camel.support.SynchronizationAdapter;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+
+/**
+ * Placed before the aggregator in the producer pipeline. Reserves the size of each producer response
+ * in the MemoryBudget as it is read, released when the exchange is done, and enforces the max
+ * response size of the contract. A response that does not fit fails the call and the connection is
+ * closed. Streamed responses are relayed chunk by chunk and are only checked against the max size.
+ */
+@Log4j2
+public class ResponseBudgetHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "memory-budget";
+
+  private final NettyProducer producer;
+  private final MemoryBudget memoryBudget;
+  private final ExceptionUtil exceptionUtil;
+
+  private Exchange exchange;
+  private AtomicLong reserved;
+  private boolean streamed;
+  private boolean chunked;
+  private long maxSize;
+  private long received;
+  private boolean discarding;
+
+  public ResponseBudgetHandler(NettyProducer producer, MemoryBudget memoryBudget, ExceptionUtil exceptionUtil) {
+    this.producer = producer;
+    this.memoryBudget = memoryBudget;
+    this.exceptionUtil = exceptionUtil;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpRequest) {
+      NettyCamelState state = producer.getCorrelationManager().getState(ctx, ctx.channel(), msg);
+      exchange = state == null ? null : state.getExchange();
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpResponse && exchange != null && !startResponse(ctx, (HttpResponse) msg)) {
+      discard(msg);
+      return;
+    }
+    if (msg instanceof HttpContent) {
+      if (discarding) {
+        discard(msg);
+        return;
+      }
+      if (exchange != null && !readContent(ctx, (HttpContent) msg)) {
+        discard(msg);
+        return;
+      }
+      if (msg instanceof LastHttpContent) {
+        exchange = null;
+      }
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  private boolean startResponse(ChannelHandlerContext ctx, HttpResponse response) {
+    streamed = exchange.getProperty(VPExchangeProperties.STREAMED_RESPONSE) != null;
+    maxSize = memoryBudget.getMaxResponseSize(
+        exchange.getProperty(VPExchangeProperties.SERVICECONTRACT_NAMESPACE, String.class));
+    received = 0;
+    long length = HttpUtil.getContentLength(response, -1L);
+    chunked = length < 0;
+    if (maxSize >= 0 && length > maxSize) {
+      return fail(ctx, tooLarge());
+    }
+    if (!streamed) {
+      reserved = new AtomicLong();
+      releaseOnCompletion(exchange, reserved);
+      if (length > 0 && !reserve(length, length)) {
+        return fail(ctx, exhausted());
+      }
+    }
+    return true;
+  }
+
+  private boolean readContent(ChannelHandlerContext ctx, HttpContent content) {
+    long bytes = content.content().readableBytes();
+    received += bytes;
+    if (maxSize >= 0 && received > maxSize) {
+      return fail(ctx, tooLarge());
+    }
+    if (!streamed && chunked && !reserve(bytes, received)) {
+      return fail(ctx, exhausted());
+    }
+    return true;
+  }
+
+  private boolean reserve(long bytes, long total) {
+    if (memoryBudget.tryReserve(bytes, total)) {
+      reserved.addAndGet(bytes);
+      return true;
+    }
+    return false;
+  }
+
+  private boolean fail(ChannelHandlerContext ctx, Exception exception) {
+    log.warn(exception.getMessage());
+    if (reserved != null) {
+      memoryBudget.release(reserved.getAndSet(0));
+    }
+    exchange = null;
+    discarding = true;
+    ctx.fireExceptionCaught(exception);
+    ctx.close();
+    return false;
+  }
+
+  private void discard(Object msg) {
+    if (msg instanceof LastHttpContent) {
+      discarding = false;
+    }
+    ReferenceCountUtil.release(msg);
+  }
+
+  private Exception tooLarge() {
+    return exceptionUtil.createVpSemanticException(VpSemanticErrorCodeEnum.VP009,
+        exchange.getProperty(VPExchangeProperties.VAGVAL, "<UNKNOWN>", String.class)
+            + ". Response is larger than the max size " + maxSize + " for the contract");
+  }
+
+  private Exception exhausted() {
+    return exceptionUtil.createVpSemanticException(VpSemanticErrorCodeEnum.VP012,
+        "Memory budget for producer responses is used up");
+  }
+
+  private void releaseOnCompletion(Exchange exchange, AtomicLong reserved) {
+    exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+      @Override
+      public void onDone(Exchange exchange) {
+        memoryBudget.release(reserved.getAndSet(0));
+      }
+    });
+  }
+}
@@ -0,0 +1,73 @@
+package se.skl.tp.vp.priority;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+/**
+ * A priority lane with its reserved slots, its queue and its statistics. The slot accounting is done
+ * by PriorityLanes, which guards the lanes with its own lock.
+ */
+public class Lane {
+
+  private final String name;
+  private final Pattern contracts;
+  private final int reserved;
+  private final int maxQueued;
+  private final long queueTimeout;
+
+  final Queue<Runnable> queue = new ArrayDeque<>();
+  int active;
+
+  private long completed;
+  private long totalNanos;
+  private long maxNanos;
+  private long rejected;
+
+  public Lane(String name, String contracts, int reserved, int maxQueued, long queueTimeout) {
+    this.name = name;
+    this.contracts = contracts == null || contracts.isEmpty() ? null : Pattern.compile(contracts);
+    this.reserved = reserved;
+    this.maxQueued = maxQueued;
+    this.queueTimeout = queueTimeout;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean matches(String contract) {
+    return contracts != null && contract != null && contracts.matcher(contract).matches();
+  }
+
+  public int getReserved() {
+    return reserved;
+  }
+
+  public int getMaxQueued() {
+    return maxQueued;
+  }
+
+  public long getQueueTimeout() {
+    return queueTimeout;
+  }
+
+  int getShared() {
+    return Math.max(0, active - reserved);
+  }
+
+  synchronized void recordRejected() {
+    rejected++;
+  }
+
+  synchronized void recordLatency(long nanos) {
+    completed++;
+    totalNanos += nanos;
+    maxNanos = Math.max(maxNanos, nanos);
+  }
+
+  synchronized String getStatistics() {
+    return String.format("Completed: %d, Rejected: %d, AvgMillis: %.1f, MaxMillis: %.1f", completed, rejected,
+        completed == 0 ? 0d : totalNanos / (double) completed / 1_000_000d, maxNanos / 1_000_000d);
+  }
+}
@@ -0,0 +1,8 @@
+package se.skl.tp.vp.priority;
+
+import org.apache.camel.AsyncProcessor;
+
+public interface PriorityLaneProcessor extends AsyncProcessor {
+
+  PriorityLanes getPriorityLanes();
+}
@@ -0,0 +1,84 @@
+package se.skl.tp.vp.priority;
+
+import java.util.ArrayList;
+import java.util.List;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExtendedExchange;
+import org.apache.camel.support.AsyncProcessorSupport;
+import org.apache.camel.support.SynchronizationAdapter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.PriorityLaneProperties;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.utils.SlotAcquirer;
+
+/**
+ * Runs each call in the priority lane of its service contract. The call holds a slot of its lane
+ * until the exchange is done, calls without a free slot wait in the lane's queue and are rejected
+ * with VP012 if the queue is full or no slot is freed in time.
+ */
+@Service
+@Log4j2
+public class PriorityLaneProcessorImpl extends AsyncProcessorSupport implements PriorityLaneProcessor {
+
+  static final String DEFAULT_LANE = "default";
+
+  private final boolean enabled;
+  private final PriorityLanes priorityLanes;
+  private final ExceptionUtil exceptionUtil;
+  private final SlotAcquirer slotAcquirer;
+
+  @Autowired
+  public PriorityLaneProcessorImpl(PriorityLaneProperties laneProperties, ExceptionUtil exceptionUtil,
+      SlotAcquirer slotAcquirer) {
+    this.enabled = laneProperties.isEnabled();
+    this.exceptionUtil = exceptionUtil;
+    this.slotAcquirer = slotAcquirer;
+    List<Lane> lanes = new ArrayList<>();
+    for (PriorityLaneProperties.Lane lane : laneProperties.getLanes()) {
+      lanes.add(new Lane(lane.getName(), lane.getContracts(), lane.getReserved(), lane.getMaxQueued(),
+          lane.getQueueTimeout()));
+    }
+    lanes.add(new Lane(DEFAULT_LANE, null, 0, laneProperties.getMaxQueued(), laneProperties.getQueueTimeout()));
+    this.priorityLanes = new PriorityLanes(lanes, laneProperties.getMaxConcurrent());
+  }
+
+  @Override
+  public PriorityLanes getPriorityLanes() {
+    return enabled ? priorityLanes : null;
+  }
+
+  @Override
+  public boolean process(Exchange exchange, AsyncCallback callback) {
+    if (!enabled) {
+      callback.done(true);
+      return true;
+    }
+
+    Lane lane = priorityLanes.laneFor(
+        exchange.getProperty(VPExchangeProperties.SERVICECONTRACT_NAMESPACE, String.class));
+    long start = System.nanoTime();
+    return slotAcquirer.acquire(exchange, callback, priorityLanes.slotsOf(lane), lane.getQueueTimeout(),
+        () -> releaseOnCompletion(exchange, lane, start), timedOut -> reject(exchange, lane));
+  }
+
+  private void reject(Exchange exchange, Lane lane) {
+    log.warn("Priority lane {} is saturated, call rejected", lane.getName());
+    exchange.setException(exceptionUtil.createVpSemanticException(VpSemanticErrorCodeEnum.VP012,
+        "Priority lane " + lane.getName() + " is saturated"));
+  }
+
+  private void releaseOnCompletion(Exchange exchange, Lane lane, long start) {
+    exchange.adapt(ExtendedExchange.class).addOnCompletion(new SynchronizationAdapter() {
+      @Override
+      public void onDone(Exchange exchange) {
+        lane.recordLatency(System.nanoTime() - start);
+        priorityLanes.release(lane);
+      }
+    });
+  }
+}
@@ -0,0 +1,131 @@
+package se.skl.tp.vp.priority;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import se.skl.tp.vp.utils.SlotLimiter;
+import se.skl.tp.vp.utils.SlotLimiter.Admission;
+
+/**
+ * Shares a number of concurrent slots between priority lanes. Each lane may always use its reserved
+ * slots, and slots that are not reserved are shared. Freed shared slots go to the queued calls of the
+ * highest lane first, so lower lanes are the first to queue and to be rejected when VP is loaded.
+ */
+public class PriorityLanes {
+
+  private final List<Lane> lanes;
+  private final int shared;
+  private int sharedActive;
+
+  /**
+   * @param lanes in priority order, the last is used for calls that match no other lane
+   */
+  public PriorityLanes(List<Lane> lanes, int maxConcurrent) {
+    this.lanes = Collections.unmodifiableList(new ArrayList<>(lanes));
+    this.shared = Math.max(0, maxConcurrent - lanes.stream().mapToInt(Lane::getReserved).sum());
+  }
+
+  public List<Lane> getLanes() {
+    return lanes;
+  }
+
+  public Lane laneFor(String contract) {
+    for (int i = 0; i < lanes.size() - 1; i++) {
+      if (lanes.get(i).matches(contract)) {
+        return lanes.get(i);
+      }
+    }
+    return lanes.get(lanes.size() - 1);
+  }
+
+  /**
+   * Takes a slot in the lane. If there is none the call is queued, and whenAcquired is run with the
+   * slot when one is freed for the lane.
+   */
+  public synchronized Admission acquire(Lane lane, Runnable whenAcquired) {
+    if (lane.queue.isEmpty() && tryStart(lane)) {
+      return Admission.ACQUIRED;
+    }
+    if (lane.queue.size() < lane.getMaxQueued()) {
+      lane.queue.add(whenAcquired);
+      return Admission.QUEUED;
+    }
+    lane.recordRejected();
+    return Admission.REJECTED;
+  }
+
+  /**
+   * Removes a queued call that gave up waiting, returns false if it has already got a slot.
+   */
+  public synchronized boolean remove(Lane lane, Runnable whenAcquired) {
+    boolean removed = lane.queue.remove(whenAcquired);
+    if (removed) {
+      lane.recordRejected();
+    }
+    return removed;
+  }
+
+  /**
+   * The slots of the lane, for the SlotAcquirer.
+   */
+  public SlotLimiter slotsOf(Lane lane) {
+    return new SlotLimiter() {
+      @Override
+      public Admission acquire(Runnable whenAcquired) {
+        return PriorityLanes.this.acquire(lane, whenAcquired);
+      }
+
+      @Override
+      public boolean remove(Runnable whenAcquired) {
+        return PriorityLanes.this.remove(lane, whenAcquired);
+      }
+    };
+  }
+
+  public void release(Lane lane) {
+    List<Runnable> started = new ArrayList<>();
+    synchronized (this) {
+      if (lane.getShared() > 0) {
+        sharedActive--;
+      }
+      lane.active--;
+      for (Lane next : lanes) {
+        startQueued(next, started);
+      }
+    }
+    started.forEach(Runnable::run);
+  }
+
+  public synchronized int getSharedActive() {
+    return sharedActive;
+  }
+
+  public synchronized String toString(Lane lane) {
+    return String.format("Active: %d (reserved %d), Queued: %d/%d, %s", lane.active, lane.getReserved(),
+        lane.queue.size(), lane.getMaxQueued(), lane.getStatistics());
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("Shared: %d/%d", sharedActive, shared);
+  }
+
+  private void startQueued(Lane lane, List<Runnable> started) {
+    while (!lane.queue.isEmpty() && tryStart(lane)) {
+      started.add(lane.queue.poll());
+    }
+  }
+
+  private boolean tryStart(Lane lane) {
+    if (lane.active < lane.getReserved()) {
+      lane.active++;
+      return true;
+    }
+    if (sharedActive < shared) {
+      lane.active++;
+      sharedActive++;
+      return true;
+    }
+    return false;
+  }
+}
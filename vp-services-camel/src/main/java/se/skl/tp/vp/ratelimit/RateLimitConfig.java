@@ -0,0 +1,41 @@
+package se.skl.tp.vp.ratelimit;
+
+public class RateLimitConfig {
+
+  private String senderId;
+  private String tjanstekontrakt;
+  private double rate;
+  private int burst = 1;
+
+  public String getSenderId() {
+    return senderId;
+  }
+
+  public void setSenderId(String senderId) {
+    this.senderId = senderId;
+  }
+
+  public String getTjanstekontrakt() {
+    return tjanstekontrakt;
+  }
+
+  public void setTjanstekontrakt(String tjanstekontrakt) {
+    this.tjanstekontrakt = tjanstekontrakt;
+  }
+
+  public double getRate() {
+    return rate;
+  }
+
+  public void setRate(double rate) {
+    this.rate = rate;
+  }
+
+  public int getBurst() {
+    return burst;
+  }
+
+  public void setBurst(int burst) {
+    this.burst = burst;
+  }
+}
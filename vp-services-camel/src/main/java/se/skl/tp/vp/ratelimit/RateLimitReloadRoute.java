@@ -0,0 +1,26 @@
+package se.skl.tp.vp.ratelimit;
+
+import org.apache.camel.Exchange;
+import org.apache.camel.builder.RouteBuilder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.RateLimitProperties;
+
+@Component
+public class RateLimitReloadRoute extends RouteBuilder {
+
+  @Autowired
+  RateLimitProperties rateLimitProperties;
+
+  @Autowired
+  SenderRateLimiter senderRateLimiter;
+
+  @Override
+  public void configure() throws Exception {
+    if (rateLimitProperties.isEnabled() && rateLimitProperties.getReloadInterval() > 0) {
+      from("timer://rateLimitReload?fixedRate=true&delay=" + rateLimitProperties.getReloadInterval()
+          + "&period=" + rateLimitProperties.getReloadInterval()).routeId("RateLimitReloadRoute")
+          .process((Exchange exchange) -> senderRateLimiter.reload());
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package se.skl.tp.vp.ratelimit;
+
+import org.apache.camel.Processor;
+
+public interface SenderRateLimitProcessor extends Processor {
+
+}
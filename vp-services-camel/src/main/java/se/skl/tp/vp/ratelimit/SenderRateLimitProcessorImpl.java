@@ -0,0 +1,36 @@
+package se.skl.tp.vp.ratelimit;
+
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.Exchange;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+
+@Service
+@Log4j2
+public class SenderRateLimitProcessorImpl implements SenderRateLimitProcessor {
+
+  private final SenderRateLimiter senderRateLimiter;
+  private final ExceptionUtil exceptionUtil;
+
+  @Autowired
+  public SenderRateLimitProcessorImpl(SenderRateLimiter senderRateLimiter, ExceptionUtil exceptionUtil) {
+    this.senderRateLimiter = senderRateLimiter;
+    this.exceptionUtil = exceptionUtil;
+  }
+
+  @Override
+  public void process(Exchange exchange) {
+    if (!senderRateLimiter.isEnabled()) {
+      return;
+    }
+    String senderId = exchange.getProperty(VPExchangeProperties.SENDER_ID, String.class);
+    String contract = exchange.getProperty(VPExchangeProperties.SERVICECONTRACT_NAMESPACE, String.class);
+    if (!senderRateLimiter.tryAcquire(senderId, contract)) {
+      log.debug("Rate limit for sender {} reached, call to {} rejected", senderId, contract);
+      throw exceptionUtil.createVpSemanticException(VpSemanticErrorCodeEnum.VP015, senderId);
+    }
+  }
+}
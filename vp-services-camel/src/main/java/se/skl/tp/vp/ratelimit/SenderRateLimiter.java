@@ -0,0 +1,143 @@
+package se.skl.tp.vp.ratelimit;
+
+import static se.skl.tp.vp.wsdl.PathHelper.getPath;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.log4j.Log4j2;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.RateLimitProperties;
+
+/**
+ * Rate limits per sender, and per sender and contract, read from a json file. The limits are swapped
+ * as a whole when the file is reloaded, buckets whose settings are unchanged keep their tokens.
+ */
+@Service
+@Log4j2
+public class SenderRateLimiter {
+
+  private final RateLimitProperties rateLimitProperties;
+  private final Map<String, LongAdder> throttled = new ConcurrentHashMap<>();
+  private volatile Limits limits = new Limits();
+  private long lastModified = -1;
+
+  @Autowired
+  public SenderRateLimiter(RateLimitProperties rateLimitProperties) {
+    this.rateLimitProperties = rateLimitProperties;
+    if (rateLimitProperties.isEnabled()) {
+      reload();
+    }
+  }
+
+  public boolean isEnabled() {
+    return rateLimitProperties.isEnabled();
+  }
+
+  /**
+   * Takes a token from the bucket of the sender and from the bucket of the sender and contract,
+   * returns false if either is empty. No token is used from either bucket when the call is refused.
+   */
+  public boolean tryAcquire(String senderId, String contract) {
+    if (senderId == null) {
+      return true;
+    }
+    Limits current = limits;
+    TokenBucket senderBucket = current.perSender.get(senderId);
+    Map<String, TokenBucket> contractBuckets = current.perContract.get(senderId);
+    TokenBucket contractBucket = contractBuckets == null || contract == null ? null : contractBuckets.get(contract);
+    if (senderBucket == null || senderBucket.tryAcquire()) {
+      if (contractBucket == null || contractBucket.tryAcquire()) {
+        return true;
+      }
+      if (senderBucket != null) {
+        senderBucket.release();
+      }
+    }
+    throttled.computeIfAbsent(senderId, key -> new LongAdder()).increment();
+    return false;
+  }
+
+  public Map<String, Long> getThrottled() {
+    Map<String, Long> counts = new TreeMap<>();
+    throttled.forEach((senderId, count) -> counts.put(senderId, count.sum()));
+    return counts;
+  }
+
+  /**
+   * Reads the file again if it has changed. The current limits are kept if it can not be read.
+   */
+  public synchronized void reload() {
+    String file = rateLimitProperties.getFile();
+    try {
+      File configFile = getPath(file).toFile();
+      if (configFile.lastModified() == lastModified) {
+        return;
+      }
+      List<RateLimitConfig> configs = new ObjectMapper()
+          .readValue(configFile, new TypeReference<List<RateLimitConfig>>() {});
+      lastModified = configFile.lastModified();
+      limits = new Limits(configs, limits);
+      log.info("Rate limits read from {}, {} limits", file, configs.size());
+    } catch (FileNotFoundException e) {
+      log.warn("Json file for rate limits not found at " + file + ".");
+    } catch (JsonParseException e) {
+      log.warn("Json file for rate limits " + file + " could not be parsed.");
+    } catch (URISyntaxException | IOException e) {
+      log.warn("Json file for rate limits failed " + file + ".", e);
+    }
+  }
+
+  private static class Limits {
+
+    private final Map<String, TokenBucket> perSender;
+    private final Map<String, Map<String, TokenBucket>> perContract;
+
+    Limits() {
+      perSender = Collections.emptyMap();
+      perContract = Collections.emptyMap();
+    }
+
+    Limits(List<RateLimitConfig> configs, Limits previous) {
+      perSender = new HashMap<>();
+      perContract = new HashMap<>();
+      for (RateLimitConfig config : configs) {
+        if (config.getSenderId() == null || config.getRate() <= 0) {
+          log.warn("Rate limit without senderId or rate ignored");
+          continue;
+        }
+        String contract = config.getTjanstekontrakt();
+        Map<String, TokenBucket> buckets = contract == null ? perSender
+            : perContract.computeIfAbsent(config.getSenderId(), key -> new HashMap<>());
+        String key = contract == null ? config.getSenderId() : contract;
+        buckets.put(key, bucket(config, previous.find(config.getSenderId(), contract)));
+      }
+    }
+
+    private TokenBucket find(String senderId, String contract) {
+      if (contract == null) {
+        return perSender.get(senderId);
+      }
+      return perContract.getOrDefault(senderId, Collections.emptyMap()).get(contract);
+    }
+
+    private static TokenBucket bucket(RateLimitConfig config, TokenBucket previous) {
+      if (previous != null && previous.hasSettings(config.getRate(), config.getBurst())) {
+        return previous;
+      }
+      return new TokenBucket(config.getRate(), config.getBurst());
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package se.skl.tp.vp.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token bucket kept as the time the bucket is full again, so that taking a token is a single
+ * compare-and-set on one long. Refills with rate tokens per second up to burst tokens.
+ */
+public class TokenBucket {
+
+  private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+  private final double rate;
+  private final int burst;
+  private final long interval;
+  private final long capacity;
+  private final AtomicLong fullAt = new AtomicLong(Long.MIN_VALUE);
+
+  public TokenBucket(double rate, int burst) {
+    this.rate = rate;
+    this.burst = Math.max(1, burst);
+    this.interval = Math.max(1L, (long) (NANOS_PER_SECOND / rate));
+    this.capacity = interval * this.burst;
+  }
+
+  public boolean tryAcquire() {
+    return tryAcquire(System.nanoTime());
+  }
+
+  boolean tryAcquire(long now) {
+    while (true) {
+      long current = fullAt.get();
+      long next = Math.max(current, now) + interval;
+      if (next - now > capacity) {
+        return false;
+      }
+      if (fullAt.compareAndSet(current, next)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Gives back a token taken by tryAcquire, when the call was refused anyway.
+   */
+  public void release() {
+    fullAt.addAndGet(-interval);
+  }
+
+  public boolean hasSettings(double rate, int burst) {
+    return this.rate == rate && this.burst == Math.max(1, burst);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Rate: %s/s, Burst: %d", rate, burst);
+  }
+}
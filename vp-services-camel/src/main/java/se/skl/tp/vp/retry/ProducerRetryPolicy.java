@@ -0,0 +1,79 @@
+package se.skl.tp.vp.retry;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.Exchange;
+import org.apache.camel.Predicate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.ProducerRetryProperties;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Decides whether a failed producer call is redelivered. Used as retryWhile predicate on the
+ * producer route, where Camel schedules the redelivery with backoff and jitter. A retry requires
+ * both that the request has attempts left and that the producer's retry budget is not exhausted.
+ */
+@Service
+@Log4j2
+public class ProducerRetryPolicy implements Predicate {
+
+  private final ProducerRetryProperties retryProperties;
+  private final Map<String, RetryBudget> budgets = new ConcurrentHashMap<>();
+  private final LongAdder retries = new LongAdder();
+  private final LongAdder budgetExhausted = new LongAdder();
+
+  @Autowired
+  public ProducerRetryPolicy(ProducerRetryProperties retryProperties) {
+    this.retryProperties = retryProperties;
+  }
+
+  public void recordRequest(Exchange exchange) {
+    getBudget(exchange).recordRequest();
+  }
+
+  @Override
+  public boolean matches(Exchange exchange) {
+    int attempts = retryProperties.getAttempts();
+    int redeliveryCounter = exchange.getIn().getHeader(Exchange.REDELIVERY_COUNTER, 0, Integer.class);
+    if (attempts >= 0 && redeliveryCounter > attempts) {
+      return false;
+    }
+
+    if (!getBudget(exchange).tryAcquireRetry()) {
+      budgetExhausted.increment();
+      log.warn("Retry budget exhausted for producer {}, no retry", getProducer(exchange));
+      return false;
+    }
+    retries.increment();
+    return true;
+  }
+
+  public long getRetries() {
+    return retries.sum();
+  }
+
+  public long getBudgetExhausted() {
+    return budgetExhausted.sum();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("Retries: %d, BudgetExhausted: %d", getRetries(), getBudgetExhausted());
+  }
+
+  private RetryBudget getBudget(Exchange exchange) {
+    return budgets.computeIfAbsent(getProducer(exchange), producer -> {
+      ProducerRetryProperties.Budget budget = retryProperties.getBudget();
+      return new RetryBudget(budget.getRatio(), budget.getMinRetries(), budget.getWindow(),
+          System::currentTimeMillis);
+    });
+  }
+
+  private static String getProducer(Exchange exchange) {
+    String host = exchange.getProperty(VPExchangeProperties.VAGVAL_HOST, String.class);
+    return host == null ? "" : host;
+  }
+}
@@ -0,0 +1,65 @@
+package se.skl.tp.vp.retry;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Sliding window of requests and retries for one producer. A retry is allowed while the retries in
+ * the window stay below minRetries plus ratio times the requests in the window, so that retries
+ * can not multiply the load on a producer that is already failing.
+ */
+public class RetryBudget {
+
+  static final int BUCKETS = 10;
+
+  private final double ratio;
+  private final int minRetries;
+  private final long bucketMillis;
+  private final LongSupplier clock;
+
+  private final long[] requests = new long[BUCKETS];
+  private final long[] retries = new long[BUCKETS];
+  private long currentBucket;
+
+  public RetryBudget(double ratio, int minRetries, long windowMillis, LongSupplier clock) {
+    this.ratio = ratio;
+    this.minRetries = minRetries;
+    this.bucketMillis = Math.max(1, windowMillis / BUCKETS);
+    this.clock = clock;
+    this.currentBucket = clock.getAsLong() / bucketMillis;
+  }
+
+  public synchronized void recordRequest() {
+    requests[rotate()]++;
+  }
+
+  public synchronized boolean tryAcquireRetry() {
+    int index = rotate();
+    if (sum(retries) >= minRetries + ratio * sum(requests)) {
+      return false;
+    }
+    retries[index]++;
+    return true;
+  }
+
+  private int rotate() {
+    long bucket = clock.getAsLong() / bucketMillis;
+    long expired = Math.min(bucket - currentBucket, BUCKETS);
+    for (long i = 1; i <= expired; i++) {
+      int index = (int) ((currentBucket + i) % BUCKETS);
+      requests[index] = 0;
+      retries[index] = 0;
+    }
+    if (bucket > currentBucket) {
+      currentBucket = bucket;
+    }
+    return (int) (currentBucket % BUCKETS);
+  }
+
+  private static long sum(long[] counts) {
+    long sum = 0;
+    for (long count : counts) {
+      sum += count;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,177 @@
+package se.skl.tp.vp.sslcontext;
+
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.List;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.TrustManagerFactory;
+import lombok.extern.log4j.Log4j2;
+import org.apache.camel.CamelContext;
+import org.apache.camel.support.jsse.KeyManagersParameters;
+import org.apache.camel.support.jsse.KeyStoreParameters;
+import org.apache.camel.support.jsse.SSLContextParameters;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.Http2Properties;
+import se.skl.tp.vp.config.SecurityProperties;
+import se.skl.tp.vp.exceptions.VpTechnicalException;
+
+/**
+ * Creates netty SslContexts from the same keystores, protocols and cipher suites as
+ * the Camel SSLContextParameters. Used by the VP channel initializers when the OpenSSL
+ * engine is configured (tp.tls.provider=OPENSSL), or when the server context must offer
+ * h2 with ALPN (vp.http2.enabled), otherwise Camel's JDK engine is kept.
+ */
+@Component
+@Log4j2
+public class NettySslContextFactory {
+
+  public static final String PROVIDER_OPENSSL = "OPENSSL";
+
+  private final SecurityProperties securityProperties;
+  private final SSLContextParameters incomingSSLContextParameters;
+  private final SSLContextParameters outgoingSSLContextParameters;
+  private final CamelContext camelContext;
+  private final boolean useOpenSsl;
+  private final boolean http2;
+
+  private volatile SslContext serverContext;
+  private volatile SslContext clientContext;
+
+  @Autowired
+  public NettySslContextFactory(SecurityProperties securityProperties,
+      @Qualifier("incomingSSLContextParameters") SSLContextParameters incomingSSLContextParameters,
+      @Qualifier("outgoingSSLContextParameters") SSLContextParameters outgoingSSLContextParameters,
+      CamelContext camelContext,
+      Http2Properties http2Properties) {
+    this.securityProperties = securityProperties;
+    this.incomingSSLContextParameters = incomingSSLContextParameters;
+    this.outgoingSSLContextParameters = outgoingSSLContextParameters;
+    this.camelContext = camelContext;
+    this.useOpenSsl = resolveUseOpenSsl(securityProperties.getProvider());
+    this.http2 = http2Properties.isEnabled();
+  }
+
+  public boolean isOpenSslEnabled() {
+    return useOpenSsl;
+  }
+
+  /**
+   * True if incoming connections must use the server context rather than Camel's JDK engine.
+   */
+  public boolean isServerContextEnabled() {
+    return useOpenSsl || http2;
+  }
+
+  public String getProviderName() {
+    return useOpenSsl ? SslProvider.OPENSSL.name() : SslProvider.JDK.name();
+  }
+
+  public SslContext getServerContext() {
+    if (serverContext == null) {
+      synchronized (this) {
+        if (serverContext == null) {
+          serverContext = createServerContext();
+        }
+      }
+    }
+    return serverContext;
+  }
+
+  public SslContext getClientContext() {
+    if (clientContext == null) {
+      synchronized (this) {
+        if (clientContext == null) {
+          clientContext = createClientContext();
+        }
+      }
+    }
+    return clientContext;
+  }
+
+  private SslContext createServerContext() {
+    try {
+      SslContextBuilder builder = SslContextBuilder
+          .forServer(createKeyManagerFactory(incomingSSLContextParameters.getKeyManagers()))
+          .clientAuth(ClientAuth.REQUIRE);
+      if (http2) {
+        builder.applicationProtocolConfig(new ApplicationProtocolConfig(Protocol.ALPN,
+            SelectorFailureBehavior.NO_ADVERTISE, SelectedListenerFailureBehavior.ACCEPT,
+            ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1));
+      }
+      return configure(builder, incomingSSLContextParameters).build();
+    } catch (GeneralSecurityException | IOException e) {
+      throw new VpTechnicalException("Failed to create netty server SslContext", e);
+    }
+  }
+
+  private SslContext createClientContext() {
+    try {
+      SslContextBuilder builder = SslContextBuilder.forClient()
+          .keyManager(createKeyManagerFactory(outgoingSSLContextParameters.getKeyManagers()));
+      return configure(builder, outgoingSSLContextParameters).build();
+    } catch (GeneralSecurityException | IOException e) {
+      throw new VpTechnicalException("Failed to create netty client SslContext", e);
+    }
+  }
+
+  private SslContextBuilder configure(SslContextBuilder builder, SSLContextParameters parameters)
+      throws GeneralSecurityException, IOException {
+    builder.sslProvider(useOpenSsl ? SslProvider.OPENSSL : SslProvider.JDK)
+        .trustManager(createTrustManagerFactory(parameters.getTrustManagers().getKeyStore()))
+        .sessionCacheSize(securityProperties.getSession().getCacheSize())
+        .sessionTimeout(securityProperties.getSession().getTimeout());
+
+    List<String> protocols = parameters.getSecureSocketProtocols().getSecureSocketProtocol();
+    builder.protocols(protocols.stream().map(String::trim).toArray(String[]::new));
+
+    if (parameters.getCipherSuites() != null) {
+      builder.ciphers(parameters.getCipherSuites().getCipherSuite());
+    }
+    return builder;
+  }
+
+  private KeyManagerFactory createKeyManagerFactory(KeyManagersParameters keyManagers)
+      throws GeneralSecurityException, IOException {
+    KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(loadKeyStore(keyManagers.getKeyStore()), keyManagers.getKeyPassword().toCharArray());
+    return kmf;
+  }
+
+  private TrustManagerFactory createTrustManagerFactory(KeyStoreParameters trustStore)
+      throws GeneralSecurityException, IOException {
+    TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    tmf.init(loadKeyStore(trustStore));
+    return tmf;
+  }
+
+  private KeyStore loadKeyStore(KeyStoreParameters keyStoreParameters) throws GeneralSecurityException, IOException {
+    keyStoreParameters.setCamelContext(camelContext);
+    return keyStoreParameters.createKeyStore();
+  }
+
+  private static boolean resolveUseOpenSsl(String provider) {
+    if (!PROVIDER_OPENSSL.equalsIgnoreCase(provider)) {
+      return false;
+    }
+    if (!OpenSsl.isAvailable()) {
+      log.warn("tp.tls.provider is set to OPENSSL but netty-tcnative could not be loaded, falling back to JDK. Cause: {}",
+          OpenSsl.unavailabilityCause() == null ? "unknown" : OpenSsl.unavailabilityCause().getMessage());
+      return false;
+    }
+    log.info("Using OpenSSL ({}) for TLS", OpenSsl.versionString());
+    return true;
+  }
+}
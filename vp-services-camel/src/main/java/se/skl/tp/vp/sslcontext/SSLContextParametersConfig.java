@@ -5,8 +5,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
+import java.security.GeneralSecurityException;
 import java.util.ArrayList;
 import java.util.List;
+import javax.net.ssl.SSLContext;
 import se.skl.tp.vp.config.SecurityProperties;
 
 @Configuration
@@ -26,7 +28,8 @@ public class SSLContextParametersConfig  {
         kmp.setKeyPassword(securityProperies.getStore().getProducer().getKeyPassword());
         kmp.setKeyStore(ksp);
 
-        SSLContextParameters sslContextParameters = new SSLContextParameters();
+        SSLContextParameters sslContextParameters = new SessionCacheSSLContextParameters(
+            securityProperies.getSession().getCacheSize());
         sslContextParameters.setKeyManagers(kmp);
 
         TrustManagersParameters trustManagersParameters = createTrustManagerParameters();
@@ -40,6 +43,7 @@ public class SSLContextParametersConfig  {
 	        CipherSuitesParameters cipherSuites = createCipherSuiteParameters(securityProperies.getAllowedIncomingCipherSuites());
 			sslContextParameters.setCipherSuites(cipherSuites);
         }
+        sslContextParameters.setSessionTimeout(String.valueOf(securityProperies.getSession().getTimeout()));
         return sslContextParameters;
     }
 
@@ -52,7 +56,8 @@ public class SSLContextParametersConfig  {
         kmp.setKeyPassword(securityProperies.getStore().getConsumer().getKeyPassword());
         kmp.setKeyStore(ksp);
 
-        SSLContextParameters sslContextParameters = new SSLContextParameters();
+        SSLContextParameters sslContextParameters = new SessionCacheSSLContextParameters(
+            securityProperies.getSession().getCacheSize());
         sslContextParameters.setKeyManagers(kmp);
         
         TrustManagersParameters trustManagersParameters = createTrustManagerParameters();
@@ -66,6 +71,7 @@ public class SSLContextParametersConfig  {
 	        CipherSuitesParameters cipherSuites = createCipherSuiteParameters(securityProperies.getAllowedOutgoingCipherSuites());
 			sslContextParameters.setCipherSuites(cipherSuites);
         }
+        sslContextParameters.setSessionTimeout(String.valueOf(securityProperies.getSession().getTimeout()));
         return sslContextParameters;
     }
 
@@ -106,5 +112,23 @@ public class SSLContextParametersConfig  {
         return tmp;
     }
 
+    /**
+     * SSLContextParameters has no session cache size, so it is set on the JDK SSLContext Camel
+     * creates from them, as the netty SslContext does for OpenSSL.
+     */
+    static class SessionCacheSSLContextParameters extends SSLContextParameters {
 
+        private final int sessionCacheSize;
+
+        SessionCacheSSLContextParameters(long sessionCacheSize) {
+            this.sessionCacheSize = (int) Math.min(sessionCacheSize, Integer.MAX_VALUE);
+        }
+
+        @Override
+        protected void configureSSLContext(SSLContext context) throws GeneralSecurityException {
+            super.configureSSLContext(context);
+            context.getClientSessionContext().setSessionCacheSize(sessionCacheSize);
+            context.getServerSessionContext().setSessionCacheSize(sessionCacheSize);
+        }
+    }
 }
@@ -0,0 +1,60 @@
+package se.skl.tp.vp.sslcontext;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.ssl.ReferenceCountedOpenSslEngine;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
+import io.netty.internal.tcnative.SSL;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+
+/**
+ * Placed after the SslHandler in the pipeline. The OpenSSL engine reports itself whether the
+ * handshake reused a session. With the JDK engine a handshake is counted as resumed when its
+ * session id was negotiated in an earlier handshake, a full handshake always gets a new id.
+ */
+@Sharable
+public class TlsHandshakeStatisticsHandler extends ChannelInboundHandlerAdapter {
+
+  private final TlsSessionStatistics.Counters counters;
+
+  TlsHandshakeStatisticsHandler(TlsSessionStatistics.Counters counters) {
+    this.counters = counters;
+  }
+
+  @Override
+  public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+    if (evt instanceof SslHandshakeCompletionEvent) {
+      if (((SslHandshakeCompletionEvent) evt).isSuccess()) {
+        counters.handshakeCompleted(isResumed(ctx));
+      } else {
+        counters.handshakeFailed();
+      }
+    }
+    super.userEventTriggered(ctx, evt);
+  }
+
+  private boolean isResumed(ChannelHandlerContext ctx) {
+    SslHandler sslHandler = ctx.pipeline().get(SslHandler.class);
+    if (sslHandler == null) {
+      return false;
+    }
+    SSLEngine engine = sslHandler.engine();
+    if (engine instanceof ReferenceCountedOpenSslEngine) {
+      return OpenSslSessions.isReused((ReferenceCountedOpenSslEngine) engine);
+    }
+    SSLSession session = engine.getSession();
+    return session != null && counters.isKnownSession(session.getId());
+  }
+
+  // Kept apart so tcnative is only loaded when the OpenSSL engine is in use
+  private static class OpenSslSessions {
+
+    static boolean isReused(ReferenceCountedOpenSslEngine engine) {
+      long ssl = engine.sslPointer();
+      return ssl != 0 && SSL.isSessionReused(ssl);
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package se.skl.tp.vp.sslcontext;
+
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import se.skl.tp.vp.config.SecurityProperties;
+
+/**
+ * Counts TLS handshakes on the incoming (consumer) and outgoing (producer) connections,
+ * and how many of them were abbreviated handshakes resuming a cached session or ticket.
+ */
+@Component
+public class TlsSessionStatistics {
+
+  private final Counters incoming;
+  private final Counters outgoing;
+
+  private final TlsHandshakeStatisticsHandler incomingHandler;
+  private final TlsHandshakeStatisticsHandler outgoingHandler;
+
+  @Autowired
+  public TlsSessionStatistics(SecurityProperties securityProperties) {
+    // As many session ids as the session cache can hold, older ones can not be resumed anyway
+    long knownSessions = securityProperties.getSession().getCacheSize();
+    incoming = new Counters(knownSessions);
+    outgoing = new Counters(knownSessions);
+    incomingHandler = new TlsHandshakeStatisticsHandler(incoming);
+    outgoingHandler = new TlsHandshakeStatisticsHandler(outgoing);
+  }
+
+  public Counters getIncoming() {
+    return incoming;
+  }
+
+  public Counters getOutgoing() {
+    return outgoing;
+  }
+
+  public TlsHandshakeStatisticsHandler getIncomingHandler() {
+    return incomingHandler;
+  }
+
+  public TlsHandshakeStatisticsHandler getOutgoingHandler() {
+    return outgoingHandler;
+  }
+
+  public static class Counters {
+
+    private final LongAdder handshakes = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final Map<ByteBuffer, Boolean> knownSessions;
+
+    Counters(long maxKnownSessions) {
+      knownSessions = new LinkedHashMap<ByteBuffer, Boolean>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Boolean> eldest) {
+          return size() > maxKnownSessions;
+        }
+      };
+    }
+
+    void handshakeCompleted(boolean isResumed) {
+      handshakes.increment();
+      if (isResumed) {
+        resumed.increment();
+      }
+    }
+
+    /**
+     * Remembers the session id, returns true if it was already known from an earlier handshake.
+     */
+    boolean isKnownSession(byte[] sessionId) {
+      if (sessionId == null || sessionId.length == 0) {
+        return false;
+      }
+      synchronized (knownSessions) {
+        return knownSessions.put(ByteBuffer.wrap(sessionId), Boolean.TRUE) != null;
+      }
+    }
+
+    void handshakeFailed() {
+      failed.increment();
+    }
+
+    public long getHandshakes() {
+      return handshakes.sum();
+    }
+
+    public long getResumed() {
+      return resumed.sum();
+    }
+
+    public long getFailed() {
+      return failed.sum();
+    }
+
+    @Override
+    public String toString() {
+      long total = getHandshakes();
+      long resumedTotal = getResumed();
+      return String.format("Handshakes: %d, Full: %d, Resumed: %d, Failed: %d",
+          total, total - resumedTotal, resumedTotal, getFailed());
+    }
+  }
+}
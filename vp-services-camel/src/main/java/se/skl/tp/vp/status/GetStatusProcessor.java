@@ -19,10 +19,28 @@ import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.stereotype.Service;
+import se.skl.tp.vp.admission.AdmissionController;
+import se.skl.tp.vp.bulkhead.Bulkhead;
+import se.skl.tp.vp.bulkhead.ProducerBulkheadProcessor;
+import se.skl.tp.vp.certificate.HeaderCertificateCache;
+import se.skl.tp.vp.compression.CompressionStatistics;
 import se.skl.tp.vp.constants.HttpHeaders;
+import se.skl.tp.vp.dns.ProducerAddressResolver;
+import se.skl.tp.vp.expectcontinue.ExpectContinueAuthorizer;
+import se.skl.tp.vp.fairqueue.FairQueueScheduler;
+import se.skl.tp.vp.largepayload.LargePayloadProcessor;
+import se.skl.tp.vp.limit.ProducerLimitProcessor;
+import se.skl.tp.vp.memory.MemoryBudget;
+import se.skl.tp.vp.priority.Lane;
+import se.skl.tp.vp.priority.PriorityLaneProcessor;
+import se.skl.tp.vp.priority.PriorityLanes;
+import se.skl.tp.vp.ratelimit.SenderRateLimiter;
+import se.skl.tp.vp.retry.ProducerRetryPolicy;
 import se.skl.tp.vp.service.HsaCacheService;
 import se.skl.tp.vp.service.HsaCacheStatus;
 import se.skl.tp.vp.service.TakCacheService;
+import se.skl.tp.vp.sslcontext.NettySslContextFactory;
+import se.skl.tp.vp.sslcontext.TlsSessionStatistics;
 import se.skl.tp.vp.utils.MemoryUtil;
 import se.skltp.takcache.TakCacheLog;
 
@@ -50,6 +68,26 @@ public class GetStatusProcessor implements Processor {
   public static final String KEY_VM_MAX_DIRECT_MEMORY = "MaxDirectMemory";
   public static final String KEY_NETTY_DIRECT_MEMORY = "NettyDirectMemory";
   public static final String KEY_ENDPOINTS = "Endpoints";
+  public static final String KEY_TLS_PROVIDER = "TlsProvider";
+  public static final String KEY_TLS_INCOMING = "TlsIncoming";
+  public static final String KEY_TLS_OUTGOING = "TlsOutgoing";
+  public static final String KEY_COMPRESSION_CONSUMER_REQUESTS = "CompressionConsumerRequests";
+  public static final String KEY_COMPRESSION_CONSUMER_RESPONSES = "CompressionConsumerResponses";
+  public static final String KEY_COMPRESSION_PRODUCER_RESPONSES = "CompressionProducerResponses";
+  public static final String KEY_PRODUCER_RETRIES = "ProducerRetries";
+  public static final String KEY_PRODUCER_DNS = "ProducerDns";
+  public static final String KEY_PRODUCER_BULKHEADS = "ProducerBulkheads";
+  public static final String KEY_PRODUCER_LIMITS = "ProducerLimits";
+  public static final String KEY_ADMISSION = "Admission";
+  public static final String KEY_SENDER_RATE_LIMITS = "SenderRateLimits";
+  public static final String KEY_FAIR_QUEUE = "FairQueue";
+  public static final String KEY_FAIR_QUEUE_SENDERS = "FairQueueSenders";
+  public static final String KEY_PRIORITY_LANES = "PriorityLanes";
+  public static final String KEY_PRIORITY_LANES_SHARED = "PriorityLanesShared";
+  public static final String KEY_MEMORY_BUDGET = "MemoryBudget";
+  public static final String KEY_LARGE_PAYLOAD = "LargePayload";
+  public static final String KEY_EXPECT_CONTINUE = "ExpectContinue";
+  public static final String KEY_HEADER_CERTIFICATE_CACHE = "HeaderCertificateCache";
   @Autowired
   private CamelContext camelContext;
 
@@ -62,6 +100,51 @@ public class GetStatusProcessor implements Processor {
   @Autowired
   BuildProperties buildProperties;
 
+  @Autowired
+  NettySslContextFactory nettySslContextFactory;
+
+  @Autowired
+  TlsSessionStatistics tlsSessionStatistics;
+
+  @Autowired
+  CompressionStatistics compressionStatistics;
+
+  @Autowired
+  ProducerRetryPolicy producerRetryPolicy;
+
+  @Autowired
+  ProducerAddressResolver producerAddressResolver;
+
+  @Autowired
+  ProducerBulkheadProcessor producerBulkheadProcessor;
+
+  @Autowired
+  ProducerLimitProcessor producerLimitProcessor;
+
+  @Autowired
+  AdmissionController admissionController;
+
+  @Autowired
+  SenderRateLimiter senderRateLimiter;
+
+  @Autowired
+  FairQueueScheduler fairQueueScheduler;
+
+  @Autowired
+  PriorityLaneProcessor priorityLaneProcessor;
+
+  @Autowired
+  MemoryBudget memoryBudget;
+
+  @Autowired
+  LargePayloadProcessor largePayloadProcessor;
+
+  @Autowired
+  ExpectContinueAuthorizer expectContinueAuthorizer;
+
+  @Autowired
+  HeaderCertificateCache headerCertificateCache;
+
   @Override
   public void process(Exchange exchange) {
     boolean showNettyMemory = exchange.getIn().getHeaders().containsKey("netty");
@@ -112,10 +195,81 @@ public class GetStatusProcessor implements Processor {
       map.put(KEY_NON_HEAP_MEMORY, "" + getNonHeapMemory());
       map.put(KEY_NETTY_DIRECT_MEMORY, "" + getNettyDirectMemory());
     }
+    map.put(KEY_TLS_PROVIDER, nettySslContextFactory.getProviderName());
+    map.put(KEY_TLS_INCOMING, "" + tlsSessionStatistics.getIncoming());
+    map.put(KEY_TLS_OUTGOING, "" + tlsSessionStatistics.getOutgoing());
+    map.put(KEY_COMPRESSION_CONSUMER_REQUESTS, "" + compressionStatistics.getConsumerRequests());
+    map.put(KEY_COMPRESSION_CONSUMER_RESPONSES, "" + compressionStatistics.getConsumerResponses());
+    map.put(KEY_COMPRESSION_PRODUCER_RESPONSES, "" + compressionStatistics.getProducerResponses());
+    map.put(KEY_PRODUCER_RETRIES, "" + producerRetryPolicy);
+    if (producerAddressResolver.isEnabled()) {
+      map.put(KEY_PRODUCER_DNS, "" + producerAddressResolver);
+    }
+    if (!producerBulkheadProcessor.getBulkheads().isEmpty()) {
+      map.put(KEY_PRODUCER_BULKHEADS, getBulkheadInfo());
+    }
+    if (!producerLimitProcessor.getLimits().isEmpty()) {
+      map.put(KEY_PRODUCER_LIMITS, getProducerLimitInfo());
+    }
+    if (admissionController.isEnabled()) {
+      map.put(KEY_ADMISSION, "" + admissionController);
+    }
+    if (senderRateLimiter.isEnabled()) {
+      map.put(KEY_SENDER_RATE_LIMITS, getSenderRateLimitInfo());
+    }
+    if (fairQueueScheduler.isEnabled()) {
+      map.put(KEY_FAIR_QUEUE, "" + fairQueueScheduler);
+      map.put(KEY_FAIR_QUEUE_SENDERS, fairQueueScheduler.getSenders());
+    }
+    PriorityLanes priorityLanes = priorityLaneProcessor.getPriorityLanes();
+    if (priorityLanes != null) {
+      map.put(KEY_PRIORITY_LANES_SHARED, "" + priorityLanes);
+      map.put(KEY_PRIORITY_LANES, getPriorityLaneInfo(priorityLanes));
+    }
+    if (memoryBudget.isEnabled()) {
+      map.put(KEY_MEMORY_BUDGET, "" + memoryBudget);
+    }
+    if (largePayloadProcessor.isEnabled()) {
+      map.put(KEY_LARGE_PAYLOAD, "" + largePayloadProcessor);
+    }
+    if (expectContinueAuthorizer.isEnabled()) {
+      map.put(KEY_EXPECT_CONTINUE, "" + expectContinueAuthorizer);
+    }
+    if (headerCertificateCache.isEnabled()) {
+      map.put(KEY_HEADER_CERTIFICATE_CACHE, "" + headerCertificateCache);
+    }
     map.put(KEY_ENDPOINTS, getEndpointInfo());
     return map;
   }
 
+  private Map<String, String> getBulkheadInfo() {
+    Map<String, String> bulkheads = new LinkedHashMap<>();
+    for (Bulkhead bulkhead : producerBulkheadProcessor.getBulkheads()) {
+      bulkheads.put(bulkhead.getName(), bulkhead.toString());
+    }
+    return bulkheads;
+  }
+
+  private Map<String, String> getProducerLimitInfo() {
+    Map<String, String> limits = new LinkedHashMap<>();
+    producerLimitProcessor.getLimits().forEach((host, limit) -> limits.put(host, limit.toString()));
+    return limits;
+  }
+
+  private Map<String, String> getPriorityLaneInfo(PriorityLanes priorityLanes) {
+    Map<String, String> lanes = new LinkedHashMap<>();
+    for (Lane lane : priorityLanes.getLanes()) {
+      lanes.put(lane.getName(), priorityLanes.toString(lane));
+    }
+    return lanes;
+  }
+
+  private Map<String, String> getSenderRateLimitInfo() {
+    Map<String, String> throttled = new LinkedHashMap<>();
+    senderRateLimiter.getThrottled().forEach((senderId, count) -> throttled.put(senderId, "Throttled: " + count));
+    return throttled;
+  }
+
   private String getNonHeapMemory() {
     MemoryUsage nonHeapMemoryUsage = MemoryUtil.getNonHeapMemoryUsage();
 
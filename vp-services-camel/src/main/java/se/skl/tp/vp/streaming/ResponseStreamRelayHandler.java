@@ -0,0 +1,139 @@
+package se.skl.tp.vp.streaming;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyProducer;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Placed between the http codec and the aggregator in the producer pipeline. When the exchange has a
+ * StreamedResponse the producer's response is relayed to the consumer chunk by chunk, reading from
+ * the producer only while the consumer channel is writable. Camel then receives an empty response
+ * carrying the producer's status and headers, with Content-Length set to the relayed length.
+ */
+public class ResponseStreamRelayHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "stream-relay";
+
+  static final String TIMEOUT_HANDLER = "timeout";
+
+  private final NettyProducer producer;
+
+  private StreamedResponse streamedResponse;
+  private HttpResponse producerResponse;
+  private Exchange exchange;
+
+  public ResponseStreamRelayHandler(NettyProducer producer) {
+    this.producer = producer;
+  }
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpRequest) {
+      moveReadTimeoutBeforeRelay(ctx);
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+    if (msg instanceof HttpResponse && !(msg instanceof FullHttpResponse) && startStream(ctx, (HttpResponse) msg)) {
+      return;
+    }
+    if (msg instanceof HttpContent && streamedResponse != null) {
+      relay(ctx, (HttpContent) msg);
+      return;
+    }
+    super.channelRead(ctx, msg);
+  }
+
+  @Override
+  public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+    if (streamedResponse != null) {
+      streamedResponse.flush();
+    }
+    super.channelReadComplete(ctx);
+  }
+
+  @Override
+  public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+    reset();
+    super.channelInactive(ctx);
+  }
+
+  private boolean startStream(ChannelHandlerContext ctx, HttpResponse response) {
+    NettyCamelState state = producer.getCorrelationManager().getState(ctx, ctx.channel(), response);
+    Exchange stateExchange = state == null ? null : state.getExchange();
+    StreamedResponse streamed = stateExchange == null ? null
+        : stateExchange.getProperty(VPExchangeProperties.STREAMED_RESPONSE, StreamedResponse.class);
+    if (streamed == null || !streamed.accepts(response)) {
+      return false;
+    }
+
+    streamedResponse = streamed;
+    producerResponse = response;
+    exchange = stateExchange;
+    streamed.start(ctx.channel(), response);
+    return true;
+  }
+
+  private void relay(ChannelHandlerContext ctx, HttpContent content) {
+    streamedResponse.write(content);
+    if (!(content instanceof LastHttpContent)) {
+      return;
+    }
+
+    streamedResponse.complete();
+    long length = streamedResponse.getLength();
+    exchange.setProperty(VPExchangeProperties.STREAMED_RESPONSE_LENGTH, length);
+
+    FullHttpResponse completed = new DefaultFullHttpResponse(producerResponse.protocolVersion(),
+        producerResponse.status(), Unpooled.EMPTY_BUFFER);
+    completed.headers().set(producerResponse.headers());
+    HttpUtil.setTransferEncodingChunked(completed, false);
+    HttpUtil.setContentLength(completed, length);
+    reset();
+    ctx.fireChannelRead(completed);
+  }
+
+  private void reset() {
+    streamedResponse = null;
+    producerResponse = null;
+    exchange = null;
+  }
+
+  /**
+   * NettyProducer adds the per request read timeout just before Camel's handler, where it would
+   * see no reads while a response is relayed. It is recreated in front of the relay instead.
+   */
+  private static void moveReadTimeoutBeforeRelay(ChannelHandlerContext ctx) {
+    ChannelPipeline pipeline = ctx.pipeline();
+    ChannelHandler timeout = pipeline.get(TIMEOUT_HANDLER);
+    if (!(timeout instanceof IdleStateHandler)) {
+      return;
+    }
+    List<String> names = pipeline.names();
+    if (names.indexOf(TIMEOUT_HANDLER) > names.indexOf(ctx.name())) {
+      long timeoutMillis = ((IdleStateHandler) timeout).getReaderIdleTimeInMillis();
+      pipeline.remove(TIMEOUT_HANDLER);
+      pipeline.addBefore(ctx.name(), TIMEOUT_HANDLER, new ReadTimeoutHandler(timeoutMillis, TimeUnit.MILLISECONDS));
+    }
+  }
+}
@@ -0,0 +1,6 @@
+package se.skl.tp.vp.streaming;
+
+import org.apache.camel.Processor;
+
+public interface ResponseStreamingProcessor extends Processor {
+}
@@ -0,0 +1,77 @@
+package se.skl.tp.vp.streaming;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.function.Predicate;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyConstants;
+import org.apache.camel.component.netty.http.NettyHttpHeaderFilterStrategy;
+import org.apache.camel.component.netty.http.NettyHttpMessage;
+import org.apache.camel.spi.HeaderFilterStrategy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import se.skl.tp.vp.config.HttpHeaderFilterProperties;
+import se.skl.tp.vp.config.ResponseStreamingProperties;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+/**
+ * Decides, before the producer is called, whether the response may be streamed straight back to the
+ * consumer. Only exchanges without response transformation qualify, that is no charset conversion, and
+ * only for HTTP/1.1 consumers connected through a pipeline with the streaming guard.
+ */
+@Service
+public class ResponseStreamingProcessorImpl implements ResponseStreamingProcessor {
+
+  private final ResponseStreamingProperties streamingProperties;
+  private final HttpHeaderFilterProperties headerFilter;
+  private final HeaderFilterStrategy nettyHeaderFilterStrategy = new NettyHttpHeaderFilterStrategy();
+
+  @Autowired
+  public ResponseStreamingProcessorImpl(ResponseStreamingProperties streamingProperties,
+      HttpHeaderFilterProperties headerFilter) {
+    this.streamingProperties = streamingProperties;
+    this.headerFilter = headerFilter;
+  }
+
+  @Override
+  public void process(Exchange exchange) throws Exception {
+    exchange.removeProperty(VPExchangeProperties.STREAMED_RESPONSE);
+    if (!streamingProperties.isEnabled()) {
+      return;
+    }
+
+    String originalEncoding = exchange.getProperty(VPExchangeProperties.ORIGINAL_REQUEST_ENCODING, String.class);
+    if (originalEncoding != null && !originalEncoding.isEmpty()) {
+      return;
+    }
+
+    NettyHttpMessage in = exchange.getIn(NettyHttpMessage.class);
+    ChannelHandlerContext ctx = exchange.getIn()
+        .getHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, ChannelHandlerContext.class);
+    if (in == null || in.getHttpRequest() == null || ctx == null
+        || ctx.pipeline().get(StreamedResponseGuardHandler.NAME) == null) {
+      return;
+    }
+
+    HttpRequest request = in.getHttpRequest();
+    if (!HttpVersion.HTTP_1_1.equals(request.protocolVersion())) {
+      return;
+    }
+
+    exchange.setProperty(VPExchangeProperties.STREAMED_RESPONSE, new StreamedResponse(ctx.channel(),
+        HttpUtil.isKeepAlive(request),
+        exchange.getProperty(VPExchangeProperties.SKLTP_CORRELATION_ID, String.class),
+        streamingProperties.getThreshold(),
+        createHeaderFilter(exchange)));
+  }
+
+  private Predicate<String> createHeaderFilter(Exchange exchange) {
+    String toRemove = headerFilter.getResponseHeadersToRemove();
+    String toKeep = headerFilter.getResponseHeadersToKeep();
+    return name -> nettyHeaderFilterStrategy.applyFilterToCamelHeaders(name, null, exchange)
+        || (toRemove != null && !toRemove.isEmpty() && name.matches(toRemove)
+            && (toKeep == null || toKeep.isEmpty() || !name.matches(toKeep)));
+  }
+}
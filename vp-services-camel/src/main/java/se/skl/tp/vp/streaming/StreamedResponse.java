@@ -0,0 +1,166 @@
+package se.skl.tp.vp.streaming;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.Map;
+import java.util.function.Predicate;
+import se.skl.tp.vp.constants.HttpHeaders;
+
+/**
+ * State of one producer response relayed to the consumer while it is being received. Created per
+ * exchange by the ResponseStreamingProcessor, driven by the ResponseStreamRelayHandler on the producer
+ * channel and finished by the StreamedResponseGuardHandler on the consumer channel when Camel writes
+ * its own (empty) response for the exchange.
+ */
+public class StreamedResponse {
+
+  static final String RESPONSE_CONTENT_TYPE = "text/xml; charset=UTF-8";
+
+  private final Channel inboundChannel;
+  private final boolean keepAlive;
+  private final String correlationId;
+  private final long threshold;
+  private final Predicate<String> headerFilter;
+
+  private final ChannelFutureListener closeProducerOnInboundClose = future -> closeProducer();
+
+  private volatile Channel producerChannel;
+  private volatile ChannelHandlerContext guardContext;
+  private volatile ChannelFuture lastWrite;
+  private volatile boolean completed;
+  private long length;
+
+  public StreamedResponse(Channel inboundChannel, boolean keepAlive, String correlationId, long threshold,
+      Predicate<String> headerFilter) {
+    this.inboundChannel = inboundChannel;
+    this.keepAlive = keepAlive;
+    this.correlationId = correlationId;
+    this.threshold = threshold;
+    this.headerFilter = headerFilter;
+  }
+
+  /**
+   * Only successful responses that are large or of unknown length are streamed, anything else is
+   * left to the ordinary aggregation and error handling.
+   */
+  boolean accepts(HttpResponse producerResponse) {
+    if (!HttpResponseStatus.OK.equals(producerResponse.status()) || producerChannel != null) {
+      return false;
+    }
+    if (HttpUtil.isTransferEncodingChunked(producerResponse)) {
+      return true;
+    }
+    return HttpUtil.getContentLength(producerResponse, -1L) >= threshold;
+  }
+
+  void start(Channel producerChannel, HttpResponse producerResponse) {
+    this.producerChannel = producerChannel;
+    this.guardContext = inboundChannel.pipeline().context(StreamedResponseGuardHandler.NAME);
+    inboundChannel.attr(StreamedResponseGuardHandler.STREAMED_RESPONSE).set(this);
+    inboundChannel.closeFuture().addListener(closeProducerOnInboundClose);
+    write(createResponseHead(producerResponse));
+  }
+
+  HttpResponse createResponseHead(HttpResponse producerResponse) {
+    HttpResponse head = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK);
+    for (Map.Entry<String, String> header : producerResponse.headers()) {
+      if (!headerFilter.test(header.getKey())) {
+        head.headers().add(header.getKey(), header.getValue());
+      }
+    }
+
+    // The body is relayed as received so the producer's framing is kept
+    if (HttpUtil.isTransferEncodingChunked(producerResponse)) {
+      HttpUtil.setTransferEncodingChunked(head, true);
+    } else {
+      HttpUtil.setContentLength(head, HttpUtil.getContentLength(producerResponse));
+    }
+    head.headers().set(HttpHeaderNames.CONTENT_TYPE, RESPONSE_CONTENT_TYPE);
+    if (correlationId != null) {
+      head.headers().set(HttpHeaders.X_SKLTP_CORRELATION_ID, correlationId);
+    }
+    if (!keepAlive) {
+      head.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+    }
+    return head;
+  }
+
+  void write(HttpObject msg) {
+    if (msg instanceof HttpContent) {
+      length += ((HttpContent) msg).content().readableBytes();
+    }
+    // Written from the guard's context so the guard itself does not see the relayed messages
+    lastWrite = guardContext.write(msg);
+    if (!inboundChannel.isWritable()) {
+      producerChannel.config().setAutoRead(false);
+      if (inboundChannel.isWritable()) {
+        resume();
+      }
+    }
+  }
+
+  void flush() {
+    guardContext.flush();
+  }
+
+  void complete() {
+    flush();
+    completed = true;
+    inboundChannel.closeFuture().removeListener(closeProducerOnInboundClose);
+    resume();
+  }
+
+  void resume() {
+    Channel channel = producerChannel;
+    if (channel != null) {
+      channel.config().setAutoRead(true);
+    }
+  }
+
+  /**
+   * Called in place of writing Camel's response for the exchange. The promise follows the last relayed
+   * write, so Camel's keep-alive handling runs when the streamed response really is written. A stream
+   * that never completed can not be followed by another response and the consumer connection is closed.
+   */
+  void finish(ChannelHandlerContext ctx, ChannelPromise promise) {
+    if (completed) {
+      lastWrite.addListener(future -> {
+        if (future.isSuccess()) {
+          promise.trySuccess();
+        } else {
+          promise.tryFailure(future.cause());
+        }
+      });
+    } else {
+      closeProducer();
+      ctx.close().addListener(future -> promise.trySuccess());
+    }
+  }
+
+  private void closeProducer() {
+    Channel channel = producerChannel;
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+  public long getLength() {
+    return length;
+  }
+
+  public boolean isCompleted() {
+    return completed;
+  }
+}
@@ -0,0 +1,45 @@
+package se.skl.tp.vp.streaming;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpObject;
+import io.netty.util.AttributeKey;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Placed in the consumer pipeline when response streaming is enabled. Relayed messages are written
+ * from this handler's context and pass untouched, while the response Camel writes for an exchange
+ * that has already been streamed is dropped. Also resumes reading from the producer when the
+ * consumer channel becomes writable again.
+ */
+@Sharable
+public class StreamedResponseGuardHandler extends ChannelDuplexHandler {
+
+  public static final String NAME = "stream-guard";
+
+  static final AttributeKey<StreamedResponse> STREAMED_RESPONSE = AttributeKey.valueOf("vpStreamedResponse");
+
+  @Override
+  public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+    if (msg instanceof HttpObject) {
+      StreamedResponse streamedResponse = ctx.channel().attr(STREAMED_RESPONSE).getAndSet(null);
+      if (streamedResponse != null) {
+        ReferenceCountUtil.release(msg);
+        streamedResponse.finish(ctx, promise);
+        return;
+      }
+    }
+    super.write(ctx, msg, promise);
+  }
+
+  @Override
+  public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+    StreamedResponse streamedResponse = ctx.channel().attr(STREAMED_RESPONSE).get();
+    if (streamedResponse != null && ctx.channel().isWritable()) {
+      streamedResponse.resume();
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+}
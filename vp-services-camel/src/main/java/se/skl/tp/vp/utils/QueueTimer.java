@@ -0,0 +1,35 @@
+package se.skl.tp.vp.utils;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times out calls waiting in a queue for a slot, whether or not the exchange came in on a netty
+ * channel. The timeouts run on a thread of their own, so a task should only give up the queued call
+ * and hand the rest of the work to the exchange's executor.
+ */
+@Component
+public class QueueTimer implements DisposableBean {
+
+  // Queue timeouts are configured in ms, a coarser tick would make short ones fire late
+  private static final long TICK_MILLIS = 10;
+
+  private final HashedWheelTimer timer =
+      new HashedWheelTimer(new DefaultThreadFactory("VPQueueTimer", true), TICK_MILLIS, TimeUnit.MILLISECONDS);
+
+  /**
+   * Runs the task after the delay, unless the returned timeout is cancelled first.
+   */
+  public Timeout schedule(Runnable task, long delayMillis) {
+    return timer.newTimeout(timeout -> task.run(), delayMillis, TimeUnit.MILLISECONDS);
+  }
+
+  @Override
+  public void destroy() {
+    timer.stop();
+  }
+}
@@ -0,0 +1,79 @@
+package se.skl.tp.vp.utils;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.Timeout;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyConstants;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Takes a slot of a SlotLimiter for an exchange in an asynchronous processor, without blocking while
+ * the call is queued. A queued exchange is continued on the event loop of its consumer channel when it
+ * gets a slot, or on the QueueTimer thread if it came in without one.
+ */
+@Component
+public class SlotAcquirer {
+
+  private final QueueTimer queueTimer;
+
+  @Autowired
+  public SlotAcquirer(QueueTimer queueTimer) {
+    this.queueTimer = queueTimer;
+  }
+
+  /**
+   * Takes a slot for the exchange and runs acquired with it, then continues the exchange. If the
+   * limiter queues the call this is done when it gets a slot, and if it waits longer than the queue
+   * timeout (ms, 0 if it is not limited) it is given up and continued after rejected. A call that does
+   * not fit in the queue is continued after rejected at once. rejected is told whether the call timed
+   * out and is expected to set the exception of the exchange.
+   *
+   * @return whether the exchange was continued synchronously, as AsyncProcessor.process
+   */
+  public boolean acquire(Exchange exchange, AsyncCallback callback, SlotLimiter limiter, long queueTimeout,
+      Runnable acquired, Consumer<Boolean> rejected) {
+    ChannelHandlerContext ctx = exchange.getIn()
+        .getHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, ChannelHandlerContext.class);
+    AtomicReference<Timeout> timeout = new AtomicReference<>();
+    Runnable whenAcquired = () -> {
+      Timeout scheduled = timeout.getAndSet(null);
+      if (scheduled != null) {
+        scheduled.cancel();
+      }
+      acquired.run();
+      done(ctx, callback);
+    };
+
+    switch (limiter.acquire(whenAcquired)) {
+      case ACQUIRED:
+        acquired.run();
+        break;
+      case QUEUED:
+        if (queueTimeout > 0) {
+          timeout.set(queueTimer.schedule(() -> {
+            if (limiter.remove(whenAcquired)) {
+              rejected.accept(true);
+              done(ctx, callback);
+            }
+          }, queueTimeout));
+        }
+        return false;
+      default:
+        rejected.accept(false);
+    }
+    callback.done(true);
+    return true;
+  }
+
+  private static void done(ChannelHandlerContext ctx, AsyncCallback callback) {
+    if (ctx == null) {
+      callback.done(false);
+    } else {
+      ctx.executor().execute(() -> callback.done(false));
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package se.skl.tp.vp.utils;
+
+/**
+ * Hands out slots for calls and queues the calls that find none free, such as a bulkhead or a
+ * priority lane. Used through the SlotAcquirer.
+ */
+public interface SlotLimiter {
+
+  enum Admission {
+    ACQUIRED, QUEUED, REJECTED
+  }
+
+  /**
+   * Takes a slot for a call. If there is none the call is queued, and whenAcquired is run with the
+   * slot when one is freed for it.
+   */
+  Admission acquire(Runnable whenAcquired);
+
+  /**
+   * Removes a queued call that gave up waiting, returns false if it has already got a slot.
+   */
+  boolean remove(Runnable whenAcquired);
+}
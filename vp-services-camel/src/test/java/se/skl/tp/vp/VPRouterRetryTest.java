@@ -0,0 +1,73 @@
+package se.skl.tp.vp;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.SocketException;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.camel.AsyncProcessor;
+import org.apache.camel.Exchange;
+import org.apache.camel.RoutesBuilder;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.model.RouteDefinition;
+import org.apache.camel.support.AsyncProcessorConverterHelper;
+import org.apache.camel.support.DefaultExchange;
+import org.apache.camel.test.junit5.CamelTestSupport;
+import org.junit.jupiter.api.Test;
+
+public class VPRouterRetryTest extends CamelTestSupport {
+
+  private static final long RETRY_DELAY = 500;
+
+  private final AtomicInteger attempts = new AtomicInteger();
+
+  @Override
+  protected Properties useOverridePropertiesWithPropertiesComponent() {
+    Properties properties = new Properties();
+    properties.put("vp.producer.retry.delay", String.valueOf(RETRY_DELAY));
+    properties.put("vp.producer.retry.jitter", "0");
+    return properties;
+  }
+
+  @Override
+  protected RoutesBuilder createRouteBuilder() {
+    return new RouteBuilder() {
+      @Override
+      public void configure() {
+        RouteDefinition route = from("direct:producer").routeId("producer");
+        VPRouter.retryOnSocketError(route.onException(SocketException.class), exchange -> true)
+            .handled(true);
+        route.process(exchange -> {
+          if (attempts.incrementAndGet() == 1) {
+            throw new SocketException("Connection reset");
+          }
+        });
+      }
+    };
+  }
+
+  @Test
+  public void threadIsReleasedDuringRetryDelay() throws Exception {
+    AsyncProcessor producerRoute =
+        AsyncProcessorConverterHelper.convert(context.getRoute("producer").getConsumer().getProcessor());
+    Exchange exchange = new DefaultExchange(context);
+    CountDownLatch done = new CountDownLatch(1);
+
+    long start = System.nanoTime();
+    boolean doneSync = producerRoute.process(exchange, sync -> done.countDown());
+    long returnedAfter = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+    assertFalse(doneSync);
+    assertTrue(returnedAfter < RETRY_DELAY, "Returned after " + returnedAfter + " ms");
+    assertEquals(1, attempts.get());
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals(2, attempts.get());
+    assertNull(exchange.getException());
+  }
+}
@@ -0,0 +1,174 @@
+package se.skl.tp.vp.admission;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpExpectationFailedEvent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.config.AdmissionProperties;
+
+public class AdmissionControlHandlerTest {
+
+  private AdmissionController admissionController;
+
+  @BeforeEach
+  public void setUp() {
+    AdmissionProperties properties = new AdmissionProperties();
+    properties.setEnabled(true);
+    properties.setInitialLimit(1);
+    properties.setMinLimit(1);
+    properties.setMaxLimit(1);
+    admissionController = new AdmissionController(properties, "VP012 [VP] Resurser saknas");
+  }
+
+  @Test
+  public void requestOverLimitIsShed() {
+    EmbeddedChannel first = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    EmbeddedChannel second = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+
+    first.writeInbound(request());
+    ReferenceCountUtil.release(first.readInbound());
+    second.writeInbound(request());
+
+    assertNull(second.readInbound());
+    FullHttpResponse shed = second.readOutbound();
+    assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, shed.status());
+    assertTrue(shed.content().toString(StandardCharsets.UTF_8).contains("VP012"));
+    assertEquals(1, admissionController.getAdmitted());
+    assertEquals(1, admissionController.getShed());
+    shed.release();
+  }
+
+  @Test
+  public void slotIsReleasedWhenResponseIsWritten() {
+    EmbeddedChannel channel = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    channel.writeInbound(request());
+    ReferenceCountUtil.release(channel.readInbound());
+    assertEquals(1, admissionController.getInFlight());
+
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    ReferenceCountUtil.release(channel.readOutbound());
+
+    assertEquals(0, admissionController.getInFlight());
+    channel.writeInbound(request());
+    assertNotNull(channel.readInbound());
+  }
+
+  @Test
+  public void slotIsReleasedWhenConnectionCloses() {
+    EmbeddedChannel channel = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    channel.writeInbound(request());
+    ReferenceCountUtil.release(channel.readInbound());
+
+    channel.close();
+
+    assertFalse(channel.isOpen());
+    assertEquals(0, admissionController.getInFlight());
+  }
+
+  @Test
+  public void pipelinedRequestDoesNotReleaseASlot() {
+    EmbeddedChannel channel = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    channel.writeInbound(request());
+    channel.writeInbound(request());
+    ReferenceCountUtil.release(channel.readInbound());
+    ReferenceCountUtil.release(channel.readInbound());
+    assertEquals(1, admissionController.getInFlight());
+
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    ReferenceCountUtil.release(channel.readOutbound());
+    ReferenceCountUtil.release(channel.readOutbound());
+
+    assertEquals(0, admissionController.getInFlight());
+  }
+
+  @Test
+  public void pipelinedRequestDoesNotReleaseASlotWhenConnectionCloses() {
+    EmbeddedChannel channel = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    channel.writeInbound(request());
+    channel.writeInbound(request());
+    ReferenceCountUtil.release(channel.readInbound());
+    ReferenceCountUtil.release(channel.readInbound());
+
+    channel.close();
+
+    assertEquals(0, admissionController.getInFlight());
+  }
+
+  @Test
+  public void bodyOfShedRequestIsDiscardedAsItArrives() {
+    EmbeddedChannel first = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    EmbeddedChannel second = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    first.writeInbound(request());
+    ReferenceCountUtil.release(first.readInbound());
+
+    ByteBuf body = Unpooled.copiedBuffer("<soap/>", StandardCharsets.UTF_8);
+    second.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/vp"));
+    second.writeInbound(new DefaultHttpContent(body));
+    second.writeInbound(LastHttpContent.EMPTY_LAST_CONTENT);
+
+    assertNull(second.readInbound());
+    assertEquals(0, body.refCnt());
+    FullHttpResponse shed = second.readOutbound();
+    assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, shed.status());
+    shed.release();
+    assertTrue(second.isOpen());
+
+    first.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    ReferenceCountUtil.release(first.readOutbound());
+    second.writeInbound(request());
+    assertNotNull(second.readInbound());
+  }
+
+  @Test
+  public void shedRequestExpectingContinueStopsTheDecoderWaitingForBody() {
+    EmbeddedChannel first = new EmbeddedChannel(new AdmissionControlHandler(admissionController));
+    first.writeInbound(request());
+    ReferenceCountUtil.release(first.readInbound());
+
+    List<Object> events = new ArrayList<>();
+    EmbeddedChannel second = new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+      @Override
+      public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+        events.add(evt);
+      }
+    }, new AdmissionControlHandler(admissionController));
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/vp");
+    HttpUtil.set100ContinueExpected(request, true);
+    second.writeInbound(request);
+
+    assertNull(second.readInbound());
+    assertEquals(Collections.singletonList(HttpExpectationFailedEvent.INSTANCE), events);
+    ReferenceCountUtil.release(second.readOutbound());
+  }
+
+  private static DefaultFullHttpRequest request() {
+    return new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/vp");
+  }
+}
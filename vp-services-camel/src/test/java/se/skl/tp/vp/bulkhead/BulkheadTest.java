@@ -0,0 +1,138 @@
+package se.skl.tp.vp.bulkhead;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.utils.QueueTimer;
+import se.skl.tp.vp.utils.SlotLimiter.Admission;
+
+public class BulkheadTest {
+
+  @Test
+  public void matchesHostOrContract() {
+    Bulkhead bulkhead = new Bulkhead("large", "worker", "large\\.producer\\.se(:\\d+)?",
+        "urn:riv:large:.*", 1, 1);
+
+    assertTrue(bulkhead.matches("large.producer.se:443", "urn:riv:other:GetData"));
+    assertTrue(bulkhead.matches("other.producer.se", "urn:riv:large:GetData:1:rivtabp21"));
+    assertFalse(bulkhead.matches("other.producer.se", "urn:riv:other:GetData"));
+  }
+
+  @Test
+  public void emptyPatternsMatchNothing() {
+    Bulkhead bulkhead = new Bulkhead("none", "worker", "", "", 1, 1);
+
+    assertFalse(bulkhead.matches("producer.se", "urn:riv:GetData"));
+  }
+
+  @Test
+  public void callsOverCapAreQueuedThenRejected() {
+    Bulkhead bulkhead = new Bulkhead("large", "worker", "", "", 2, 1);
+
+    assertEquals(Admission.ACQUIRED, bulkhead.acquire(() -> { }));
+    assertEquals(Admission.ACQUIRED, bulkhead.acquire(() -> { }));
+    assertEquals(Admission.QUEUED, bulkhead.acquire(() -> { }));
+    assertEquals(Admission.REJECTED, bulkhead.acquire(() -> { }));
+
+    assertEquals(2, bulkhead.getActive());
+    assertEquals(1, bulkhead.getQueued());
+    assertEquals(1, bulkhead.getRejected());
+  }
+
+  @Test
+  public void releaseHandsSlotToQueuedCallInOrder() {
+    Bulkhead bulkhead = new Bulkhead("large", "worker", "", "", 1, 2);
+    List<String> started = new ArrayList<>();
+    bulkhead.acquire(() -> started.add("first"));
+    bulkhead.acquire(() -> started.add("second"));
+    bulkhead.acquire(() -> started.add("third"));
+
+    bulkhead.release();
+    assertEquals(1, bulkhead.getActive());
+    assertEquals(1, bulkhead.getQueued());
+
+    bulkhead.release();
+    bulkhead.release();
+    assertEquals(0, bulkhead.getActive());
+    assertEquals(0, bulkhead.getQueued());
+    assertEquals(2, started.size());
+    assertEquals("second", started.get(0));
+    assertEquals("third", started.get(1));
+  }
+
+  @Test
+  public void raisedCapStartsQueuedCalls() {
+    Bulkhead bulkhead = new Bulkhead("limit", null, null, null, 1, 2);
+    List<String> started = new ArrayList<>();
+    bulkhead.acquire(() -> started.add("first"));
+    bulkhead.acquire(() -> started.add("second"));
+    bulkhead.acquire(() -> started.add("third"));
+
+    bulkhead.setMaxConcurrent(2);
+
+    assertEquals(2, bulkhead.getActive());
+    assertEquals(1, bulkhead.getQueued());
+    assertEquals(1, started.size());
+  }
+
+  @Test
+  public void loweredCapTakesEffectOnRelease() {
+    Bulkhead bulkhead = new Bulkhead("limit", null, null, null, 2, 1);
+    List<String> started = new ArrayList<>();
+    bulkhead.acquire(() -> { });
+    bulkhead.acquire(() -> { });
+    bulkhead.acquire(() -> started.add("queued"));
+
+    bulkhead.setMaxConcurrent(1);
+    bulkhead.release();
+    assertEquals(1, bulkhead.getActive());
+    assertEquals(0, started.size());
+
+    bulkhead.release();
+    assertEquals(1, bulkhead.getActive());
+    assertEquals(1, started.size());
+  }
+
+  @Test
+  public void removedCallIsRejected() {
+    Bulkhead bulkhead = new Bulkhead("limit", null, null, null, 1, 1);
+    Runnable queued = () -> { };
+    bulkhead.acquire(() -> { });
+    bulkhead.acquire(queued);
+
+    assertTrue(bulkhead.remove(queued));
+    assertFalse(bulkhead.remove(queued));
+    assertEquals(0, bulkhead.getQueued());
+    assertEquals(1, bulkhead.getRejected());
+  }
+
+  @Test
+  public void queuedCallIsGivenUpAfterQueueTimeout() throws Exception {
+    Bulkhead bulkhead = new Bulkhead("large", "worker", "", "", 1, 1, 50);
+    QueueTimer queueTimer = new QueueTimer();
+    CountDownLatch timedOut = new CountDownLatch(1);
+    Runnable queued = () -> { };
+    bulkhead.acquire(() -> { });
+    bulkhead.acquire(queued);
+
+    try {
+      queueTimer.schedule(() -> {
+        if (bulkhead.remove(queued)) {
+          timedOut.countDown();
+        }
+      }, bulkhead.getQueueTimeout());
+
+      assertTrue(timedOut.await(5, TimeUnit.SECONDS));
+      assertEquals(0, bulkhead.getQueued());
+      assertEquals(1, bulkhead.getRejected());
+    } finally {
+      queueTimer.destroy();
+    }
+  }
+}
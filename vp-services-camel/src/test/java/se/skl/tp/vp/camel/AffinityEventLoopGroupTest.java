@@ -0,0 +1,64 @@
+package se.skl.tp.vp.camel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class AffinityEventLoopGroupTest {
+
+  private AffinityEventLoopGroup group;
+
+  @BeforeEach
+  public void setUp() {
+    group = new AffinityEventLoopGroup(4, new DefaultThreadFactory("AffinityTest"));
+  }
+
+  @AfterEach
+  public void tearDown() throws Exception {
+    group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+  }
+
+  @Test
+  public void nextFromOwnEventLoopReturnsSameLoop() throws Exception {
+    for (int i = 0; i < 4; i++) {
+      EventLoop loop = group.next();
+      EventLoop selected = loop.submit(() -> group.next()).get();
+      assertSame(loop, selected);
+    }
+  }
+
+  @Test
+  public void nextFromOtherThreadIsBalanced() {
+    Set<EventLoop> loops = new HashSet<>();
+    for (int i = 0; i < 4; i++) {
+      EventLoop loop = group.next();
+      assertNotNull(loop);
+      loops.add(loop);
+    }
+    assertEquals(4, loops.size());
+  }
+
+  @Test
+  public void nextWhileRunPreferringReturnsPreferredLoop() throws Exception {
+    EventLoop loop = group.next();
+    AtomicReference<EventLoop> selected = new AtomicReference<>();
+    group.runPreferring(loop, () -> selected.set(group.next()));
+    assertSame(loop, selected.get());
+
+    Set<EventLoop> loops = new HashSet<>();
+    for (int i = 0; i < 4; i++) {
+      loops.add(group.next());
+    }
+    assertEquals(4, loops.size());
+  }
+}
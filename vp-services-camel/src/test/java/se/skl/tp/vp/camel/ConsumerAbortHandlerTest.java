@@ -0,0 +1,93 @@
+package se.skl.tp.vp.camel;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyCamelStateCorrelationManager;
+import org.apache.camel.component.netty.NettyConstants;
+import org.apache.camel.component.netty.NettyProducer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+public class ConsumerAbortHandlerTest {
+
+  private NettyProducer producer;
+  private Exchange exchange;
+  private EmbeddedChannel consumer;
+
+  @BeforeEach
+  public void setUp() {
+    consumer = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    exchange = new DefaultExchange(new DefaultCamelContext());
+    exchange.getIn().setHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, consumer.pipeline().firstContext());
+    NettyCamelStateCorrelationManager correlationManager = mock(NettyCamelStateCorrelationManager.class);
+    when(correlationManager.getState(any(ChannelHandlerContext.class), any(Channel.class), any(Object.class)))
+        .thenReturn(new NettyCamelState(null, exchange));
+    producer = mock(NettyProducer.class);
+    when(producer.getCorrelationManager()).thenReturn(correlationManager);
+  }
+
+  @Test
+  public void producerConnectionIsClosedWhenConsumerCloses() {
+    EmbeddedChannel channel = new EmbeddedChannel(new ConsumerAbortHandler(producer));
+    writeRequest(channel);
+
+    consumer.close();
+    channel.runPendingTasks();
+
+    assertFalse(channel.isOpen());
+    assertTrue(exchange.getProperty(VPExchangeProperties.CONSUMER_ABORTED, Boolean.class));
+  }
+
+  @Test
+  public void producerConnectionIsKeptWhenConsumerClosesAfterResponse() {
+    EmbeddedChannel channel = new EmbeddedChannel(new ConsumerAbortHandler(producer));
+    writeRequest(channel);
+    channel.writeInbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    channel.writeInbound(LastHttpContent.EMPTY_LAST_CONTENT);
+    channel.inboundMessages().clear();
+
+    consumer.close();
+    channel.runPendingTasks();
+
+    assertTrue(channel.isOpen());
+    assertNull(exchange.getProperty(VPExchangeProperties.CONSUMER_ABORTED));
+    channel.close();
+  }
+
+  @Test
+  public void requestForClosedConsumerIsAborted() {
+    consumer.close();
+    EmbeddedChannel channel = new EmbeddedChannel(new ConsumerAbortHandler(producer));
+    writeRequest(channel);
+    channel.runPendingTasks();
+
+    assertFalse(channel.isOpen());
+    assertTrue(exchange.getProperty(VPExchangeProperties.CONSUMER_ABORTED, Boolean.class));
+  }
+
+  private static void writeRequest(EmbeddedChannel channel) {
+    channel.writeOutbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/producer"));
+    ReferenceCountUtil.release(channel.readOutbound());
+  }
+}
@@ -0,0 +1,111 @@
+package se.skl.tp.vp.camel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.errorhandling.NettyFaultResponse;
+import se.skl.tp.vp.exceptions.VPFaultCodeEnum;
+
+public class RequestGuardHandlerTest {
+
+  private EmbeddedChannel channel;
+
+  @BeforeEach
+  public void setUp() {
+    // In the order of the consumer pipeline, so the fault responses are written through the encoder
+    channel = new EmbeddedChannel(new HttpRequestDecoder(4096, 1024, 8192), new HttpResponseEncoder(),
+        new RequestGuardHandler(10, NettyFaultResponse.render("VP016 [VP] Felaktigt anrop", VPFaultCodeEnum.Client)));
+  }
+
+  @Test
+  public void oversizedRequestIsRejectedAndBodyDiscarded() {
+    write("POST /vp HTTP/1.1\r\nHost: vp\r\nContent-Length: 20\r\n\r\n01234567890123456789");
+
+    assertNull(channel.readInbound());
+    assertResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+    assertTrue(channel.isOpen());
+
+    write("POST /vp HTTP/1.1\r\nHost: vp\r\nContent-Length: 5\r\n\r\n01234");
+    assertAccepted();
+  }
+
+  @Test
+  public void oversizedRequestExpectingContinueIsRejectedBeforeBody() {
+    write("POST /vp HTTP/1.1\r\nHost: vp\r\nExpect: 100-continue\r\nContent-Length: 20\r\n\r\n");
+
+    assertNull(channel.readInbound());
+    assertResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+
+    write("POST /vp HTTP/1.1\r\nHost: vp\r\nContent-Length: 5\r\n\r\n01234");
+    assertAccepted();
+  }
+
+  @Test
+  public void oversizedRequestWithoutKeepAliveIsClosed() {
+    write("POST /vp HTTP/1.1\r\nHost: vp\r\nConnection: close\r\nContent-Length: 20\r\n\r\n0123");
+
+    assertResponse(HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE);
+    assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void malformedRequestIsRejectedAndClosed() {
+    write("POST /vp HTTP/1.1\r\nHost: vp\r\nContent-Length: x\r\n\r\n01234");
+
+    assertNull(channel.readInbound());
+    assertResponse(HttpResponseStatus.BAD_REQUEST);
+    assertFalse(channel.isOpen());
+  }
+
+  @Test
+  public void tooLongHeaderIsRejectedAndClosed() {
+    StringBuilder header = new StringBuilder();
+    for (int i = 0; i < 1000; i++) {
+      header.append("0123456789");
+    }
+    write("POST /vp HTTP/1.1\r\nHost: vp\r\nX-Large: " + header + "\r\n\r\n");
+
+    assertNull(channel.readInbound());
+    assertResponse(HttpResponseStatus.BAD_REQUEST);
+    assertFalse(channel.isOpen());
+  }
+
+  private void write(String data) {
+    channel.writeInbound(Unpooled.copiedBuffer(data, StandardCharsets.US_ASCII));
+  }
+
+  private void assertResponse(HttpResponseStatus status) {
+    StringBuilder response = new StringBuilder();
+    ByteBuf encoded;
+    while ((encoded = channel.readOutbound()) != null) {
+      response.append(encoded.toString(StandardCharsets.UTF_8));
+      encoded.release();
+    }
+    assertTrue(response.toString().startsWith("HTTP/1.1 " + status + "\r\n"), response.toString());
+    assertTrue(response.toString().contains("VP016"));
+  }
+
+  private void assertAccepted() {
+    assertTrue(channel.readInbound() instanceof HttpRequest);
+    HttpContent content = channel.readInbound();
+    assertTrue(content instanceof LastHttpContent);
+    assertEquals("01234", content.content().toString(StandardCharsets.US_ASCII));
+    ReferenceCountUtil.release(content);
+    assertNull(channel.readOutbound());
+  }
+}
@@ -0,0 +1,57 @@
+package se.skl.tp.vp.camel;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+import static org.mockito.Mockito.mock;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.epoll.Epoll;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import org.apache.camel.component.netty.NettyServerBootstrapConfiguration;
+import org.apache.camel.component.netty.http.HttpServerConsumerChannelFactory;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.junit.jupiter.api.Test;
+
+public class ReusePortServerBootstrapFactoryTest {
+
+  @Test
+  public void serverChannelsShareThePort() throws Exception {
+    assumeTrue(Epoll.isAvailable(), "epoll transport not available");
+
+    NettyServerBootstrapConfiguration configuration = new NettyServerBootstrapConfiguration();
+    configuration.setHost("127.0.0.1");
+    configuration.setPort(freePort());
+    ReusePortServerBootstrapFactory factory = new ReusePortServerBootstrapFactory(
+        mock(HttpServerConsumerChannelFactory.class), 3, 1);
+    factory.init(new DefaultCamelContext(), configuration, new ChannelInitializer<Channel>() {
+      @Override
+      protected void initChannel(Channel ch) {
+      }
+    });
+
+    factory.startServerBootstrap();
+    try {
+      assertEquals(3, factory.getServerChannels().size());
+      for (Channel channel : factory.getServerChannels()) {
+        assertTrue(channel.isActive());
+        assertEquals(configuration.getPort(), ((InetSocketAddress) channel.localAddress()).getPort());
+      }
+      try (Socket socket = new Socket("127.0.0.1", configuration.getPort())) {
+        assertTrue(socket.isConnected());
+      }
+    } finally {
+      factory.stopServerBootstrap();
+    }
+    assertTrue(factory.getServerChannels().isEmpty());
+  }
+
+  private static int freePort() throws Exception {
+    try (ServerSocket socket = new ServerSocket(0)) {
+      return socket.getLocalPort();
+    }
+  }
+}
@@ -0,0 +1,268 @@
+package se.skl.tp.vp.camel;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultChannelId;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyCamelStateCorrelationManager;
+import org.apache.camel.component.netty.NettyProducer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+public class StaleConnectionHandlerTest {
+
+  private NettyProducer producer;
+  private ChannelGroup allChannels;
+  private Exchange exchange;
+
+  @BeforeEach
+  public void setUp() {
+    exchange = new DefaultExchange(new DefaultCamelContext());
+    NettyCamelStateCorrelationManager correlationManager = mock(NettyCamelStateCorrelationManager.class);
+    when(correlationManager.getState(any(ChannelHandlerContext.class), any(Channel.class), any(Object.class)))
+        .thenReturn(new NettyCamelState(null, exchange));
+    allChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+    producer = mock(NettyProducer.class);
+    when(producer.getCorrelationManager()).thenReturn(correlationManager);
+    when(producer.getAllChannels()).thenReturn(allChannels);
+  }
+
+  @Test
+  public void writeFailureOnNewConnectionIsNotStale() {
+    FailingWrites failingWrites = new FailingWrites();
+    EmbeddedChannel channel = new EmbeddedChannel(failingWrites, new StaleConnectionHandler(producer, 0));
+    failingWrites.failing = true;
+
+    writeRequest(channel);
+
+    assertNull(exchange.getProperty(VPExchangeProperties.STALE_CONNECTION));
+  }
+
+  @Test
+  public void writeFailureOnReusedConnectionIsStale() {
+    FailingWrites failingWrites = new FailingWrites();
+    EmbeddedChannel channel = new EmbeddedChannel(failingWrites, new StaleConnectionHandler(producer, 0));
+    writeRequest(channel);
+    readResponse(channel);
+    failingWrites.failing = true;
+
+    writeRequest(channel);
+
+    assertTrue(exchange.getProperty(VPExchangeProperties.STALE_CONNECTION, Boolean.class));
+  }
+
+  @Test
+  public void failureOnReusedConnectionAfterWriteIsNotStale() {
+    EmbeddedChannel channel = new EmbeddedChannel(new StaleConnectionHandler(producer, 0));
+    writeRequest(channel);
+    readResponse(channel);
+    writeRequest(channel);
+
+    channel.close();
+
+    assertNull(exchange.getProperty(VPExchangeProperties.STALE_CONNECTION));
+  }
+
+  @Test
+  public void writeFailureAfterConsumerAbortIsNotStale() {
+    FailingWrites failingWrites = new FailingWrites();
+    EmbeddedChannel channel = new EmbeddedChannel(failingWrites, new StaleConnectionHandler(producer, 0));
+    writeRequest(channel);
+    readResponse(channel);
+    failingWrites.failing = true;
+    exchange.setProperty(VPExchangeProperties.CONSUMER_ABORTED, true);
+
+    writeRequest(channel);
+
+    assertNull(exchange.getProperty(VPExchangeProperties.STALE_CONNECTION));
+  }
+
+  @Test
+  public void staleConnectionClosesOtherIdleConnections() {
+    FailingWrites failingWrites = new FailingWrites();
+    EmbeddedChannel stale = new EmbeddedChannel(DefaultChannelId.newInstance(), failingWrites, new StaleConnectionHandler(producer, 0));
+    EmbeddedChannel idle = new EmbeddedChannel(DefaultChannelId.newInstance(), new StaleConnectionHandler(producer, 0));
+    EmbeddedChannel busy = new EmbeddedChannel(DefaultChannelId.newInstance(), new StaleConnectionHandler(producer, 0));
+    EmbeddedChannel unused = new EmbeddedChannel(DefaultChannelId.newInstance(), new StaleConnectionHandler(producer, 0));
+    allChannels.add(stale);
+    allChannels.add(idle);
+    allChannels.add(busy);
+    allChannels.add(unused);
+    writeRequest(stale);
+    readResponse(stale);
+    writeRequest(idle);
+    readResponse(idle);
+    writeRequest(busy);
+    failingWrites.failing = true;
+
+    writeRequest(stale);
+    idle.runPendingTasks();
+    busy.runPendingTasks();
+    unused.runPendingTasks();
+
+    assertFalse(idle.isOpen());
+    assertTrue(busy.isOpen());
+    assertTrue(unused.isOpen());
+  }
+
+  @Test
+  public void retryIsRefusedOnReusedConnection() {
+    EmbeddedChannel channel = new EmbeddedChannel(new StaleConnectionHandler(producer, 0));
+    writeRequest(channel);
+    readResponse(channel);
+    exchange.setProperty(VPExchangeProperties.STALE_CONNECTION, true);
+
+    ChannelPromise promise = channel.newPromise();
+    channel.writeAndFlush(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/producer"), promise);
+
+    assertTrue(promise.cause() instanceof ClosedChannelException);
+    assertNull(channel.readOutbound());
+    assertFalse(channel.isOpen());
+    assertTrue(exchange.getProperty(VPExchangeProperties.STALE_CONNECTION, Boolean.class));
+  }
+
+  @Test
+  public void retryIsWrittenOnNewConnection() {
+    exchange.setProperty(VPExchangeProperties.STALE_CONNECTION, true);
+    EmbeddedChannel channel = new EmbeddedChannel(new StaleConnectionHandler(producer, 0));
+
+    writeRequest(channel);
+
+    assertTrue(channel.isOpen());
+    assertNull(exchange.getProperty(VPExchangeProperties.STALE_CONNECTION));
+  }
+
+  @Test
+  public void idleConnectionIsClosed() throws Exception {
+    EventLoopGroup group = new DefaultEventLoopGroup(1);
+    try {
+      Channel channel = connect(group, new StaleConnectionHandler(producer, 50), new ChannelInboundHandlerAdapter());
+      channel.writeAndFlush(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/producer")).sync();
+
+      assertTrue(channel.closeFuture().await(5, TimeUnit.SECONDS));
+    } finally {
+      group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+  }
+
+  @Test
+  public void connectionWithRequestInFlightIsNotClosed() throws Exception {
+    EventLoopGroup group = new DefaultEventLoopGroup(1);
+    try {
+      CountDownLatch idle = new CountDownLatch(1);
+      Channel channel = connect(group, new StaleConnectionHandler(producer, 50), new ChannelInboundHandlerAdapter() {
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) {
+          if (evt instanceof IdleStateEvent) {
+            idle.countDown();
+          }
+        }
+      });
+      // No response is sent for this request
+      channel.writeAndFlush(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/no-response")).sync();
+
+      assertTrue(idle.await(5, TimeUnit.SECONDS));
+      assertTrue(channel.isOpen());
+      channel.close().sync();
+    } finally {
+      group.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+    }
+  }
+
+  /**
+   * Connects the handlers over the local transport to a server that answers POST requests.
+   */
+  private static Channel connect(EventLoopGroup group, StaleConnectionHandler handler,
+      ChannelInboundHandlerAdapter last) throws Exception {
+    Channel server = new ServerBootstrap().group(group).channel(LocalServerChannel.class)
+        .childHandler(new ChannelInboundHandlerAdapter() {
+          @Override
+          public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            boolean post = msg instanceof DefaultFullHttpRequest
+                && ((DefaultFullHttpRequest) msg).method() == HttpMethod.POST;
+            ReferenceCountUtil.release(msg);
+            if (post) {
+              ctx.write(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+              ctx.writeAndFlush(LastHttpContent.EMPTY_LAST_CONTENT);
+            }
+          }
+        })
+        .bind(LocalAddress.ANY).sync().channel();
+    Channel channel = new Bootstrap().group(group).channel(LocalChannel.class)
+        .handler(new ChannelInitializer<Channel>() {
+          @Override
+          protected void initChannel(Channel ch) {
+            ch.pipeline().addLast(handler, last);
+          }
+        })
+        .connect(server.localAddress()).sync().channel();
+    channel.closeFuture().addListener(future -> server.close());
+    return channel;
+  }
+
+  private static void writeRequest(EmbeddedChannel channel) {
+    channel.writeAndFlush(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/producer"));
+    ReferenceCountUtil.release(channel.readOutbound());
+  }
+
+  private static void readResponse(EmbeddedChannel channel) {
+    channel.writeInbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    channel.writeInbound(LastHttpContent.EMPTY_LAST_CONTENT);
+    channel.inboundMessages().clear();
+  }
+
+  /**
+   * Fails the writes that reach it once failing is set, as on a connection the producer has closed.
+   */
+  private static class FailingWrites extends ChannelOutboundHandlerAdapter {
+
+    private boolean failing;
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+      if (failing) {
+        ReferenceCountUtil.release(msg);
+        promise.setFailure(new ClosedChannelException());
+      } else {
+        super.write(ctx, msg, promise);
+      }
+    }
+  }
+}
@@ -4,6 +4,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.SslHandshakeCompletionEvent;
 import org.apache.camel.CamelContext;
 import org.apache.camel.Exchange;
 import org.apache.camel.component.netty.NettyConstants;
@@ -66,6 +69,32 @@ public class CertificateReaderTest {
     assertTrue(exception.getMessage().contains("VP002"));
   }
 
+  @Test
+  public void testSenderIdCachedOnConnectionIsUsed() throws Exception {
+    CertificateExtractorProcessorImpl certificateExtractorProcessor = new CertificateExtractorProcessorImpl("(?:2.5.4.5|SERIALNUMBER)=([^,]+)", vpInstance);
+    EmbeddedChannel channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+    channel.attr(CertificateExtractorProcessorImpl.SENDER_IDENTITY).set(
+        new CertificateExtractorProcessorImpl.SenderIdentity("SERIALNUMBER=SE5565594230-BCQ", "SE5565594230-BCQ"));
+
+    Exchange exchange = createExchangeWithoutNettyCert();
+    exchange.getIn().setHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, channel.pipeline().firstContext());
+    certificateExtractorProcessor.process(exchange);
+
+    assertEquals("SE5565594230-BCQ", exchange.getProperty(VPExchangeProperties.SENDER_ID));
+  }
+
+  @Test
+  public void testMissingSenderIdIsCachedOnHandshake() throws Exception {
+    CertificateExtractorProcessorImpl certificateExtractorProcessor = new CertificateExtractorProcessorImpl("(?:2.5.4.5|SERIALNUMBER)=([^,]+)", vpInstance);
+    EmbeddedChannel channel = new EmbeddedChannel(certificateExtractorProcessor.getHandshakeHandler());
+    channel.pipeline().fireUserEventTriggered(SslHandshakeCompletionEvent.SUCCESS);
+
+    Exchange exchange = createExchange("SERIALNUMBER=SE5565594230-BCQ,CN=kentor.ntjp.sjunet.org");
+    exchange.getIn().setHeader(NettyConstants.NETTY_CHANNEL_HANDLER_CONTEXT, channel.pipeline().firstContext());
+    Exception exception = assertThrows(VpSemanticException.class, () -> certificateExtractorProcessor.process(exchange));
+    assertTrue(exception.getMessage().contains("VP002"));
+  }
+
   private Exchange createExchange(String header) {
     CamelContext ctx = new DefaultCamelContext();
     Exchange ex = new DefaultExchange(ctx);
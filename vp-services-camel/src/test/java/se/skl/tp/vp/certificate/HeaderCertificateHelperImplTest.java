@@ -4,12 +4,15 @@ package se.skl.tp.vp.certificate;
 import io.undertow.util.FileUtils;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
 import java.security.cert.X509Certificate;
 import javax.security.auth.x500.X500Principal;
 import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
+import se.skl.tp.vp.config.HeaderCertificateCacheProperties;
 import se.skl.tp.vp.exceptions.VpSemanticException;
 
 public class HeaderCertificateHelperImplTest {
@@ -86,6 +89,86 @@ public class HeaderCertificateHelperImplTest {
     }
   }
 
+  @Test
+  public void pemCertificateIsParsedOnceWhenCached() {
+    HeaderCertificateCache cache = createCache(10, 60000);
+    HeaderCertificateHelperImpl cachingHelper = new HeaderCertificateHelperImpl(pattern, vpInstance, cache);
+    String pemCert = FileUtils.readFile(getClass().getClassLoader().getResource("certs/cert_ou_is_tp.pem"));
+
+    assertEquals("tp", cachingHelper.getSenderIDFromHeaderCertificate(pemCert));
+    assertEquals("tp", cachingHelper.getSenderIDFromHeaderCertificate(new String(pemCert)));
+
+    assertEquals(1, cache.getSize());
+    assertEquals(1, cache.getHits());
+    assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  public void pemCertParseErrorIsCachedAsVP002() {
+    HeaderCertificateCache cache = createCache(10, 60000);
+    HeaderCertificateHelperImpl cachingHelper = new HeaderCertificateHelperImpl(pattern, vpInstance, cache);
+    String pemCert = "-----BEGIN CERTIFICATE-----This string will cause a parse error-----END CERTIFICATE-----";
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        cachingHelper.getSenderIDFromHeaderCertificate(pemCert);
+        fail("Exception was not thrown when certificate could not be parsed");
+      } catch (final VpSemanticException e) {
+        assertEquals("Exception occured parsing certificate in httpheader x-vp-auth-cert", e.getMessageDetails());
+      }
+    }
+    assertEquals(1, cache.getHits());
+  }
+
+  @Test
+  public void cacheIsBoundedBySizeAndTtl() {
+    HeaderCertificateCache cache = createCache(2, 60000);
+    cache.putSenderId("a", "A");
+    cache.putSenderId("b", "B");
+    cache.putSenderId("c", "C");
+    assertEquals(2, cache.getSize());
+    assertEquals(1, cache.getEvictions());
+    assertEquals("C", cache.get("c").getSenderId());
+
+    HeaderCertificateCache expiringCache = createCache(2, 0);
+    expiringCache.putSenderId("a", "A");
+    assertNull(expiringCache.get("a"));
+    assertEquals(0, expiringCache.getSize());
+  }
+
+  @Test
+  public void leastRecentlyUsedCertificateIsEvicted() {
+    HeaderCertificateCache cache = createCache(2, 60000);
+    cache.putSenderId("a", "A");
+    cache.putSenderId("b", "B");
+    cache.get("a");
+    cache.putSenderId("c", "C");
+
+    assertEquals("A", cache.get("a").getSenderId());
+    assertNull(cache.get("b"));
+    assertEquals("C", cache.get("c").getSenderId());
+  }
+
+  @Test
+  public void stripedCacheIsBoundedByMaxSize() {
+    HeaderCertificateCache cache = createCache(1024, 60000);
+    for (int i = 0; i < 3000; i++) {
+      cache.putSenderId("cert-" + i, "SENDER-" + i);
+    }
+
+    assertTrue(cache.getSize() <= 1024);
+    assertEquals(3000 - cache.getSize(), cache.getEvictions());
+    assertEquals("SENDER-2999", cache.get("cert-2999").getSenderId());
+  }
+
+  private HeaderCertificateCache createCache(int maxSize, long ttl) {
+    HeaderCertificateCacheProperties properties = new HeaderCertificateCacheProperties();
+    properties.setEnabled(true);
+    properties.setMaxSize(maxSize);
+    properties.setTtl(ttl);
+    return new HeaderCertificateCache(properties);
+  }
+
   private Object mockCert(String dnString) {
 
     final X509Certificate cert = Mockito.mock(X509Certificate.class);
@@ -0,0 +1,106 @@
+package se.skl.tp.vp.compression;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class MeasuredHttpContentCompressorTest {
+
+  private static final int RESPONSE_SIZE = 10240;
+
+  private CompressionStatistics statistics;
+  private EmbeddedChannel compressorChannel;
+
+  @BeforeEach
+  public void setUp() {
+    statistics = new CompressionStatistics();
+    compressorChannel = new EmbeddedChannel(
+        new MeasuredHttpContentCompressor(6, 1024, statistics.getConsumerResponses()));
+  }
+
+  @Test
+  public void compressedResponseIsCountedAndDecompressed() {
+    writeRequest(HttpHeaderValues.GZIP.toString());
+    compressorChannel.writeOutbound(createResponse(RESPONSE_SIZE));
+
+    CompressionStatistics.Counters compressed = statistics.getConsumerResponses();
+    assertEquals(RESPONSE_SIZE, compressed.getUncompressedBytes());
+    assertTrue(compressed.getCompressedBytes() > 0);
+    assertTrue(compressed.getCompressedBytes() < RESPONSE_SIZE);
+
+    EmbeddedChannel decompressorChannel = new EmbeddedChannel(
+        new MeasuredHttpContentDecompressor(statistics.getProducerResponses()));
+    Object msg;
+    while ((msg = compressorChannel.readOutbound()) != null) {
+      decompressorChannel.writeInbound(msg);
+    }
+    long decompressedBytes = 0;
+    while ((msg = decompressorChannel.readInbound()) != null) {
+      decompressedBytes += msg instanceof ByteBufHolder ? ((ByteBufHolder) msg).content().readableBytes() : 0;
+      ReferenceCountUtil.release(msg);
+    }
+
+    assertEquals(RESPONSE_SIZE, decompressedBytes);
+    assertEquals(compressed.getCompressedBytes(), statistics.getProducerResponses().getCompressedBytes());
+    assertEquals(RESPONSE_SIZE, statistics.getProducerResponses().getUncompressedBytes());
+  }
+
+  @Test
+  public void responseIsNotCompressedWithoutAcceptEncoding() {
+    writeRequest(null);
+    compressorChannel.writeOutbound(createResponse(RESPONSE_SIZE));
+
+    FullHttpResponse response = compressorChannel.readOutbound();
+    assertEquals(RESPONSE_SIZE, response.content().readableBytes());
+    response.release();
+    assertEquals(0, statistics.getConsumerResponses().getUncompressedBytes());
+  }
+
+  @Test
+  public void smallResponseIsNotCompressed() {
+    writeRequest(HttpHeaderValues.GZIP.toString());
+    compressorChannel.writeOutbound(createResponse(100));
+
+    FullHttpResponse response = compressorChannel.readOutbound();
+    assertEquals(100, response.content().readableBytes());
+    response.release();
+    assertEquals(0, statistics.getConsumerResponses().getUncompressedBytes());
+  }
+
+  private void writeRequest(String acceptEncoding) {
+    DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/vp");
+    if (acceptEncoding != null) {
+      request.headers().set(HttpHeaderNames.ACCEPT_ENCODING, acceptEncoding);
+    }
+    compressorChannel.writeInbound(request);
+    ReferenceCountUtil.release(compressorChannel.readInbound());
+  }
+
+  private static FullHttpResponse createResponse(int size) {
+    StringBuilder body = new StringBuilder(size);
+    while (body.length() < size) {
+      body.append("<soap:Envelope/>");
+    }
+    body.setLength(size);
+    FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK,
+        Unpooled.copiedBuffer(body, StandardCharsets.UTF_8));
+    HttpUtil.setContentLength(response, size);
+    return response;
+  }
+}
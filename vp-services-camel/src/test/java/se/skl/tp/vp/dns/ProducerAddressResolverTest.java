@@ -0,0 +1,226 @@
+package se.skl.tp.vp.dns;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.resolver.dns.SingletonDnsServerAddressStreamProvider;
+import io.netty.util.concurrent.Future;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.camel.component.netty.http.HttpClientInitializerFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.skl.tp.vp.config.DnsResolverProperties;
+
+public class ProducerAddressResolverTest {
+
+  private static final String PRODUCER_HOST = "producer.vp.test";
+  private static final InetAddress PRODUCER_ADDRESS = address(10, 0, 0, 1);
+
+  @TempDir
+  Path dir;
+
+  private DatagramSocket dnsStub;
+  private final AtomicInteger queries = new AtomicInteger();
+  private ProducerAddressResolver resolver;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    // Name server that never answers, so every query times out
+    dnsStub = new DatagramSocket(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    Thread receiver = new Thread(() -> {
+      DatagramPacket packet = new DatagramPacket(new byte[512], 512);
+      while (!dnsStub.isClosed()) {
+        try {
+          dnsStub.receive(packet);
+          queries.incrementAndGet();
+        } catch (Exception e) {
+          // Closed
+        }
+      }
+    });
+    receiver.setDaemon(true);
+    receiver.start();
+
+    DnsResolverProperties properties = new DnsResolverProperties();
+    properties.setEnabled(true);
+    properties.setQueryTimeout(200);
+    properties.setRefreshInterval(0);
+    resolver = new ProducerAddressResolver(properties,
+        new SingletonDnsServerAddressStreamProvider((InetSocketAddress) dnsStub.getLocalSocketAddress()),
+        (host, types) -> PRODUCER_HOST.equals(host) ? PRODUCER_ADDRESS : null);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    resolver.destroy();
+    dnsStub.close();
+  }
+
+  @Test
+  public void hostsFileEntryIsResolved() throws Exception {
+    Future<InetAddress> future = resolver.resolve(PRODUCER_HOST).await();
+
+    assertTrue(future.isSuccess());
+    assertEquals(PRODUCER_ADDRESS, future.getNow());
+    assertEquals(1, resolver.getLookups());
+    assertEquals(0, resolver.getFailures());
+    assertEquals(1, resolver.getProducerHosts());
+    assertEquals(0, queries.get());
+  }
+
+  @Test
+  public void failedLookupIsCached() throws Exception {
+    Future<InetAddress> future = resolver.resolve("unknown.vp.test").await();
+    assertFalse(future.isSuccess());
+    assertTrue(future.cause() instanceof UnknownHostException);
+    Thread.sleep(100);
+    int queriesAfterFirstLookup = queries.get();
+    assertTrue(queriesAfterFirstLookup > 0);
+
+    future = resolver.resolve("unknown.vp.test");
+    assertTrue(future.await(1, TimeUnit.SECONDS));
+    assertFalse(future.isSuccess());
+    assertEquals(queriesAfterFirstLookup, queries.get());
+    assertEquals(2, resolver.getFailures());
+  }
+
+  @Test
+  public void lookupInFlightIsJoined() throws Exception {
+    Future<InetAddress> prefetch = resolver.resolve("slow.vp.test");
+    Future<InetAddress> future = resolver.resolve("slow.vp.test");
+
+    assertSame(prefetch, future);
+    future.await();
+    assertEquals(1, resolver.getLookups());
+  }
+
+  @Test
+  public void concurrentLookupsShareOneLookup() throws Exception {
+    int threads = 8;
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<java.util.concurrent.Future<Future<InetAddress>>> results = new ArrayList<>();
+      for (int i = 0; i < threads; i++) {
+        results.add(executor.submit(() -> {
+          start.await();
+          return resolver.resolve("slow.vp.test");
+        }));
+      }
+      start.countDown();
+
+      Set<Future<InetAddress>> futures = new HashSet<>();
+      for (java.util.concurrent.Future<Future<InetAddress>> result : results) {
+        futures.add(result.get(5, TimeUnit.SECONDS));
+      }
+      assertEquals(1, futures.size());
+      futures.iterator().next().await();
+      assertEquals(1, resolver.getLookups());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void refreshKeepsProducerHostsInUse() throws Exception {
+    resolver.resolve(PRODUCER_HOST).await();
+
+    resolver.refreshProducerHosts();
+
+    Future<InetAddress> future = resolver.resolve(PRODUCER_HOST).await();
+    assertEquals(PRODUCER_ADDRESS, future.getNow());
+    assertEquals(1, resolver.getProducerHosts());
+  }
+
+  @Test
+  public void resolvedAddressIsKeptForTheConnect() throws Exception {
+    ProducerAddressConfiguration configuration = new ProducerAddressConfiguration(resolver);
+    configuration.setHost(PRODUCER_HOST);
+    configuration.setClientInitializerFactory(new HttpClientInitializerFactory());
+    assertEquals(PRODUCER_HOST, configuration.getHost());
+
+    resolver.resolve(PRODUCER_HOST).await();
+
+    assertEquals("10.0.0.1", resolver.getResolvedAddress(PRODUCER_HOST));
+    assertEquals("10.0.0.1", configuration.getHost());
+    assertEquals(PRODUCER_HOST, configuration.getHostName());
+  }
+
+  @Test
+  public void consumerConfigurationKeepsHostName() throws Exception {
+    ProducerAddressConfiguration configuration = new ProducerAddressConfiguration(resolver);
+    configuration.setHost(PRODUCER_HOST);
+
+    resolver.resolve(PRODUCER_HOST).await();
+
+    assertEquals(PRODUCER_HOST, configuration.getHost());
+  }
+
+  @Test
+  public void takSnapshotHostsAreRefreshed() throws Exception {
+    Path takFile = dir.resolve("local-tak-cache.xml");
+    Files.write(takFile, ("<persistentCache xmlns:ns2=\"urn:skl:tp:vagvalsinfo:v2\">"
+        + "<virtualiseringsInfo><ns2:adress>https://" + PRODUCER_HOST + ":19001/tjanst</ns2:adress></virtualiseringsInfo>"
+        + "<virtualiseringsInfo><ns2:adress>http://10.0.0.2:19000/tjanst</ns2:adress></virtualiseringsInfo>"
+        + "</persistentCache>").getBytes(StandardCharsets.UTF_8));
+
+    resolver.loadTakHosts(takFile.toString());
+    resolver.refreshProducerHosts();
+
+    assertEquals(1, resolver.getTakHosts());
+    assertEquals(0, resolver.getProducerHosts());
+    for (int i = 0; i < 50 && resolver.getResolvedAddress(PRODUCER_HOST) == null; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("10.0.0.1", resolver.getResolvedAddress(PRODUCER_HOST));
+  }
+
+  @Test
+  public void takSnapshotIsKeptWhenFileIsMissing() throws Exception {
+    Path takFile = dir.resolve("local-tak-cache.xml");
+    Files.write(takFile, ("<persistentCache><virtualiseringsInfo><adress>http://" + PRODUCER_HOST
+        + "/tjanst</adress></virtualiseringsInfo></persistentCache>").getBytes(StandardCharsets.UTF_8));
+    resolver.loadTakHosts(takFile.toString());
+
+    Files.delete(takFile);
+    resolver.loadTakHosts(takFile.toString());
+
+    assertEquals(1, resolver.getTakHosts());
+  }
+
+  @Test
+  public void disabledResolverIsNotStarted() {
+    ProducerAddressResolver disabled = new ProducerAddressResolver(new DnsResolverProperties());
+
+    assertFalse(disabled.isEnabled());
+    disabled.destroy();
+  }
+
+  private static InetAddress address(int... bytes) {
+    try {
+      return InetAddress.getByAddress(new byte[]{(byte) bytes[0], (byte) bytes[1], (byte) bytes[2], (byte) bytes[3]});
+    } catch (UnknownHostException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,123 @@
+package se.skl.tp.vp.expectcontinue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.exceptions.VpSemanticException;
+
+public class ExpectContinueHandlerTest {
+
+  private static final String EXPECT_CONTINUE_REQUEST =
+      "POST /vp HTTP/1.1\r\nHost: vp\r\nExpect: 100-continue\r\nContent-Length: 5\r\n\r\n";
+  private static final String REQUEST = "POST /vp HTTP/1.1\r\nHost: vp\r\nContent-Length: 5\r\n\r\n01234";
+
+  private ExpectContinueAuthorizer authorizer;
+  private EmbeddedChannel channel;
+
+  @BeforeEach
+  public void setUp() {
+    authorizer = mock(ExpectContinueAuthorizer.class);
+    when(authorizer.authorizeAsync(any(HttpRequest.class), any(Channel.class)))
+        .thenReturn(CompletableFuture.completedFuture(null));
+    // In the order of the consumer pipeline, so the fault responses are written through the encoder
+    channel = new EmbeddedChannel(new HttpRequestDecoder(), new HttpResponseEncoder(),
+        new ExpectContinueHandler(authorizer));
+  }
+
+  @Test
+  public void rejectedSenderIsAnsweredBeforeBody() {
+    when(authorizer.authorizeAsync(any(HttpRequest.class), any(Channel.class))).thenReturn(
+        CompletableFuture.completedFuture(new VpSemanticException(VpSemanticErrorCodeEnum.VP011,
+            "VP011 [VP] Anrop har gjorts utanför TLS", "")));
+
+    write(EXPECT_CONTINUE_REQUEST);
+
+    assertNull(channel.readInbound());
+    String response = readResponse();
+    assertTrue(response.startsWith("HTTP/1.1 500 Internal Server Error\r\n"), response);
+    assertTrue(response.contains("VP011"));
+    assertTrue(response.contains("soapenv:Client"));
+    assertTrue(channel.isOpen());
+
+    write(REQUEST);
+    assertAccepted();
+  }
+
+  @Test
+  public void authorizedSenderIsPassedOn() {
+    write(EXPECT_CONTINUE_REQUEST + "01234");
+
+    assertAccepted();
+  }
+
+  @Test
+  public void requestIsHeldWhileItIsChecked() {
+    CompletableFuture<VpSemanticException> check = new CompletableFuture<>();
+    when(authorizer.authorizeAsync(any(HttpRequest.class), any(Channel.class))).thenReturn(check);
+
+    write(EXPECT_CONTINUE_REQUEST + "01234");
+
+    assertNull(channel.readInbound());
+    assertFalse(channel.config().isAutoRead());
+
+    check.complete(null);
+    channel.runPendingTasks();
+
+    assertAccepted();
+    assertTrue(channel.config().isAutoRead());
+  }
+
+  @Test
+  public void requestWithoutExpectationIsNotChecked() {
+    write(REQUEST);
+
+    assertAccepted();
+    verify(authorizer, never()).authorizeAsync(any(HttpRequest.class), any(Channel.class));
+  }
+
+  private void write(String data) {
+    channel.writeInbound(Unpooled.copiedBuffer(data, StandardCharsets.US_ASCII));
+    channel.runPendingTasks();
+  }
+
+  private String readResponse() {
+    StringBuilder response = new StringBuilder();
+    ByteBuf encoded;
+    while ((encoded = channel.readOutbound()) != null) {
+      response.append(encoded.toString(StandardCharsets.UTF_8));
+      encoded.release();
+    }
+    return response.toString();
+  }
+
+  private void assertAccepted() {
+    assertTrue(channel.readInbound() instanceof HttpRequest);
+    HttpContent content = channel.readInbound();
+    assertTrue(content instanceof LastHttpContent);
+    assertEquals("01234", content.content().toString(StandardCharsets.US_ASCII));
+    ReferenceCountUtil.release(content);
+    assertNull(channel.readOutbound());
+  }
+}
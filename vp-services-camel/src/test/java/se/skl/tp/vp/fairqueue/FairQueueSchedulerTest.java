@@ -0,0 +1,209 @@
+package se.skl.tp.vp.fairqueue;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpVersion;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.config.FairQueueProperties;
+import se.skl.tp.vp.constants.HttpHeaders;
+import se.skl.tp.vp.fairqueue.FairQueueScheduler.Task;
+import se.skl.tp.vp.httpheader.IPWhitelistHandlerImpl;
+
+public class FairQueueSchedulerTest {
+
+  private final List<String> started = new ArrayList<>();
+
+  @Test
+  public void queuedTasksAreServedInTurnsBySender() {
+    FairQueueScheduler scheduler = createScheduler(1);
+    assertTrue(scheduler.offer(task("bursty", "running")));
+    scheduler.offer(task("bursty", "b1"));
+    scheduler.offer(task("bursty", "b2"));
+    scheduler.offer(task("bursty", "b3"));
+    scheduler.offer(task("other", "o1"));
+
+    releaseAll(scheduler, 4);
+
+    assertEquals(Arrays.asList("b1", "o1", "b2", "b3"), started);
+    assertEquals(1, scheduler.getActive());
+  }
+
+  @Test
+  public void weightGivesMoreTasksPerTurn() {
+    FairQueueProperties properties = properties(1);
+    properties.getWeights().put("heavy", 2);
+    FairQueueScheduler scheduler = createScheduler(properties);
+    scheduler.offer(task("light", "running"));
+    scheduler.offer(task("heavy", "h1"));
+    scheduler.offer(task("heavy", "h2"));
+    scheduler.offer(task("heavy", "h3"));
+    scheduler.offer(task("light", "l1"));
+    scheduler.offer(task("light", "l2"));
+
+    releaseAll(scheduler, 5);
+
+    assertEquals(Arrays.asList("h1", "h2", "l1", "h3", "l2"), started);
+  }
+
+  @Test
+  public void expiredTaskIsNotStarted() {
+    FairQueueScheduler scheduler = createScheduler(1);
+    Task queued = task("sender", "queued");
+    scheduler.offer(task("sender", "running"));
+    scheduler.offer(queued);
+
+    assertTrue(scheduler.expire(queued));
+    assertFalse(scheduler.expire(queued));
+    scheduler.release();
+
+    assertTrue(started.isEmpty());
+    assertEquals(0, scheduler.getActive());
+    assertEquals(0, scheduler.getQueued());
+    assertEquals(1, scheduler.getExpired());
+    assertEquals(0, scheduler.getCancelled());
+  }
+
+  @Test
+  public void taskOfClosedConnectionIsCountedAsCancelled() {
+    FairQueueScheduler scheduler = createScheduler(1);
+    Task queued = task("sender", "queued");
+    scheduler.offer(task("sender", "running"));
+    scheduler.offer(queued);
+
+    assertTrue(scheduler.cancel(queued));
+    assertFalse(scheduler.expire(queued));
+
+    assertEquals(0, scheduler.getExpired());
+    assertEquals(1, scheduler.getCancelled());
+  }
+
+  @Test
+  public void emptyQueueIsRemoved() {
+    FairQueueScheduler scheduler = createScheduler(1);
+    Task cancelled = task("cancelled", "c1");
+    scheduler.offer(task("running", "running"));
+    scheduler.offer(task("served", "s1"));
+    scheduler.offer(cancelled);
+    assertEquals(2, scheduler.getSenders().size());
+
+    scheduler.cancel(cancelled);
+    scheduler.release();
+
+    assertEquals(Arrays.asList("s1"), started);
+    assertEquals(0, scheduler.getQueued());
+    assertEquals(Arrays.asList("served"), new ArrayList<>(scheduler.getSenders().keySet()));
+  }
+
+  @Test
+  public void waitTimesAreKeptForMostRecentlyServedSenders() {
+    FairQueueProperties properties = properties(1);
+    properties.setMaxQueues(2);
+    FairQueueScheduler scheduler = createScheduler(properties);
+    Task expired = task("b", "b2");
+    scheduler.offer(task("a", "running"));
+    scheduler.offer(task("a", "a1"));
+    scheduler.offer(task("b", "b1"));
+    scheduler.offer(expired);
+    releaseAll(scheduler, 2);
+    scheduler.expire(expired);
+
+    assertTrue(scheduler.getSenders().get("a").startsWith("Weight: 1, Queued: 0, Dispatched: 1, Expired: 0"));
+    assertTrue(scheduler.getSenders().get("b").startsWith("Weight: 1, Queued: 0, Dispatched: 1, Expired: 1"));
+
+    scheduler.offer(task("c", "c1"));
+    scheduler.release();
+
+    assertEquals(Arrays.asList("b", "c"), new ArrayList<>(scheduler.getSenders().keySet()));
+  }
+
+  @Test
+  public void sendersOverMaxQueuesShareTheUnknownQueue() {
+    FairQueueProperties properties = properties(1);
+    properties.setMaxQueues(2);
+    FairQueueScheduler scheduler = createScheduler(properties);
+    scheduler.offer(task("a", "running"));
+    scheduler.offer(task("a", "a1"));
+    scheduler.offer(task("b", "b1"));
+    scheduler.offer(task("c", "c1"));
+    scheduler.offer(task("d", "d1"));
+
+    assertEquals(Arrays.asList("a", "b", FairQueueScheduler.UNKNOWN_SENDER),
+        new ArrayList<>(scheduler.getSenders().keySet()));
+    assertTrue(scheduler.getSenders().get(FairQueueScheduler.UNKNOWN_SENDER).contains("Queued: 2"));
+  }
+
+  @Test
+  public void onlyVerifiedSendersGetTheirOwnQueue() {
+    FairQueueScheduler scheduler = createScheduler(1);
+
+    assertTrue(scheduler.isTrustedCaller("127.0.0.1"));
+    assertFalse(scheduler.isTrustedCaller("10.1.1.1"));
+    assertEquals("internal", scheduler.senderOf(request("internal", "dev_env"), true));
+    assertEquals(FairQueueScheduler.UNKNOWN_SENDER, scheduler.senderOf(request("internal", "other_env"), true));
+    assertEquals(FairQueueScheduler.UNKNOWN_SENDER, scheduler.senderOf(request("internal", "dev_env"), false));
+    assertEquals(FairQueueScheduler.UNKNOWN_SENDER, scheduler.senderOf(request(null, null), true));
+  }
+
+  @Test
+  public void reverseProxyCertificateIsQueuedByItsHashWithoutParsing() {
+    FairQueueScheduler scheduler = createScheduler(1);
+    HttpRequest request = request(null, null);
+    request.headers().set(HttpHeaders.CERTIFICATE_FROM_REVERSE_PROXY, "not a certificate");
+
+    assertEquals(FairQueueScheduler.CERTIFICATE_SENDER_PREFIX + Integer.toHexString("not a certificate".hashCode()),
+        scheduler.senderOf(request, true));
+    assertEquals(FairQueueScheduler.UNKNOWN_SENDER, scheduler.senderOf(request, false));
+  }
+
+  @Test
+  public void tasksStartAtOnceBelowCap() {
+    FairQueueScheduler scheduler = createScheduler(2);
+
+    assertTrue(scheduler.offer(task("a", "first")));
+    assertTrue(scheduler.offer(task("b", "second")));
+    assertFalse(scheduler.offer(task("a", "third")));
+    assertEquals(1, scheduler.getQueued());
+  }
+
+  private void releaseAll(FairQueueScheduler scheduler, int times) {
+    for (int i = 0; i < times; i++) {
+      scheduler.release();
+    }
+  }
+
+  private Task task(String sender, String name) {
+    return new Task(sender, () -> started.add(name));
+  }
+
+  private static HttpRequest request(String senderId, String instanceId) {
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/vp");
+    if (senderId != null) {
+      request.headers().set(HttpHeaders.X_VP_SENDER_ID, senderId);
+      request.headers().set(HttpHeaders.X_VP_INSTANCE_ID, instanceId);
+    }
+    return request;
+  }
+
+  private FairQueueScheduler createScheduler(int maxConcurrent) {
+    return createScheduler(properties(maxConcurrent));
+  }
+
+  private static FairQueueScheduler createScheduler(FairQueueProperties properties) {
+    return new FairQueueScheduler(properties, "dev_env", new IPWhitelistHandlerImpl("127.0.0.1"), "VP012");
+  }
+
+  private static FairQueueProperties properties(int maxConcurrent) {
+    FairQueueProperties properties = new FairQueueProperties();
+    properties.setEnabled(true);
+    properties.setMaxConcurrent(maxConcurrent);
+    return properties;
+  }
+}
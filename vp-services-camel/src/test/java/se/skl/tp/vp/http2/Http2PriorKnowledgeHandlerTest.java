@@ -0,0 +1,74 @@
+package se.skl.tp.vp.http2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class Http2PriorKnowledgeHandlerTest {
+
+  private static final String PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n";
+
+  private AtomicInteger upgrades;
+  private EmbeddedChannel channel;
+
+  @BeforeEach
+  public void setUp() {
+    upgrades = new AtomicInteger();
+    channel = new EmbeddedChannel(new Http2PriorKnowledgeHandler(ctx -> upgrades.incrementAndGet()));
+  }
+
+  @Test
+  public void http11IsPassedOn() {
+    channel.writeInbound(buffer("POST /vp HTTP/1.1\r\n"));
+
+    assertEquals(0, upgrades.get());
+    assertNull(channel.pipeline().get(Http2PriorKnowledgeHandler.class));
+    assertEquals("POST /vp HTTP/1.1\r\n", read());
+  }
+
+  @Test
+  public void prefaceUpgradesConnection() {
+    channel.writeInbound(buffer(PREFACE + "frames"));
+
+    assertEquals(1, upgrades.get());
+    assertNull(channel.pipeline().get(Http2PriorKnowledgeHandler.class));
+    assertEquals(PREFACE + "frames", read());
+  }
+
+  @Test
+  public void partialPrefaceWaitsForMore() {
+    channel.writeInbound(buffer("PRI * HTTP"));
+
+    assertEquals(0, upgrades.get());
+    assertNotNull(channel.pipeline().get(Http2PriorKnowledgeHandler.class));
+    assertFalse(channel.inboundMessages().size() > 0);
+
+    channel.writeInbound(buffer(PREFACE.substring("PRI * HTTP".length())));
+    assertEquals(1, upgrades.get());
+    assertTrue(read().startsWith("PRI * HTTP/2.0"));
+  }
+
+  private static ByteBuf buffer(String data) {
+    return Unpooled.copiedBuffer(data, StandardCharsets.US_ASCII);
+  }
+
+  private String read() {
+    StringBuilder data = new StringBuilder();
+    ByteBuf buf;
+    while ((buf = channel.readInbound()) != null) {
+      data.append(buf.toString(StandardCharsets.US_ASCII));
+      buf.release();
+    }
+    return data.toString();
+  }
+}
@@ -18,7 +18,10 @@ import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
 import org.mockito.Mockito;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import se.skl.tp.vp.certificate.HeaderCertificateCache;
 import se.skl.tp.vp.certificate.HeaderCertificateHelperImpl;
+import se.skl.tp.vp.config.HeaderCertificateCacheProperties;
+import se.skl.tp.vp.config.IpWhitelistProperties;
 import se.skl.tp.vp.constants.HttpHeaders;
 import se.skl.tp.vp.constants.VPExchangeProperties;
 import se.skl.tp.vp.errorhandling.ExceptionUtil;
@@ -30,7 +33,10 @@ import se.skl.tp.vp.exceptions.VpSemanticException;
     classes = {
       SenderIpExtractorFromHeader.class,
       HeaderCertificateHelperImpl.class,
+      HeaderCertificateCache.class,
+      HeaderCertificateCacheProperties.class,
       IPWhitelistHandlerImpl.class,
+      IpWhitelistProperties.class,
       HttpSenderIdExtractorProcessorImpl.class,
       VpCodeMessages.class,
       ExceptionUtil.class
@@ -1,13 +1,19 @@
 package se.skl.tp.vp.httpheader;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import org.apache.camel.test.spring.junit5.CamelSpringBootTest;
+import se.skl.tp.vp.config.IpWhitelistProperties;
 import se.skl.tp.vp.util.TestLogAppender;
 
 @CamelSpringBootTest
@@ -15,6 +21,9 @@ public class IPWhitelistHandlerTest {
 
   IPWhitelistHandler ipWhitelistHandler;
 
+  @TempDir
+  Path dir;
+
   //private static final String LOG_CLASS = "se.skl.tp.vp.httpheader.IPWhitelistHandlerImpl";
 
   private static final String whitelist = "127.0.0.1,1.2.3.4,5.6.7.8";
@@ -104,6 +113,77 @@ public class IPWhitelistHandlerTest {
     assertTrue(ipWhitelistHandler.isCallerOnWhiteList("127.0.0.2"));
   }
 
+  @Test
+  public void isCallerOnWhiteListMatchesSubdomainWithTrailingDot(){
+
+    IPWhitelistHandlerImpl ipWhitelistHandler = new IPWhitelistHandlerImpl("10.1.");
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("10.1.200.3"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("10.10.200.3"));
+  }
+
+  @Test
+  public void isCallerOnWhiteListMatchesStartOfOctetWithoutTrailingDot(){
+
+    IPWhitelistHandlerImpl ipWhitelistHandler = new IPWhitelistHandlerImpl("10.1");
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("10.1.200.3"));
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("10.10.200.3"));
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("10.199.0.1"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("10.2.0.1"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("10.200.0.1"));
+  }
+
+  @Test
+  public void isCallerOnWhiteListMatchesWholeAddressOnly(){
+
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("1.2.3.40"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("5.6.7.8.9"));
+  }
+
+  @Test
+  public void isCallerOnWhiteListMatchesCidrRanges(){
+
+    IPWhitelistHandlerImpl ipWhitelistHandler = new IPWhitelistHandlerImpl("192.168.16.0/20,2001:db8::/32,::1");
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("192.168.31.255"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("192.168.32.0"));
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("2001:db8:0:0:0:0:0:7"));
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("[2001:DB8::1]"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("2001:db9::1"));
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("0:0:0:0:0:0:0:1%lo"));
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("::ffff:192.168.20.1"));
+  }
+
+  @Test
+  public void isCallerOnWhiteListChecksFirstForwardedAddress(){
+
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("1.2.3.4, 10.20.30.40"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("10.20.30.40, 1.2.3.4"));
+  }
+
+  @Test
+  public void invalidEntriesAreIgnored(){
+
+    IPWhitelistHandlerImpl ipWhitelistHandler = new IPWhitelistHandlerImpl("localhost,1.2.3.4/33,1.2.3.4");
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("1.2.3.4"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("127.0.0.1"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("not an address"));
+  }
+
+  @Test
+  public void whitelistFileReplacesPropertyAndIsReloaded() throws IOException {
+    Path file = Files.write(dir.resolve("ipwhitelist.txt"),
+        "# Proxies\n10.0.0.0/8\n".getBytes(StandardCharsets.UTF_8));
+    IpWhitelistProperties properties = new IpWhitelistProperties();
+    properties.setFile(file.toString());
+    IPWhitelistHandlerImpl ipWhitelistHandler = new IPWhitelistHandlerImpl(whitelist, properties);
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("10.20.30.40"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("1.2.3.4"));
+
+    Files.write(file, "1.2.3.0/24 # Internal\n".getBytes(StandardCharsets.UTF_8));
+    file.toFile().setLastModified(file.toFile().lastModified() + 2000);
+    ipWhitelistHandler.reload();
+    assertTrue(ipWhitelistHandler.isCallerOnWhiteList("1.2.3.4"));
+    assertFalse(ipWhitelistHandler.isCallerOnWhiteList("10.20.30.40"));
+  }
 
   private void testLogMessage(int num, String message) {
     String logClass = IPWhitelistHandlerImpl.class.getName();
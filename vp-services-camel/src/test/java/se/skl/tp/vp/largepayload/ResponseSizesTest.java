@@ -0,0 +1,30 @@
+package se.skl.tp.vp.largepayload;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class ResponseSizesTest {
+
+  @Test
+  public void firstResponseSetsAverage() {
+    ResponseSizes responseSizes = new ResponseSizes();
+
+    responseSizes.record("urn:riv:GetData", 4000);
+
+    assertEquals(4000, responseSizes.getAverage("urn:riv:GetData"));
+    assertEquals(0, responseSizes.getAverage("urn:riv:Other"));
+  }
+
+  @Test
+  public void laterResponsesMoveAverageByAQuarter() {
+    ResponseSizes responseSizes = new ResponseSizes();
+
+    responseSizes.record("urn:riv:GetData", 4000);
+    responseSizes.record("urn:riv:GetData", 8000);
+    assertEquals(5000, responseSizes.getAverage("urn:riv:GetData"));
+
+    responseSizes.record("urn:riv:GetData", 1000);
+    assertEquals(4000, responseSizes.getAverage("urn:riv:GetData"));
+  }
+}
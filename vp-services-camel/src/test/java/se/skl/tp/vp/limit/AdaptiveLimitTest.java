@@ -0,0 +1,45 @@
+package se.skl.tp.vp.limit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import org.junit.jupiter.api.Test;
+
+public class AdaptiveLimitTest {
+
+  private static final long RTT = 10_000_000;
+
+  @Test
+  public void limitGrowsWhenUsedAndFast() {
+    AdaptiveLimit limit = new AdaptiveLimit(10, 2, 12, 0.5, 2.0);
+
+    assertEquals(11, limit.onSample(RTT, 10, false));
+    assertEquals(12, limit.onSample(RTT, 10, false));
+    assertEquals(12, limit.onSample(RTT, 10, false));
+  }
+
+  @Test
+  public void limitIsKeptWhenMostlyUnused() {
+    AdaptiveLimit limit = new AdaptiveLimit(10, 2, 100, 0.5, 2.0);
+
+    assertEquals(10, limit.onSample(RTT, 2, false));
+  }
+
+  @Test
+  public void limitBacksOffOnFailure() {
+    AdaptiveLimit limit = new AdaptiveLimit(10, 2, 100, 0.5, 2.0);
+
+    assertEquals(5, limit.onSample(RTT, 10, true));
+    assertEquals(2, limit.onSample(RTT, 10, true));
+    assertEquals(2, limit.onSample(RTT, 10, true));
+  }
+
+  @Test
+  public void limitBacksOffWhenLatencyRises() {
+    AdaptiveLimit limit = new AdaptiveLimit(10, 2, 100, 0.5, 2.0);
+    for (int i = 0; i < 10; i++) {
+      limit.onSample(RTT, 1, false);
+    }
+
+    assertEquals(5, limit.onSample(5 * RTT, 10, false));
+  }
+}
@@ -0,0 +1,80 @@
+package se.skl.tp.vp.limit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.timeout.ReadTimeoutException;
+import java.net.ConnectException;
+import java.util.concurrent.TimeUnit;
+import org.apache.camel.CamelExchangeException;
+import org.apache.camel.Exchange;
+import org.apache.camel.component.netty.NettyCamelState;
+import org.apache.camel.component.netty.NettyCamelStateCorrelationManager;
+import org.apache.camel.component.netty.NettyProducer;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.constants.VPExchangeProperties;
+
+public class ProducerLatencyHandlerTest {
+
+  private Exchange exchange;
+  private EmbeddedChannel channel;
+
+  @BeforeEach
+  public void setUp() {
+    exchange = new DefaultExchange(new DefaultCamelContext());
+    NettyCamelStateCorrelationManager correlationManager = mock(NettyCamelStateCorrelationManager.class);
+    when(correlationManager.getState(any(ChannelHandlerContext.class), any(Channel.class), any(Object.class)))
+        .thenReturn(new NettyCamelState(null, exchange));
+    NettyProducer producer = mock(NettyProducer.class);
+    when(producer.getCorrelationManager()).thenReturn(correlationManager);
+    channel = new EmbeddedChannel(new ProducerLatencyHandler(producer));
+  }
+
+  @Test
+  public void latencyIsRecordedAtEndOfResponse() throws Exception {
+    channel.writeOutbound(new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/producer"));
+    Thread.sleep(5);
+    channel.writeInbound(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    assertNull(exchange.getProperty(VPExchangeProperties.PRODUCER_LATENCY));
+
+    channel.writeInbound(LastHttpContent.EMPTY_LAST_CONTENT);
+
+    Long latency = exchange.getProperty(VPExchangeProperties.PRODUCER_LATENCY, Long.class);
+    assertTrue(latency >= TimeUnit.MILLISECONDS.toNanos(5));
+  }
+
+  @Test
+  public void timeoutAndConnectFailureAreDrops() {
+    exchange.setException(ReadTimeoutException.INSTANCE);
+    assertTrue(ProducerLimitProcessorImpl.isDropped(exchange));
+
+    exchange.setException(null);
+    exchange.setProperty(Exchange.EXCEPTION_CAUGHT,
+        new CamelExchangeException("Cannot connect", exchange, new ConnectException("Connection refused")));
+    assertTrue(ProducerLimitProcessorImpl.isDropped(exchange));
+  }
+
+  @Test
+  public void soapFaultIsNotADrop() {
+    exchange.getIn().setHeader(Exchange.HTTP_RESPONSE_CODE, 500);
+    exchange.setProperty(Exchange.EXCEPTION_CAUGHT, new IllegalStateException("SOAP fault"));
+
+    assertFalse(ProducerLimitProcessorImpl.isDropped(exchange));
+  }
+}
@@ -0,0 +1,151 @@
+package se.skl.tp.vp.memory;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.config.MemoryBudgetProperties;
+
+public class RequestBudgetHandlerTest {
+
+  private MemoryBudget memoryBudget;
+
+  @BeforeEach
+  public void setUp() {
+    MemoryBudgetProperties properties = new MemoryBudgetProperties();
+    properties.setEnabled(true);
+    properties.setMaxBytes(100);
+    properties.setLargeSize(50);
+    properties.setDirectMemoryWatermark(0);
+    memoryBudget = new MemoryBudget(properties, "VP012 [VP] Resurser saknas", 0);
+  }
+
+  @Test
+  public void reservationIsReleasedWhenResponseIsWritten() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RequestBudgetHandler(memoryBudget));
+    channel.writeInbound(request(80));
+    channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(new byte[80])));
+    releaseInbound(channel);
+    assertEquals(80, memoryBudget.getReserved());
+
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    ReferenceCountUtil.release(channel.readOutbound());
+
+    assertEquals(0, memoryBudget.getReserved());
+  }
+
+  @Test
+  public void continueResponseDoesNotReleaseReservation() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RequestBudgetHandler(memoryBudget));
+    HttpRequest request = request(80);
+    HttpUtil.set100ContinueExpected(request, true);
+    channel.writeInbound(request);
+
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.CONTINUE));
+    ReferenceCountUtil.release(channel.readOutbound());
+    channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(new byte[80])));
+    releaseInbound(channel);
+    assertEquals(80, memoryBudget.getReserved());
+
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    ReferenceCountUtil.release(channel.readOutbound());
+
+    assertEquals(0, memoryBudget.getReserved());
+  }
+
+  @Test
+  public void responseBeforeBodyIsReadReleasesThatRequest() {
+    EmbeddedChannel channel = new EmbeddedChannel(new RequestBudgetHandler(memoryBudget));
+    channel.writeInbound(request(80));
+
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.REQUEST_ENTITY_TOO_LARGE));
+    ReferenceCountUtil.release(channel.readOutbound());
+    channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(new byte[80])));
+    releaseInbound(channel);
+    assertEquals(0, memoryBudget.getReserved());
+
+    channel.writeInbound(request(40));
+    channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(new byte[40])));
+    releaseInbound(channel);
+    channel.writeOutbound(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+    ReferenceCountUtil.release(channel.readOutbound());
+
+    assertEquals(0, memoryBudget.getReserved());
+  }
+
+  @Test
+  public void largeRequestOverBudgetIsRejectedAndDiscarded() {
+    memoryBudget.reserve(60);
+    EmbeddedChannel channel = new EmbeddedChannel(new RequestBudgetHandler(memoryBudget));
+
+    channel.writeInbound(request(80));
+    channel.writeInbound(new DefaultLastHttpContent(Unpooled.wrappedBuffer(new byte[80])));
+
+    assertNull(channel.readInbound());
+    FullHttpResponse response = channel.readOutbound();
+    assertEquals(HttpResponseStatus.SERVICE_UNAVAILABLE, response.status());
+    assertTrue(response.content().toString(StandardCharsets.UTF_8).contains("VP012"));
+    assertTrue(channel.isOpen());
+    assertEquals(60, memoryBudget.getReserved());
+    assertEquals(1, memoryBudget.getRejected());
+    response.release();
+  }
+
+  @Test
+  public void smallRequestIsAlwaysLetThrough() {
+    memoryBudget.reserve(100);
+    EmbeddedChannel channel = new EmbeddedChannel(new RequestBudgetHandler(memoryBudget));
+
+    channel.writeInbound(request(10));
+
+    assertEquals(1, channel.inboundMessages().size());
+    releaseInbound(channel);
+  }
+
+  @Test
+  public void chunkedRequestOutgrowingBudgetClosesConnection() {
+    memoryBudget.reserve(60);
+    EmbeddedChannel channel = new EmbeddedChannel(new RequestBudgetHandler(memoryBudget));
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/vp");
+    HttpUtil.setTransferEncodingChunked(request, true);
+
+    channel.writeInbound(request);
+    channel.writeInbound(new DefaultHttpContent(Unpooled.wrappedBuffer(new byte[30])));
+    channel.writeInbound(new DefaultHttpContent(Unpooled.wrappedBuffer(new byte[30])));
+    releaseInbound(channel);
+    ReferenceCountUtil.release(channel.readOutbound());
+
+    assertFalse(channel.isOpen());
+    assertEquals(60, memoryBudget.getReserved());
+  }
+
+  private static HttpRequest request(int length) {
+    HttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/vp");
+    HttpUtil.setContentLength(request, length);
+    return request;
+  }
+
+  private static void releaseInbound(EmbeddedChannel channel) {
+    Object msg;
+    while ((msg = channel.readInbound()) != null) {
+      ReferenceCountUtil.release(msg);
+    }
+  }
+}
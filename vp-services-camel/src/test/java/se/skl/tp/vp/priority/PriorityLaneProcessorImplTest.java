@@ -0,0 +1,62 @@
+package se.skl.tp.vp.priority;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.config.PriorityLaneProperties;
+import se.skl.tp.vp.errorhandling.ExceptionUtil;
+import se.skl.tp.vp.exceptions.VpSemanticErrorCodeEnum;
+import se.skl.tp.vp.exceptions.VpSemanticException;
+import se.skl.tp.vp.utils.QueueTimer;
+import se.skl.tp.vp.utils.SlotAcquirer;
+
+public class PriorityLaneProcessorImplTest {
+
+  private QueueTimer queueTimer;
+  private PriorityLaneProcessorImpl processor;
+
+  @BeforeEach
+  public void setUp() {
+    PriorityLaneProperties properties = new PriorityLaneProperties();
+    properties.setEnabled(true);
+    properties.setMaxConcurrent(1);
+    properties.setQueueTimeout(50);
+    ExceptionUtil exceptionUtil = mock(ExceptionUtil.class);
+    when(exceptionUtil.createVpSemanticException(eq(VpSemanticErrorCodeEnum.VP012), any()))
+        .thenReturn(new VpSemanticException(VpSemanticErrorCodeEnum.VP012, "VP012", "saturated"));
+    queueTimer = new QueueTimer();
+    processor = new PriorityLaneProcessorImpl(properties, exceptionUtil, new SlotAcquirer(queueTimer));
+  }
+
+  @AfterEach
+  public void tearDown() {
+    queueTimer.destroy();
+  }
+
+  @Test
+  public void queuedCallWithoutChannelIsRejectedAfterQueueTimeout() throws Exception {
+    Exchange running = new DefaultExchange(new DefaultCamelContext());
+    Exchange queued = new DefaultExchange(new DefaultCamelContext());
+    CountDownLatch done = new CountDownLatch(1);
+
+    assertTrue(processor.process(running, doneSync -> { }));
+    assertFalse(processor.process(queued, doneSync -> done.countDown()));
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertTrue(queued.getException() instanceof VpSemanticException);
+    assertEquals(1, processor.getPriorityLanes().getSharedActive());
+  }
+}
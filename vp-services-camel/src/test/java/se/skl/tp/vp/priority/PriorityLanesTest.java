@@ -0,0 +1,65 @@
+package se.skl.tp.vp.priority;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.utils.SlotLimiter.Admission;
+
+public class PriorityLanesTest {
+
+  private Lane acute;
+  private Lane bulk;
+  private PriorityLanes priorityLanes;
+  private final List<String> started = new ArrayList<>();
+
+  @BeforeEach
+  public void setUp() {
+    acute = new Lane("acute", "urn:riv:acute:.*", 1, 2, 500);
+    bulk = new Lane("default", null, 0, 2, 500);
+    priorityLanes = new PriorityLanes(Arrays.asList(acute, bulk), 2);
+  }
+
+  @Test
+  public void contractSelectsLaneOrDefault() {
+    assertSame(acute, priorityLanes.laneFor("urn:riv:acute:GetMedication:1"));
+    assertSame(bulk, priorityLanes.laneFor("urn:riv:batch:Notify:1"));
+    assertSame(bulk, priorityLanes.laneFor(null));
+  }
+
+  @Test
+  public void reservedSlotIsKeptFromLowerLanes() {
+    assertEquals(Admission.ACQUIRED, priorityLanes.acquire(bulk, () -> { }));
+    assertEquals(Admission.QUEUED, priorityLanes.acquire(bulk, () -> { }));
+
+    assertEquals(Admission.ACQUIRED, priorityLanes.acquire(acute, () -> { }));
+  }
+
+  @Test
+  public void lowerLaneIsRejectedWhenItsQueueIsFull() {
+    priorityLanes.acquire(bulk, () -> { });
+    priorityLanes.acquire(bulk, () -> { });
+    priorityLanes.acquire(bulk, () -> { });
+
+    assertEquals(Admission.REJECTED, priorityLanes.acquire(bulk, () -> { }));
+  }
+
+  @Test
+  public void freedSharedSlotGoesToHighestLane() {
+    priorityLanes.acquire(bulk, () -> { });
+    priorityLanes.acquire(acute, () -> { });
+    priorityLanes.acquire(bulk, () -> started.add("bulk"));
+    priorityLanes.acquire(acute, () -> started.add("acute"));
+
+    priorityLanes.release(bulk);
+    assertEquals(Arrays.asList("acute"), started);
+
+    priorityLanes.release(acute);
+    assertEquals(Arrays.asList("acute", "bulk"), started);
+    assertEquals(1, priorityLanes.getSharedActive());
+  }
+}
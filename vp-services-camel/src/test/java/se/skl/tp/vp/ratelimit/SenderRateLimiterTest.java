@@ -0,0 +1,86 @@
+package se.skl.tp.vp.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import se.skl.tp.vp.config.RateLimitProperties;
+
+public class SenderRateLimiterTest {
+
+  private static final String CONTRACT = "urn:riv:itintegration:registry:GetLogicalAddresseesByServiceContractResponder:2";
+
+  @TempDir
+  Path dir;
+
+  @Test
+  public void senderLimitThrottlesAllContracts() throws IOException {
+    SenderRateLimiter limiter = createLimiter("[{\"senderId\":\"tp\",\"rate\":0.001,\"burst\":2}]");
+
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertTrue(limiter.tryAcquire("tp", "urn:riv:other"));
+    assertFalse(limiter.tryAcquire("tp", CONTRACT));
+    assertTrue(limiter.tryAcquire("other", CONTRACT));
+    assertEquals(1L, limiter.getThrottled().get("tp"));
+  }
+
+  @Test
+  public void contractLimitOnlyThrottlesThatContract() throws IOException {
+    SenderRateLimiter limiter = createLimiter(
+        "[{\"senderId\":\"tp\",\"tjanstekontrakt\":\"" + CONTRACT + "\",\"rate\":0.001,\"burst\":1}]");
+
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertFalse(limiter.tryAcquire("tp", CONTRACT));
+    assertTrue(limiter.tryAcquire("tp", "urn:riv:other"));
+  }
+
+  @Test
+  public void reloadReplacesLimitsAndKeepsThemOnBadFile() throws IOException {
+    SenderRateLimiter limiter = createLimiter("[{\"senderId\":\"tp\",\"rate\":0.001,\"burst\":1}]");
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertFalse(limiter.tryAcquire("tp", CONTRACT));
+
+    Path file = write("[{\"senderId\":\"tp\",\"rate\":0.001,\"burst\":5}]");
+    file.toFile().setLastModified(file.toFile().lastModified() + 2000);
+    limiter.reload();
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+
+    write("[{\"senderId\":");
+    file.toFile().setLastModified(file.toFile().lastModified() + 4000);
+    limiter.reload();
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertFalse(limiter.tryAcquire("tp", CONTRACT));
+  }
+
+  @Test
+  public void contractLimitDoesNotUseSenderTokens() throws IOException {
+    SenderRateLimiter limiter = createLimiter("[{\"senderId\":\"tp\",\"rate\":0.001,\"burst\":2},"
+        + "{\"senderId\":\"tp\",\"tjanstekontrakt\":\"" + CONTRACT + "\",\"rate\":0.001,\"burst\":1}]");
+
+    assertTrue(limiter.tryAcquire("tp", CONTRACT));
+    assertFalse(limiter.tryAcquire("tp", CONTRACT));
+    assertFalse(limiter.tryAcquire("tp", CONTRACT));
+    assertTrue(limiter.tryAcquire("tp", "urn:riv:other"));
+    assertFalse(limiter.tryAcquire("tp", "urn:riv:other"));
+  }
+
+  private SenderRateLimiter createLimiter(String json) throws IOException {
+    RateLimitProperties properties = new RateLimitProperties();
+    properties.setEnabled(true);
+    properties.setFile(write(json).toString());
+    return new SenderRateLimiter(properties);
+  }
+
+  private Path write(String json) throws IOException {
+    return Files.write(dir.resolve("ratelimitconfig.json"), json.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,52 @@
+package se.skl.tp.vp.ratelimit;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+  private static final long SECOND = 1_000_000_000L;
+
+  @Test
+  public void burstIsAllowedThenThrottled() {
+    TokenBucket bucket = new TokenBucket(10, 3);
+    long now = 5 * SECOND;
+
+    assertTrue(bucket.tryAcquire(now));
+    assertTrue(bucket.tryAcquire(now));
+    assertTrue(bucket.tryAcquire(now));
+    assertFalse(bucket.tryAcquire(now));
+  }
+
+  @Test
+  public void tokensAreRefilledAtRate() {
+    TokenBucket bucket = new TokenBucket(10, 1);
+    long now = 5 * SECOND;
+
+    assertTrue(bucket.tryAcquire(now));
+    assertFalse(bucket.tryAcquire(now + SECOND / 20));
+    assertTrue(bucket.tryAcquire(now + SECOND / 10));
+  }
+
+  @Test
+  public void idleBucketDoesNotGrowPastBurst() {
+    TokenBucket bucket = new TokenBucket(10, 2);
+
+    assertTrue(bucket.tryAcquire(100 * SECOND));
+    assertTrue(bucket.tryAcquire(100 * SECOND));
+    assertFalse(bucket.tryAcquire(100 * SECOND));
+  }
+
+  @Test
+  public void releasedTokenCanBeTakenAgain() {
+    TokenBucket bucket = new TokenBucket(10, 1);
+    long now = 5 * SECOND;
+
+    assertTrue(bucket.tryAcquire(now));
+    bucket.release();
+    assertTrue(bucket.tryAcquire(now));
+    assertFalse(bucket.tryAcquire(now));
+  }
+}
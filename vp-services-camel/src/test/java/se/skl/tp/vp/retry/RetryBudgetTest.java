@@ -0,0 +1,64 @@
+package se.skl.tp.vp.retry;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class RetryBudgetTest {
+
+  private AtomicLong clock;
+  private RetryBudget retryBudget;
+
+  @BeforeEach
+  public void setUp() {
+    clock = new AtomicLong(1_000_000);
+    retryBudget = new RetryBudget(0.1, 2, 10_000, clock::get);
+  }
+
+  @Test
+  public void minRetriesAllowedWithoutRequests() {
+    assertTrue(retryBudget.tryAcquireRetry());
+    assertTrue(retryBudget.tryAcquireRetry());
+    assertFalse(retryBudget.tryAcquireRetry());
+  }
+
+  @Test
+  public void retriesLimitedToRatioOfRequests() {
+    recordRequests(100);
+
+    for (int i = 0; i < 12; i++) {
+      assertTrue(retryBudget.tryAcquireRetry());
+    }
+    assertFalse(retryBudget.tryAcquireRetry());
+  }
+
+  @Test
+  public void budgetIsRestoredWhenWindowHasPassed() {
+    recordRequests(100);
+    while (retryBudget.tryAcquireRetry()) {
+      clock.addAndGet(100);
+    }
+
+    clock.addAndGet(10_000);
+    assertTrue(retryBudget.tryAcquireRetry());
+  }
+
+  @Test
+  public void oldRequestsLeaveTheWindow() {
+    recordRequests(100);
+    clock.addAndGet(10_000);
+
+    assertTrue(retryBudget.tryAcquireRetry());
+    assertTrue(retryBudget.tryAcquireRetry());
+    assertFalse(retryBudget.tryAcquireRetry());
+  }
+
+  private void recordRequests(int count) {
+    for (int i = 0; i < count; i++) {
+      retryBudget.recordRequest();
+    }
+  }
+}
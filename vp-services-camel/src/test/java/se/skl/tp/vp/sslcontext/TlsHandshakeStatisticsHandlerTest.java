@@ -0,0 +1,107 @@
+package se.skl.tp.vp.sslcontext;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import java.io.InputStream;
+import java.security.KeyStore;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.config.SecurityProperties;
+
+public class TlsHandshakeStatisticsHandlerTest {
+
+  private static final char[] PASSWORD = "password".toCharArray();
+  // TLSv1.2 so a resumed handshake reuses the session id of the full one. The test certificate has
+  // a DSA key, as in application-security.properties
+  private static final String[] PROTOCOLS = {"TLSv1.2"};
+  private static final String[] CIPHERS = {"TLS_DHE_DSS_WITH_AES_128_GCM_SHA256"};
+
+  private SSLContext serverContext;
+  private SSLContext clientContext;
+  private TlsSessionStatistics statistics;
+
+  @BeforeEach
+  public void setUp() throws Exception {
+    KeyStore keyStore = KeyStore.getInstance("JKS");
+    try (InputStream in = getClass().getResourceAsStream("/certs/tp.jks")) {
+      keyStore.load(in, PASSWORD);
+    }
+    KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
+    keyManagerFactory.init(keyStore, PASSWORD);
+    serverContext = SSLContext.getInstance("TLS");
+    serverContext.init(keyManagerFactory.getKeyManagers(), null, null);
+    clientContext = newClientContext();
+    statistics = new TlsSessionStatistics(new SecurityProperties());
+  }
+
+  @Test
+  public void secondHandshakeToSameServerIsCountedAsResumed() {
+    handshake();
+    assertEquals(1, statistics.getIncoming().getHandshakes());
+    assertEquals(0, statistics.getIncoming().getResumed());
+
+    handshake();
+    assertEquals(2, statistics.getIncoming().getHandshakes());
+    assertEquals(1, statistics.getIncoming().getResumed());
+    assertEquals(2, statistics.getOutgoing().getHandshakes());
+    assertEquals(1, statistics.getOutgoing().getResumed());
+    assertEquals(0, statistics.getIncoming().getFailed());
+  }
+
+  @Test
+  public void newClientGetsFullHandshake() throws Exception {
+    handshake();
+    clientContext = newClientContext();
+    handshake();
+
+    assertEquals(2, statistics.getIncoming().getHandshakes());
+    assertEquals(0, statistics.getIncoming().getResumed());
+  }
+
+  private static SSLContext newClientContext() throws Exception {
+    SSLContext context = SSLContext.getInstance("TLS");
+    context.init(null, InsecureTrustManagerFactory.INSTANCE.getTrustManagers(), null);
+    return context;
+  }
+
+  private void handshake() {
+    SSLEngine serverEngine = serverContext.createSSLEngine();
+    serverEngine.setUseClientMode(false);
+    // The JDK client only offers a cached session to the same host and port
+    SSLEngine clientEngine = clientContext.createSSLEngine("vp.example", 443);
+    clientEngine.setUseClientMode(true);
+    for (SSLEngine engine : new SSLEngine[] {serverEngine, clientEngine}) {
+      engine.setEnabledProtocols(PROTOCOLS);
+      engine.setEnabledCipherSuites(CIPHERS);
+    }
+    EmbeddedChannel server = new EmbeddedChannel(new SslHandler(serverEngine), statistics.getIncomingHandler());
+    EmbeddedChannel client = new EmbeddedChannel(new SslHandler(clientEngine), statistics.getOutgoingHandler());
+
+    for (int i = 0; i < 20 && !(isDone(client) && isDone(server)); i++) {
+      transfer(client, server);
+      transfer(server, client);
+    }
+    assertTrue(isDone(client) && isDone(server), "Handshake did not complete");
+    client.finishAndReleaseAll();
+    server.finishAndReleaseAll();
+  }
+
+  private static boolean isDone(EmbeddedChannel channel) {
+    return channel.pipeline().get(SslHandler.class).handshakeFuture().isSuccess();
+  }
+
+  private static void transfer(EmbeddedChannel from, EmbeddedChannel to) {
+    ByteBuf data;
+    while ((data = from.readOutbound()) != null) {
+      to.writeInbound(data);
+    }
+  }
+}
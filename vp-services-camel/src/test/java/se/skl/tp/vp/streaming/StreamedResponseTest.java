@@ -0,0 +1,132 @@
+package se.skl.tp.vp.streaming;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.constants.HttpHeaders;
+
+public class StreamedResponseTest {
+
+  private static final String CORRELATION_ID = "test-correlation-id";
+
+  private EmbeddedChannel inboundChannel;
+  private EmbeddedChannel producerChannel;
+  private StreamedResponse streamedResponse;
+
+  @BeforeEach
+  public void setUp() {
+    inboundChannel = new EmbeddedChannel();
+    inboundChannel.pipeline().addLast(StreamedResponseGuardHandler.NAME, new StreamedResponseGuardHandler());
+    producerChannel = new EmbeddedChannel();
+    streamedResponse = new StreamedResponse(inboundChannel, true, CORRELATION_ID, 100,
+        name -> name.equalsIgnoreCase("SOAPAction"));
+  }
+
+  @Test
+  public void acceptsOnlyLargeOrChunkedOkResponses() {
+    assertTrue(streamedResponse.accepts(createProducerResponse(HttpResponseStatus.OK, -1)));
+    assertTrue(streamedResponse.accepts(createProducerResponse(HttpResponseStatus.OK, 100)));
+    assertFalse(streamedResponse.accepts(createProducerResponse(HttpResponseStatus.OK, 99)));
+    assertFalse(streamedResponse.accepts(createProducerResponse(HttpResponseStatus.INTERNAL_SERVER_ERROR, -1)));
+  }
+
+  @Test
+  public void responseHeadIsFiltered() {
+    HttpResponse producerResponse = createProducerResponse(HttpResponseStatus.OK, 1000);
+    producerResponse.headers().set("SOAPAction", "action");
+    producerResponse.headers().set("X-Custom", "custom");
+
+    HttpResponse head = streamedResponse.createResponseHead(producerResponse);
+
+    assertFalse(head.headers().contains("SOAPAction"));
+    assertEquals("custom", head.headers().get("X-Custom"));
+    assertEquals(1000, HttpUtil.getContentLength(head));
+    assertEquals(StreamedResponse.RESPONSE_CONTENT_TYPE, head.headers().get(HttpHeaderNames.CONTENT_TYPE));
+    assertEquals(CORRELATION_ID, head.headers().get(HttpHeaders.X_SKLTP_CORRELATION_ID));
+    assertFalse(head.headers().contains(HttpHeaderNames.CONNECTION));
+  }
+
+  @Test
+  public void streamedResponseReplacesCamelResponse() {
+    streamedResponse.start(producerChannel, createProducerResponse(HttpResponseStatus.OK, -1));
+    streamedResponse.write(new DefaultHttpContent(Unpooled.copiedBuffer("abc", StandardCharsets.UTF_8)));
+    streamedResponse.write(new DefaultLastHttpContent(Unpooled.copiedBuffer("de", StandardCharsets.UTF_8)));
+    streamedResponse.complete();
+
+    ChannelFuture camelWrite = inboundChannel.writeAndFlush(
+        new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+    assertTrue(camelWrite.isSuccess());
+    assertEquals(5, streamedResponse.getLength());
+    assertTrue(HttpUtil.isTransferEncodingChunked(readOutbound(HttpResponse.class)));
+    assertEquals("abc", readContent(readOutbound(HttpContent.class)));
+    assertEquals("de", readContent(readOutbound(LastHttpContent.class)));
+    assertNull(inboundChannel.readOutbound());
+    assertTrue(inboundChannel.isOpen());
+    assertTrue(producerChannel.isOpen());
+  }
+
+  @Test
+  public void interruptedStreamClosesConsumerAndProducer() {
+    streamedResponse.start(producerChannel, createProducerResponse(HttpResponseStatus.OK, -1));
+    streamedResponse.write(new DefaultHttpContent(Unpooled.copiedBuffer("abc", StandardCharsets.UTF_8)));
+
+    inboundChannel.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+    assertFalse(inboundChannel.isOpen());
+    assertFalse(producerChannel.isOpen());
+  }
+
+  @Test
+  public void otherResponsesPassGuard() {
+    inboundChannel.writeAndFlush(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK));
+
+    HttpResponse response = readOutbound(HttpResponse.class);
+    assertEquals(HttpResponseStatus.OK, response.status());
+    ReferenceCountUtil.release(response);
+  }
+
+  private static HttpResponse createProducerResponse(HttpResponseStatus status, long contentLength) {
+    HttpResponse response = new DefaultHttpResponse(HttpVersion.HTTP_1_1, status);
+    if (contentLength < 0) {
+      HttpUtil.setTransferEncodingChunked(response, true);
+    } else {
+      HttpUtil.setContentLength(response, contentLength);
+    }
+    return response;
+  }
+
+  private <T> T readOutbound(Class<T> type) {
+    Object msg = inboundChannel.readOutbound();
+    assertTrue(type.isInstance(msg), "Expected " + type.getSimpleName() + " but was " + msg);
+    return type.cast(msg);
+  }
+
+  private static String readContent(HttpContent content) {
+    try {
+      return content.content().toString(StandardCharsets.UTF_8);
+    } finally {
+      content.release();
+    }
+  }
+}
@@ -0,0 +1,98 @@
+package se.skl.tp.vp.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.camel.AsyncCallback;
+import org.apache.camel.Exchange;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import se.skl.tp.vp.bulkhead.Bulkhead;
+
+public class SlotAcquirerTest {
+
+  private final List<String> events = new ArrayList<>();
+  private QueueTimer queueTimer;
+  private SlotAcquirer slotAcquirer;
+  private Bulkhead bulkhead;
+
+  @BeforeEach
+  public void setUp() {
+    queueTimer = new QueueTimer();
+    slotAcquirer = new SlotAcquirer(queueTimer);
+    bulkhead = new Bulkhead("test", null, null, null, 1, 1);
+  }
+
+  @AfterEach
+  public void tearDown() {
+    queueTimer.destroy();
+  }
+
+  @Test
+  public void acquiredCallContinuesAtOnce() {
+    List<Boolean> done = new ArrayList<>();
+
+    assertTrue(acquire(exchange(), done::add, 0));
+
+    assertEquals(1, events.size());
+    assertEquals("acquired", events.get(0));
+    assertTrue(done.get(0));
+  }
+
+  @Test
+  public void queuedCallContinuesWhenSlotIsReleased() {
+    acquire(exchange(), doneSync -> { }, 0);
+    List<Boolean> done = new ArrayList<>();
+
+    assertFalse(acquire(exchange(), done::add, 0));
+    assertTrue(done.isEmpty());
+    bulkhead.release();
+
+    assertEquals(2, events.size());
+    assertEquals("acquired", events.get(1));
+    assertFalse(done.get(0));
+  }
+
+  @Test
+  public void callThatDoesNotFitInQueueIsRejectedAtOnce() {
+    acquire(exchange(), doneSync -> { }, 0);
+    acquire(exchange(), doneSync -> { }, 0);
+    List<Boolean> done = new ArrayList<>();
+
+    assertTrue(acquire(exchange(), done::add, 0));
+
+    assertEquals("rejected false", events.get(1));
+    assertTrue(done.get(0));
+  }
+
+  @Test
+  public void queuedCallIsRejectedAfterQueueTimeout() throws Exception {
+    acquire(exchange(), doneSync -> { }, 0);
+    CountDownLatch done = new CountDownLatch(1);
+
+    assertFalse(acquire(exchange(), doneSync -> done.countDown(), 50));
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+    assertEquals("rejected true", events.get(1));
+    assertEquals(0, bulkhead.getQueued());
+    bulkhead.release();
+    assertEquals(0, bulkhead.getActive());
+  }
+
+  private boolean acquire(Exchange exchange, AsyncCallback callback, long queueTimeout) {
+    return slotAcquirer.acquire(exchange, callback, bulkhead, queueTimeout,
+        () -> events.add("acquired"), timedOut -> events.add("rejected " + timedOut));
+  }
+
+  private static Exchange exchange() {
+    return new DefaultExchange(new DefaultCamelContext());
+  }
+}